@@ -0,0 +1,67 @@
+package com.openclassrooms.tourguide.actuator;
+
+import com.openclassrooms.tourguide.concurrency.AdaptiveConcurrencyLimiter;
+import com.openclassrooms.tourguide.concurrency.ShardedUserExecutor;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Métriques Micrometer des executors adaptatifs (suivi et récompenses), exposées par /actuator/metrics :
+ * limite de concurrence courante, tâches en cours, mesures de la dernière fenêtre et décisions du régulateur.
+ * Chaque métrique porte le tag executor=tracking|rewards.
+ * S'y ajoute la profondeur des boîtes aux lettres des shards d'utilisateurs (mode SHARDED).
+ */
+@Component
+public class ConcurrencyMetrics implements MeterBinder {
+
+    private final TourGuideService tourGuideService;
+    private final RewardsService rewardsService;
+
+    public ConcurrencyMetrics(TourGuideService tourGuideService, RewardsService rewardsService) {
+        this.tourGuideService = tourGuideService;
+        this.rewardsService = rewardsService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bind(registry, tourGuideService.getTrackingExecutor());
+        bind(registry, rewardsService.getRewardsExecutor());
+        Gauge.builder("tourguide.shards.pending", tourGuideService.getUserShards(), ShardedUserExecutor::getPendingOperations)
+                .description("Opérations en attente dans les boîtes aux lettres des shards d'utilisateurs")
+                .register(registry);
+    }
+
+    private void bind(MeterRegistry registry, AdaptiveConcurrencyLimiter limiter) {
+        Gauge.builder("tourguide.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Nombre maximal de tâches simultanées autorisé par le régulateur")
+                .tag("executor", limiter.getName())
+                .register(registry);
+        Gauge.builder("tourguide.concurrency.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Tâches en cours")
+                .tag("executor", limiter.getName())
+                .register(registry);
+        Gauge.builder("tourguide.concurrency.throughput", limiter, AdaptiveConcurrencyLimiter::getThroughputPerSecond)
+                .description("Débit mesuré sur la dernière fenêtre")
+                .baseUnit("tasks/s")
+                .tag("executor", limiter.getName())
+                .register(registry);
+        Gauge.builder("tourguide.concurrency.latency.mean", limiter, AdaptiveConcurrencyLimiter::getMeanLatencyMillis)
+                .description("Latence moyenne des tâches sur la dernière fenêtre")
+                .baseUnit("milliseconds")
+                .tag("executor", limiter.getName())
+                .register(registry);
+        for (AdaptiveConcurrencyLimiter.Decision decision : AdaptiveConcurrencyLimiter.Decision.values()) {
+            FunctionCounter.builder("tourguide.concurrency.decisions", limiter, l -> l.getDecisionCount(decision))
+                    .description("Fenêtres de mesure conclues par cette décision du régulateur")
+                    .tags("executor", limiter.getName(), "decision", decision.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.openclassrooms.tourguide.actuator;
+
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.service.UserTiering;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Métriques Micrometer de la répartition des utilisateurs entre mémoire et disque, exposées par /actuator/metrics :
+ * utilisateurs chauds et froids, mémoire occupée par les historiques, taille du fichier de segments,
+ * nombre et latence des rechargements.
+ */
+@Component
+public class TieringMetrics implements MeterBinder {
+
+    private final TourGuideService tourGuideService;
+
+    public TieringMetrics(TourGuideService tourGuideService) {
+        this.tourGuideService = tourGuideService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        UserTiering tiering = tourGuideService.getUserTiering();
+        Gauge.builder("tourguide.tiering.users", tiering, UserTiering::getResidentUsers)
+                .description("Utilisateurs dont l'historique est en mémoire")
+                .tag("tier", "resident")
+                .register(registry);
+        Gauge.builder("tourguide.tiering.users", tiering, UserTiering::getColdUsers)
+                .description("Utilisateurs dont l'historique est déporté sur disque")
+                .tag("tier", "cold")
+                .register(registry);
+        Gauge.builder("tourguide.tiering.resident.memory", tiering, UserTiering::getEstimatedResidentBytes)
+                .description("Empreinte mémoire estimée des historiques en mémoire")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("tourguide.tiering.segment.size", tiering, UserTiering::getSegmentBytes)
+                .description("Taille du fichier de segments")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("tourguide.tiering.segment.dead", tiering, UserTiering::getDeadSegmentBytes)
+                .description("Segments remplacés ou rechargés, qui ne seront plus lus")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("tourguide.tiering.spills", tiering, UserTiering::getSpillCount)
+                .description("Segments écrits")
+                .register(registry);
+        FunctionCounter.builder("tourguide.tiering.segment.compactions", tiering, UserTiering::getSegmentCompactionCount)
+                .description("Compactions du fichier de segments")
+                .register(registry);
+        FunctionCounter.builder("tourguide.tiering.faults", tiering, UserTiering::getFaultCount)
+                .description("Historiques rechargés depuis le disque")
+                .register(registry);
+        Gauge.builder("tourguide.tiering.fault.latency.mean", tiering, UserTiering::getMeanFaultMillis)
+                .description("Latence moyenne d'un rechargement")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("tourguide.tiering.fault.latency.max", tiering, UserTiering::getMaxFaultMillis)
+                .description("Latence maximale d'un rechargement")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+}
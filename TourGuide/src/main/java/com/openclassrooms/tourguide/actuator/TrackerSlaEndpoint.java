@@ -0,0 +1,78 @@
+package com.openclassrooms.tourguide.actuator;
+
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracker.Tracker;
+import com.openclassrooms.tourguide.tracker.TrackingCycleReport;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Endpoint actuator (/actuator/trackerSla) exposant l'historique glissant des cycles du Tracker,
+ * comparé à l'objectif de 100 000 utilisateurs suivis en moins de 15 minutes.
+ */
+@Component
+@Endpoint(id = "trackerSla")
+public class TrackerSlaEndpoint {
+
+    /**
+     * Objectif de volume : nombre d'utilisateurs à suivre
+     */
+    private static final int TARGET_USERS = 100_000;
+    /**
+     * Objectif de durée pour suivre TARGET_USERS utilisateurs
+     */
+    private static final long TARGET_SECONDS = TimeUnit.MINUTES.toSeconds(15);
+
+    private final TourGuideService tourGuideService;
+
+    public TrackerSlaEndpoint(TourGuideService tourGuideService) {
+        this.tourGuideService = tourGuideService;
+    }
+
+    /**
+     * Construit le rapport SLA : pour chaque cycle, ses mesures, son dépassement de l'intervalle
+     * de suivi et la durée projetée pour l'objectif de volume au débit observé.
+     *
+     * @return Le rapport SLA du Tracker
+     */
+    @ReadOperation
+    public Map<String, Object> trackerSla() {
+        long intervalMillis = TimeUnit.SECONDS.toMillis(Tracker.getTrackingPollingInterval());
+        List<Map<String, Object>> cycles = new ArrayList<>();
+        for (TrackingCycleReport report : tourGuideService.tracker.getCycleHistory()) {
+            Map<String, Object> cycle = new LinkedHashMap<>();
+            cycle.put("startedAt", report.getStartedAt());
+            cycle.put("usersRequested", report.getUsersRequested());
+            cycle.put("usersProcessed", report.getUsersProcessed());
+            cycle.put("usersSkippedInProgress", report.getUsersSkippedInProgress());
+            cycle.put("usersCompleted", report.getUsersCompleted());
+            cycle.put("usersCarriedOver", report.getUsersCarriedOver());
+            cycle.put("usersFailed", report.getUsersFailed());
+            cycle.put("elapsedMillis", report.getElapsedMillis());
+            cycle.put("throughputPerSecond", report.getThroughputPerSecond());
+            cycle.put("gpsLatency", report.getGpsLatency());
+            cycle.put("rewardLatency", report.getRewardLatency());
+            cycle.put("rewardCentralLatency", report.getRewardCentralLatency());
+            cycle.put("totalLatency", report.getTotalLatency());
+            cycle.put("overrunMillis", Math.max(0, report.getElapsedMillis() - intervalMillis));
+            double throughput = report.getThroughputPerSecond();
+            Double projectedSeconds = throughput == 0 ? null : TARGET_USERS / throughput;
+            cycle.put("projectedSecondsForTarget", projectedSeconds);
+            cycle.put("targetMet", projectedSeconds != null && projectedSeconds <= TARGET_SECONDS);
+            cycles.add(cycle);
+        }
+        Map<String, Object> sla = new LinkedHashMap<>();
+        sla.put("targetUsers", TARGET_USERS);
+        sla.put("targetSeconds", TARGET_SECONDS);
+        sla.put("trackingIntervalSeconds", Tracker.getTrackingPollingInterval());
+        sla.put("cycles", cycles);
+        return sla;
+    }
+}
@@ -0,0 +1,64 @@
+package com.openclassrooms.tourguide.actuator;
+
+import com.openclassrooms.tourguide.service.LocationStalenessStats;
+import com.openclassrooms.tourguide.service.NearbyAttractionCache;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.service.UserUpdateBroadcaster;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Métriques Micrometer du suivi des utilisateurs, exposées par /actuator/metrics :
+ * ancienneté des positions servies par l'API, abonnements aux mises à jour et événements envoyés,
+ * efficacité du cache des attractions à proximité.
+ */
+@Component
+public class TrackingMetrics implements MeterBinder {
+
+    private final TourGuideService tourGuideService;
+
+    public TrackingMetrics(TourGuideService tourGuideService) {
+        this.tourGuideService = tourGuideService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        LocationStalenessStats staleness = tourGuideService.getLocationStalenessStats();
+        FunctionCounter.builder("tourguide.location.served", staleness, LocationStalenessStats::getServedCount)
+                .description("Positions servies par l'API")
+                .register(registry);
+        FunctionCounter.builder("tourguide.location.served.stale", staleness, LocationStalenessStats::getStaleCount)
+                .description("Positions servies plus anciennes que le seuil de fraîcheur")
+                .register(registry);
+        Gauge.builder("tourguide.location.staleness.mean", staleness, LocationStalenessStats::getMeanAgeMillis)
+                .description("Ancienneté moyenne des positions servies")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("tourguide.location.staleness.max", staleness, LocationStalenessStats::getMaxAgeMillis)
+                .description("Ancienneté maximale des positions servies")
+                .baseUnit("milliseconds")
+                .register(registry);
+        UserUpdateBroadcaster userUpdates = tourGuideService.getUserUpdates();
+        Gauge.builder("tourguide.updates.subscriptions", userUpdates, UserUpdateBroadcaster::getOpenSubscriptions)
+                .description("Abonnements SSE ouverts")
+                .register(registry);
+        FunctionCounter.builder("tourguide.updates.events.sent", userUpdates, UserUpdateBroadcaster::getEventsSent)
+                .description("Événements envoyés aux abonnés")
+                .register(registry);
+        FunctionCounter.builder("tourguide.updates.events.coalesced", userUpdates, UserUpdateBroadcaster::getEventsCoalesced)
+                .description("Événements remplacés par un plus récent avant leur envoi")
+                .register(registry);
+        NearbyAttractionCache nearbyAttractionCache = tourGuideService.getNearbyAttractionCache();
+        FunctionCounter.builder("tourguide.nearby.cache.requests", nearbyAttractionCache, NearbyAttractionCache::getHitCount)
+                .description("Recherches d'attractions à proximité servies par le cache")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("tourguide.nearby.cache.requests", nearbyAttractionCache, NearbyAttractionCache::getMissCount)
+                .description("Recherches d'attractions à proximité ayant calculé leur cellule")
+                .tag("result", "miss")
+                .register(registry);
+    }
+}
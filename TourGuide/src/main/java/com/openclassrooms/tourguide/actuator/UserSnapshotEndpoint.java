@@ -0,0 +1,57 @@
+package com.openclassrooms.tourguide.actuator;
+
+import com.openclassrooms.tourguide.service.UserSnapshotService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Endpoint actuator (/actuator/userSnapshot) : un POST capture l'état de tous les utilisateurs
+ * et lance l'écriture du fichier en arrière-plan, un GET renvoie l'avancement du dernier export.
+ */
+@Component
+@Endpoint(id = "userSnapshot")
+public class UserSnapshotEndpoint {
+
+    private final UserSnapshotService userSnapshotService;
+
+    public UserSnapshotEndpoint(UserSnapshotService userSnapshotService) {
+        this.userSnapshotService = userSnapshotService;
+    }
+
+    /**
+     * @return L'avancement de l'export lancé, ou de celui déjà en cours
+     */
+    @WriteOperation
+    public Map<String, Object> startSnapshot() {
+        return describe(userSnapshotService.startSnapshot());
+    }
+
+    /**
+     * @return L'avancement du dernier export, vide si aucun n'a été lancé
+     */
+    @ReadOperation
+    public Map<String, Object> lastSnapshot() {
+        UserSnapshotService.Export export = userSnapshotService.getLastExport();
+        return export == null ? Map.of() : describe(export);
+    }
+
+    private static Map<String, Object> describe(UserSnapshotService.Export export) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("path", export.getPath().toString());
+        status.put("capturedAtMillis", export.getCapturedAtMillis());
+        status.put("users", export.getUsers());
+        status.put("usersWritten", export.getUsersWritten());
+        status.put("inconsistentUsers", export.getInconsistentUsers());
+        String state = !export.getCompletion().isDone() ? "RUNNING"
+                : export.getCompletion().isCompletedExceptionally() ? "FAILED" : "DONE";
+        status.put("state", state);
+        status.put("bytes", export.getBytes());
+        status.put("elapsedMillis", export.getElapsedMillis());
+        return status;
+    }
+}
@@ -0,0 +1,43 @@
+package com.openclassrooms.tourguide.actuator;
+
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.service.WarmUpProgress;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Indicateur "warmUp" de /actuator/health, inclus dans le groupe readiness (/actuator/health/readiness) :
+ * OUT_OF_SERVICE tant que les utilisateurs internes sont en cours de création, UP dès qu'ils sont tous créés
+ * (le Tracker peut encore être en train de démarrer), DOWN si le démarrage a échoué.
+ * Le détail donne la phase et l'avancement de la création des utilisateurs.
+ */
+@Component
+public class WarmUpHealthIndicator implements HealthIndicator {
+
+    private final TourGuideService tourGuideService;
+
+    public WarmUpHealthIndicator(TourGuideService tourGuideService) {
+        this.tourGuideService = tourGuideService;
+    }
+
+    @Override
+    public Health health() {
+        WarmUpProgress progress = tourGuideService.getWarmUpProgress();
+        Health.Builder builder;
+        if (progress.getPhase() == WarmUpProgress.Phase.FAILED) {
+            builder = Health.down().withException(progress.getFailure());
+        } else if (progress.isUsersReady()) {
+            builder = Health.up();
+        } else {
+            builder = Health.outOfService();
+        }
+        return builder
+                .withDetail("phase", progress.getPhase())
+                .withDetail("usersCreated", progress.getUsersCreated())
+                .withDetail("usersExpected", progress.getUsersExpected())
+                .withDetail("percentComplete", Math.round(progress.getPercentComplete() * 10) / 10.0)
+                .withDetail("elapsedMillis", progress.getElapsedMillis())
+                .build();
+    }
+}
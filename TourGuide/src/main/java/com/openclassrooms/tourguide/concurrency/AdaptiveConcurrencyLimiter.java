@@ -0,0 +1,302 @@
+package com.openclassrooms.tourguide.concurrency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executor dont le nombre de tâches simultanées s'ajuste au débit et à la latence observés,
+ * pour des tâches qui attendent surtout des services externes (GpsUtil, RewardCentral).
+ *
+ * Les tâches sont exécutées par un pool de threads démons réutilisé d'un lot à l'autre ;
+ * une barrière à limite dynamique borne le nombre de tâches en cours. Quand la limite est atteinte,
+ * le thread qui soumet attend qu'une tâche se termine (contre-pression, aucune file illimitée).
+ *
+ * La limite est réglée par escalade (hill climbing, comme le pool de threads .NET) sur des fenêtres de mesure :
+ * <ul>
+ *     <li>si le débit progresse, la limite continue d'évoluer dans le même sens ;</li>
+ *     <li>si le débit recule, le sens est inversé ;</li>
+ *     <li>si le débit stagne, d'après la loi de Little (en cours = débit × latence), la hausse de latence
+ *     signifie que les tâches supplémentaires attendent au lieu de travailler : la limite baisse ;
+ *     sinon elle monte pour sonder la capacité restante.</li>
+ * </ul>
+ * Une fenêtre où la limite n'a jamais été atteinte ne change rien : la demande, et non la limite, bornait le débit.
+ */
+public class AdaptiveConcurrencyLimiter implements Executor {
+
+    /**
+     * Décision prise par le régulateur à la fin d'une fenêtre de mesure
+     */
+    public enum Decision { INCREASE, DECREASE, HOLD }
+
+    /**
+     * Variation relative du débit en deçà de laquelle on considère qu'il stagne
+     */
+    private static final double THROUGHPUT_TOLERANCE = 0.05;
+    /**
+     * Hausse relative de la latence, par rapport à la latence de référence, considérée comme de l'attente
+     */
+    private static final double LATENCY_TOLERANCE = 0.5;
+    /**
+     * Pas d'ajustement, en proportion de la limite courante
+     */
+    private static final double STEP_RATIO = 0.25;
+    /**
+     * Nombre minimal de tâches terminées pour clore une fenêtre de mesure
+     */
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+    private final ExecutorService workers;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private volatile int limit;
+    private volatile int inFlight;
+
+    // fenêtre de mesure en cours, protégée par lock
+    private long windowStart = System.nanoTime();
+    private int windowCompleted;
+    private long windowLatencyNanos;
+    private boolean windowSaturated;
+    private double previousThroughput;
+    private double baselineLatencyNanos = Double.MAX_VALUE;
+    private int direction = 1;
+
+    private volatile double throughputPerSecond;
+    private volatile double meanLatencyMillis;
+    private volatile Decision lastDecision = Decision.HOLD;
+    private final AtomicInteger[] decisionCounts = {new AtomicInteger(), new AtomicInteger(), new AtomicInteger()};
+
+    /**
+     * @param name         Nom de l'executor, repris dans le nom des threads et les métriques
+     * @param initialLimit Limite de départ
+     * @param minLimit     Limite minimale
+     * @param maxLimit     Limite maximale, plafond de sécurité du nombre de threads
+     * @param window       Durée minimale d'une fenêtre de mesure
+     * @param unit         Unité de window
+     */
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, long window, TimeUnit unit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Bornes de concurrence invalides : [" + minLimit + ", " + maxLimit + "]");
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.windowNanos = unit.toNanos(window);
+        this.workers = Executors.newCachedThreadPool(daemonThreads(name));
+    }
+
+    /**
+     * Exécute une tâche dès qu'une place se libère sous la limite courante, sans échéance.
+     * Le thread appelant est bloqué tant que la limite est atteinte.
+     *
+     * @throws RejectedExecutionException si le thread appelant est interrompu pendant l'attente
+     */
+    @Override
+    public void execute(Runnable task) {
+        execute(task, Long.MAX_VALUE);
+    }
+
+    /**
+     * Vue de cet executor dont l'attente d'une place est bornée par une échéance.
+     * Une tâche qui n'a pas obtenu de place à l'échéance est rejetée sans être exécutée :
+     * l'exception RejectedExecutionException a alors pour cause une TimeoutException.
+     *
+     * @param deadlineNanos Échéance, au sens de System.nanoTime()
+     * @return Un executor partageant la limite et les mesures de celui-ci
+     */
+    public Executor withDeadline(long deadlineNanos) {
+        return task -> execute(task, deadlineNanos);
+    }
+
+    /**
+     * Arrête l'executor : les tâches en cours se terminent, les suivantes sont rejetées.
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Attend, après shutdown, que les tâches en cours soient terminées.
+     *
+     * @return false si le délai a expiré avant
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    private void execute(Runnable task, long deadlineNanos) {
+        acquire(deadlineNanos);
+        long start = System.nanoTime();
+        try {
+            workers.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    release(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    private void acquire(long deadlineNanos) {
+        lock.lock();
+        try {
+            while (inFlight >= limit) {
+                if (deadlineNanos == Long.MAX_VALUE) {
+                    permitReleased.await();
+                } else {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new RejectedExecutionException("Échéance atteinte en attente d'une place sur l'executor " + name,
+                                new TimeoutException());
+                    }
+                    permitReleased.awaitNanos(remaining);
+                }
+            }
+            if (inFlight == 0) {
+                // reprise après une période sans activité : l'inactivité ne doit pas compter dans le débit mesuré
+                windowStart = System.nanoTime();
+                windowCompleted = 0;
+                windowLatencyNanos = 0;
+            }
+            inFlight++;
+            if (inFlight >= limit) {
+                windowSaturated = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Attente interrompue sur l'executor " + name, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long latencyNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            windowCompleted++;
+            windowLatencyNanos += latencyNanos;
+            long now = System.nanoTime();
+            if (now - windowStart >= windowNanos && windowCompleted >= MIN_WINDOW_SAMPLES) {
+                int previousLimit = limit;
+                closeWindow(now);
+                if (limit > previousLimit) {
+                    permitReleased.signalAll();
+                    return;
+                }
+            }
+            permitReleased.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeWindow(long now) {
+        double throughput = windowCompleted * 1e9 / (now - windowStart);
+        double meanLatency = (double) windowLatencyNanos / windowCompleted;
+        // la référence remonte lentement pour suivre un service externe durablement plus lent
+        baselineLatencyNanos = Math.min(meanLatency, baselineLatencyNanos * 1.02);
+
+        Decision decision;
+        if (!windowSaturated) {
+            decision = Decision.HOLD;
+        } else {
+            if (previousThroughput > 0 && throughput < previousThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+                direction = -direction;
+            } else if (previousThroughput > 0 && throughput <= previousThroughput * (1 + THROUGHPUT_TOLERANCE)) {
+                direction = meanLatency > baselineLatencyNanos * (1 + LATENCY_TOLERANCE) ? -1 : 1;
+            }
+            int step = Math.max(1, (int) (limit * STEP_RATIO));
+            int newLimit = Math.max(minLimit, Math.min(maxLimit, limit + direction * step));
+            decision = newLimit > limit ? Decision.INCREASE : newLimit < limit ? Decision.DECREASE : Decision.HOLD;
+            if (decision != Decision.HOLD) {
+                logger.debug("Executor {} : limite {} -> {} (débit {}/s, latence moyenne {} ms)",
+                        name, limit, newLimit, Math.round(throughput), Math.round(meanLatency / 1e6));
+            }
+            limit = newLimit;
+            previousThroughput = throughput;
+        }
+        decisionCounts[decision.ordinal()].incrementAndGet();
+        lastDecision = decision;
+        throughputPerSecond = throughput;
+        meanLatencyMillis = meanLatency / 1e6;
+
+        windowStart = now;
+        windowCompleted = 0;
+        windowLatencyNanos = 0;
+        windowSaturated = inFlight >= limit;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "tourguide-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Le nombre maximal de tâches simultanées actuellement autorisé
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return Le nombre de tâches en cours
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return Le débit mesuré sur la dernière fenêtre, en tâches par seconde
+     */
+    public double getThroughputPerSecond() {
+        return throughputPerSecond;
+    }
+
+    /**
+     * @return La latence moyenne des tâches sur la dernière fenêtre, en millisecondes
+     */
+    public double getMeanLatencyMillis() {
+        return meanLatencyMillis;
+    }
+
+    public Decision getLastDecision() {
+        return lastDecision;
+    }
+
+    /**
+     * @return Le nombre de fenêtres conclues par cette décision depuis le démarrage
+     */
+    public int getDecisionCount(Decision decision) {
+        return decisionCounts[decision.ordinal()].get();
+    }
+}
@@ -0,0 +1,117 @@
+package com.openclassrooms.tourguide.concurrency;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Répartit les utilisateurs sur un nombre fixe de shards, chacun possédé par un unique thread.
+ * Un utilisateur appartient toujours au même shard (hachage de son identifiant) : toutes les opérations
+ * soumises pour lui sont exécutées une par une, dans l'ordre de soumission, par le même thread.
+ * Les opérations du suivi sur un même utilisateur ne se concurrencent donc jamais entre elles.
+ *
+ * Ce n'est pas un chemin sans verrou : les utilisateurs restent lus et modifiés hors de leur shard
+ * (API, ingestion des localisations poussées, diffusion SSE, export), si bien que User garde ses méthodes
+ * synchronisées. Le moniteur d'un utilisateur n'est pas disputé entre suivis, mais le passage par le shard
+ * s'ajoute à son acquisition au lieu de la remplacer. Rendre le chemin du shard sans verrou demanderait
+ * de faire passer ces autres accès par la boîte aux lettres du shard.
+ *
+ * Les opérations soumises doivent être courtes et non bloquantes : un appel bloquant retarde
+ * tous les utilisateurs du shard.
+ */
+public class ShardedUserExecutor {
+
+    private final ThreadPoolExecutor[] shards;
+
+    /**
+     * @param name       Nom des shards, repris dans le nom des threads
+     * @param shardCount Nombre de shards, typiquement le nombre de cœurs
+     */
+    public ShardedUserExecutor(String name, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Le nombre de shards doit être positif : " + shardCount);
+        }
+        shards = new ThreadPoolExecutor[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String threadName = "tourguide-" + name + "-" + i;
+            // boîte aux lettres du shard : file FIFO consommée par son unique thread
+            shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @param userId Identifiant de l'utilisateur
+     * @return L'index du shard propriétaire de l'utilisateur
+     */
+    public int shardOf(UUID userId) {
+        int hash = userId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Soumet une opération au shard propriétaire d'un utilisateur.
+     *
+     * @param userId    Identifiant de l'utilisateur concerné
+     * @param operation Opération à exécuter par le propriétaire
+     * @return Le future du résultat de l'opération
+     */
+    public <T> CompletableFuture<T> submit(UUID userId, Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, shards[shardOf(userId)]);
+    }
+
+    /**
+     * Soumet une opération au shard propriétaire d'un utilisateur et attend son exécution.
+     *
+     * @param userId    Identifiant de l'utilisateur concerné
+     * @param operation Opération à exécuter par le propriétaire
+     */
+    public void run(UUID userId, Runnable operation) {
+        CompletableFuture.runAsync(operation, shards[shardOf(userId)]).join();
+    }
+
+    /**
+     * Arrête les shards : les opérations déjà soumises sont exécutées, les suivantes sont rejetées.
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    /**
+     * Attend, après shutdown, que les opérations déjà soumises à tous les shards soient terminées.
+     *
+     * @return false si le délai a expiré avant
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor shard : shards) {
+            if (!shard.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return Le nombre d'opérations en attente dans les boîtes aux lettres de tous les shards
+     */
+    public int getPendingOperations() {
+        int pending = 0;
+        for (ThreadPoolExecutor shard : shards) {
+            pending += shard.getQueue().size();
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,17 @@
+package com.openclassrooms.tourguide.concurrency;
+
+/**
+ * Mode d'exécution du suivi des utilisateurs.
+ */
+public enum TrackingExecutionMode {
+    /**
+     * Chaque suivi s'exécute entièrement dans un thread du pool partagé
+     */
+    POOL,
+    /**
+     * Les appels bloquants s'exécutent dans le pool partagé, les modifications d'un utilisateur
+     * dans le shard qui le possède (voir ShardedUserExecutor). Les verrous de User restent pris :
+     * les autres accès aux utilisateurs ne passent pas par les shards
+     */
+    SHARDED
+}
@@ -1,17 +1,38 @@
 package com.openclassrooms.tourguide.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.Date;
 import java.util.List;
 
+import com.openclassrooms.tourguide.dto.AttractionPopularityDTO;
+import com.openclassrooms.tourguide.dto.GeofenceDTO;
+import com.openclassrooms.tourguide.dto.HeatMapDTO;
+import com.openclassrooms.tourguide.dto.IngestionResultDTO;
+import com.openclassrooms.tourguide.dto.ItineraryDTO;
+import com.openclassrooms.tourguide.dto.LeaderboardEntryDTO;
 import com.openclassrooms.tourguide.dto.NearbyAttractionsDTO;
+import com.openclassrooms.tourguide.service.LocationIngestionService;
+import com.openclassrooms.tourguide.service.UserHistoryStreamService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import gpsUtil.location.Attraction;
 import gpsUtil.location.VisitedLocation;
 
 import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.service.UserUpdateBroadcaster;
 import com.openclassrooms.tourguide.model.User;
 import com.openclassrooms.tourguide.model.UserReward;
 
@@ -28,12 +49,29 @@ import tripPricer.Provider;
 @RestController
 public class TourGuideController {
 
+    /**
+     * En-tête HTTP portant le curseur de la page suivante des endpoints en flux
+     */
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     /**
      * Service contenant la logique métier de l'application
      */
     @Autowired
 	TourGuideService tourGuideService;
 
+    /**
+     * Service d'export en flux des récompenses et de l'historique
+     */
+    @Autowired
+    UserHistoryStreamService userHistoryStreamService;
+
+    /**
+     * Service d'ingestion des localisations poussées par les appareils
+     */
+    @Autowired
+    LocationIngestionService locationIngestionService;
+
     /**
      * Page d'accueil de l'application
      *
@@ -67,6 +105,20 @@ public class TourGuideController {
     	return tourGuideService.getNearByAttractions(visitedLocation,getUser(userName));
     }
 
+    /**
+     * Propose un itinéraire passant par les meilleures attractions autour d'un utilisateur,
+     * ordonnées pour limiter la distance parcourue
+     *
+     * @param userName       Nom de l'utilisateur
+     * @param maxAttractions Nombre d'attractions souhaité
+     * @return Les attractions dans l'ordre de visite, avec la distance de chaque étape
+     */
+    @RequestMapping("/getItinerary")
+    public ItineraryDTO getItinerary(@RequestParam String userName, @RequestParam(defaultValue = "5") int maxAttractions) {
+        User user = getUser(userName);
+        return tourGuideService.getItinerary(tourGuideService.getUserLocation(user), user, maxAttractions);
+    }
+
     /**
      * Récupère toutes les récompenses d'un utilisateur
      *
@@ -78,6 +130,134 @@ public class TourGuideController {
     	return tourGuideService.getUserRewards(getUser(userName));
     }
 
+    /**
+     * Retourne les localisations visitées par un utilisateur entre deux instants, par ordre chronologique
+     *
+     * @param userName Nom de l'utilisateur
+     * @param from     Début de la période (ISO-8601, inclus)
+     * @param to       Fin de la période (ISO-8601, incluse)
+     * @return Les localisations visitées pendant la période
+     */
+    @RequestMapping("/getLocationHistory")
+    public List<VisitedLocation> getLocationHistory(@RequestParam String userName, @RequestParam Instant from,
+                                                    @RequestParam Instant to) {
+        return tourGuideService.getLocationHistory(getUser(userName), Date.from(from), Date.from(to));
+    }
+
+    /**
+     * Retourne les utilisateurs passés dans une zone géographique entre deux instants
+     *
+     * @param minLatitude  Latitude minimale de la zone
+     * @param maxLatitude  Latitude maximale de la zone
+     * @param minLongitude Longitude minimale de la zone
+     * @param maxLongitude Longitude maximale de la zone
+     * @param from         Début de la période (ISO-8601, inclus)
+     * @param to           Fin de la période (ISO-8601, incluse)
+     * @return Les noms des utilisateurs passés dans la zone
+     */
+    @RequestMapping("/getUsersInArea")
+    public List<String> getUsersInArea(@RequestParam double minLatitude, @RequestParam double maxLatitude,
+                                       @RequestParam double minLongitude, @RequestParam double maxLongitude,
+                                       @RequestParam Instant from, @RequestParam Instant to) {
+        return tourGuideService.getUsersInArea(minLatitude, maxLatitude, minLongitude, maxLongitude,
+                Date.from(from), Date.from(to));
+    }
+
+    /**
+     * Récupère les récompenses d'un utilisateur en flux NDJSON (une récompense par ligne), page par page.
+     * Le curseur de la page suivante est renvoyé dans l'en-tête X-Next-Cursor (-1 en fin de liste).
+     *
+     * @param userName Nom de l'utilisateur
+     * @param cursor   Index de la première récompense à renvoyer
+     * @param limit    Nombre maximal de récompenses à renvoyer
+     * @return Le flux des récompenses
+     */
+    @RequestMapping(value = "/getRewardsStream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getRewardsStream(@RequestParam String userName,
+                                                                  @RequestParam(defaultValue = "0") int cursor,
+                                                                  @RequestParam(defaultValue = "1000") int limit) {
+        UserHistoryStreamService.Page page =
+                userHistoryStreamService.rewardsPage(getUser(userName), cursor, limit);
+        StreamingResponseBody body = page::writeTo;
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()))
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Récupère l'historique de localisation d'un utilisateur en flux NDJSON, page par page.
+     * Le curseur de la page suivante est renvoyé dans l'en-tête X-Next-Cursor (-1 en fin de liste).
+     *
+     * @param userName Nom de l'utilisateur
+     * @param cursor   Index de la première localisation à renvoyer
+     * @param limit    Nombre maximal de localisations à renvoyer
+     * @return Le flux des localisations visitées
+     */
+    @RequestMapping(value = "/getVisitedLocationsStream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getVisitedLocationsStream(@RequestParam String userName,
+                                                                           @RequestParam(defaultValue = "0") int cursor,
+                                                                           @RequestParam(defaultValue = "1000") int limit) {
+        UserHistoryStreamService.Page page =
+                userHistoryStreamService.visitedLocationsPage(getUser(userName), cursor, limit);
+        StreamingResponseBody body = page::writeTo;
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()))
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Abonne le client aux mises à jour d'un utilisateur en Server-Sent Events, à la place de l'interrogation
+     * périodique de /getLocation et /getRewards : un événement "location" à chaque nouvelle localisation,
+     * un événement "reward" à chaque nouvelle récompense. Un client lent ne reçoit que le dernier état.
+     *
+     * @param userName Nom de l'utilisateur
+     * @return Le flux des événements
+     */
+    @GetMapping(value = "/subscribeUpdates", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeUpdates(@RequestParam String userName) {
+        SseEmitter emitter = new SseEmitter(UserUpdateBroadcaster.SUBSCRIPTION_TIMEOUT_MILLIS);
+        try {
+            tourGuideService.subscribeUpdates(getUser(userName), emitter);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+        }
+        return emitter;
+    }
+
+    /**
+     * Reçoit un lot de localisations poussées par des appareils ou des passerelles, au format NDJSON
+     * (une localisation par ligne : userId, latitude, longitude, timestamp en millisecondes epoch).
+     * Les récompenses sont calculées en arrière-plan.
+     *
+     * @param body Le lot, lu en flux
+     * @return Le nombre de localisations acceptées et rejetées
+     */
+    @PostMapping(value = "/ingestLocations", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public IngestionResultDTO ingestLocationsNdjson(InputStream body) throws IOException {
+        try {
+            return locationIngestionService.ingestNdjson(body);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reçoit un lot de localisations au format binaire compact (enregistrements de 40 octets, voir LocationIngestionService).
+     *
+     * @param body Le lot, lu en flux
+     * @return Le nombre de localisations acceptées et rejetées
+     */
+    @PostMapping(value = "/ingestLocations", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public IngestionResultDTO ingestLocationsBinary(InputStream body) throws IOException {
+        try {
+            return locationIngestionService.ingestBinary(body);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
     /**
      * Récupère les offres de voyage disponibles pour un utilisateur
      *
@@ -90,13 +270,75 @@ public class TourGuideController {
     }
 
     /**
-     * Méthode utilitaire pour récupérer un utilisateur par son nom
+     * Modifie le rayon de proximité utilisé pour attribuer les récompenses d'un utilisateur
+     *
+     * @param userName Nom de l'utilisateur
+     * @param radius   Nouveau rayon en miles
+     */
+    @PostMapping("/setAttractionProximity")
+    public void setAttractionProximity(@RequestParam String userName, @RequestParam int radius) {
+        tourGuideService.setAttractionProximity(getUser(userName), radius);
+    }
+
+    /**
+     * Récupère les zones de proximité des attractions visitées par un utilisateur
+     *
+     * @param userName Nom de l'utilisateur
+     * @return Pour chaque attraction visitée, la présence actuelle, le nombre de visites et le temps passé dans sa zone
+     */
+    @RequestMapping("/getGeofences")
+    public List<GeofenceDTO> getGeofences(@RequestParam String userName) {
+        return tourGuideService.getGeofences(getUser(userName));
+    }
+
+    /**
+     * Récupère le classement des utilisateurs ayant cumulé le plus de points de récompense
+     *
+     * @param limit Nombre maximal d'utilisateurs à renvoyer
+     * @return Le classement, du meilleur au moins bon
+     */
+    @RequestMapping("/getLeaderboard")
+    public List<LeaderboardEntryDTO> getLeaderboard(@RequestParam(defaultValue = "10") int limit) {
+        return tourGuideService.getLeaderboard(limit);
+    }
+
+    /**
+     * Retourne la popularité en temps réel des attractions
+     *
+     * @return Pour chaque attraction, le nombre d'utilisateurs à proximité et de récompenses attribuées
+     */
+    @RequestMapping("/getAttractionPopularity")
+    public List<AttractionPopularityDTO> getAttractionPopularity() {
+        return tourGuideService.getAttractionPopularity();
+    }
+
+    /**
+     * Retourne la carte de chaleur des dernières positions connues des utilisateurs
+     *
+     * @return Le nombre d'utilisateurs par cellule de la grille
+     */
+    @RequestMapping("/getHeatMap")
+    public HeatMapDTO getHeatMap() {
+        return tourGuideService.getHeatMap();
+    }
+
+    /**
+     * Méthode utilitaire pour récupérer un utilisateur par son nom.
+     * Pendant la création des utilisateurs au démarrage, un utilisateur pas encore créé donne une 503,
+     * ensuite un utilisateur inconnu donne une 404.
      *
      * @param userName Nom de l'utilisateur recherché
      * @return L'utilisateur correspondant au nom fourni
      */
     private User getUser(String userName) {
-    	return tourGuideService.getUser(userName);
+    	User user = tourGuideService.getUser(userName);
+    	if (user == null) {
+    		if (!tourGuideService.getWarmUpProgress().isUsersReady()) {
+    			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Initialisation des utilisateurs en cours");
+    		}
+    		throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Utilisateur inconnu : " + userName);
+    	}
+    	return user;
     }
    
 
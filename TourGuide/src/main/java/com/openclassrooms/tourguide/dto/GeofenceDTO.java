@@ -0,0 +1,19 @@
+package com.openclassrooms.tourguide.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Date;
+
+@Setter
+@Getter
+public class GeofenceDTO {
+    private String attractionName;
+    private boolean inside;
+    /**
+     * Instant d'entrée dans la zone, null si l'utilisateur n'y est pas
+     */
+    private Date enteredAt;
+    private int visits;
+    private long dwellMillis;
+}
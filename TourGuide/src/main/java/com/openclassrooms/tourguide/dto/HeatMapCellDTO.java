@@ -0,0 +1,12 @@
+package com.openclassrooms.tourguide.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class HeatMapCellDTO {
+    private double minLatitude;
+    private double minLongitude;
+    private long users;
+}
@@ -0,0 +1,13 @@
+package com.openclassrooms.tourguide.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+public class HeatMapDTO {
+    private int cellSizeDegrees;
+    private List<HeatMapCellDTO> cells;
+}
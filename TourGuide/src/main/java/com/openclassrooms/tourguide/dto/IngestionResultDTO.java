@@ -0,0 +1,12 @@
+package com.openclassrooms.tourguide.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class IngestionResultDTO {
+    private long accepted;
+    private long rejected;
+    private int users;
+}
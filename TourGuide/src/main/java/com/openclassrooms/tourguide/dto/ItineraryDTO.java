@@ -0,0 +1,15 @@
+package com.openclassrooms.tourguide.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+public class ItineraryDTO {
+    private double latitudeUser;
+    private double longitudeUser;
+    private double totalDistance;
+    private List<ItineraryStopDTO> stops;
+}
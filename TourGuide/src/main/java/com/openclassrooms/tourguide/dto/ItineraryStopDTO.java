@@ -0,0 +1,14 @@
+package com.openclassrooms.tourguide.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class ItineraryStopDTO {
+    private String attractionName;
+    private double latitude;
+    private double longitude;
+    private double legDistance;
+    private double expectedRewardPoints;
+}
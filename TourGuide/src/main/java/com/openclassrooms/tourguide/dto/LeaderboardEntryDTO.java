@@ -0,0 +1,12 @@
+package com.openclassrooms.tourguide.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class LeaderboardEntryDTO {
+    private int rank;
+    private String userName;
+    private int rewardPoints;
+}
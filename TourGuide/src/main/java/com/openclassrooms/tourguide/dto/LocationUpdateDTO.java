@@ -0,0 +1,12 @@
+package com.openclassrooms.tourguide.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class LocationUpdateDTO {
+    private double latitude;
+    private double longitude;
+    private long timeVisited;
+}
@@ -0,0 +1,12 @@
+package com.openclassrooms.tourguide.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class RewardUpdateDTO {
+    private String attractionName;
+    private int rewardPoints;
+    private int rewardCount;
+}
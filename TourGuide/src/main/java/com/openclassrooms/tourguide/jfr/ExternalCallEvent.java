@@ -0,0 +1,70 @@
+package com.openclassrooms.tourguide.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.util.UUID;
+
+/**
+ * Événement JFR d'un appel à un service externe (GpsUtil, RewardCentral, TripPricer).
+ * Les identifiants ne sont convertis en texte que si l'événement est enregistré.
+ */
+@Name(ExternalCallEvent.NAME)
+@Label("External Call")
+@Description("Appel bloquant à GpsUtil, RewardCentral ou TripPricer")
+@Category({"TourGuide", "External Services"})
+@StackTrace(false)
+@Threshold("10 ms")
+public class ExternalCallEvent extends Event {
+
+    public static final String NAME = "com.openclassrooms.tourguide.ExternalCall";
+
+    public static final String GPS_UTIL = "GpsUtil";
+    public static final String REWARD_CENTRAL = "RewardCentral";
+    public static final String TRIP_PRICER = "TripPricer";
+
+    @Label("Service")
+    public String service;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("User Id")
+    public String userId;
+
+    @Label("Attraction Id")
+    public String attractionId;
+
+    @Label("Sampling")
+    @Description("Un événement sur N est enregistré parmi ceux qui dépassent le seuil")
+    @Name("sampling")
+    @SettingDefinition
+    protected boolean sampling(SamplingControl control) {
+        return control.accept();
+    }
+
+    /**
+     * Termine la mesure de l'appel et l'enregistre s'il passe le seuil et l'échantillonnage.
+     *
+     * @param service      Le service appelé
+     * @param operation    La méthode appelée
+     * @param userId       L'utilisateur concerné
+     * @param attractionId L'attraction concernée, ou null
+     */
+    public void complete(String service, String operation, UUID userId, UUID attractionId) {
+        end();
+        if (shouldCommit()) {
+            this.service = service;
+            this.operation = operation;
+            this.userId = userId.toString();
+            this.attractionId = attractionId == null ? null : attractionId.toString();
+            commit();
+        }
+    }
+}
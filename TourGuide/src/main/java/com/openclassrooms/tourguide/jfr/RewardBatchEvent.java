@@ -0,0 +1,32 @@
+package com.openclassrooms.tourguide.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Événement JFR d'un calcul de récompenses en lot (RewardsService.calculateRewards, calculateRewardsByCell).
+ */
+@Name(RewardBatchEvent.NAME)
+@Label("Reward Batch")
+@Description("Calcul des récompenses d'un lot d'utilisateurs")
+@Category({"TourGuide", "Rewards"})
+@StackTrace(false)
+public class RewardBatchEvent extends Event {
+
+    public static final String NAME = "com.openclassrooms.tourguide.RewardBatch";
+
+    @Label("Strategy")
+    @Description("PER_USER ou BY_CELL")
+    public String strategy;
+
+    @Label("Users")
+    public int users;
+
+    @Label("Concurrency")
+    @Description("Limite de l'executor adaptatif à la fin du lot")
+    public int concurrency;
+}
@@ -0,0 +1,46 @@
+package com.openclassrooms.tourguide.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+
+/**
+ * Événement JFR instantané d'une récompense attribuée à un utilisateur.
+ */
+@Name(RewardGrantEvent.NAME)
+@Label("Reward Grant")
+@Description("Récompense attribuée à un utilisateur")
+@Category({"TourGuide", "Rewards"})
+@StackTrace(false)
+public class RewardGrantEvent extends Event {
+
+    public static final String NAME = "com.openclassrooms.tourguide.RewardGrant";
+
+    @Label("User Id")
+    public String userId;
+
+    @Label("Attraction Id")
+    public String attractionId;
+
+    @Label("Attraction Name")
+    public String attractionName;
+
+    @Label("Reward Points")
+    public int rewardPoints;
+
+    @Label("Visited Location Index")
+    @Description("-1 si la récompense a été ajoutée sans son index (voir RewardsService.addUserReward)")
+    public int visitedLocationIndex;
+
+    @Label("Sampling")
+    @Description("Un événement sur N est enregistré")
+    @Name("sampling")
+    @SettingDefinition
+    protected boolean sampling(SamplingControl control) {
+        return control.accept();
+    }
+}
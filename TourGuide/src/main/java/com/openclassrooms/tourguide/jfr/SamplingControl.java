@@ -0,0 +1,57 @@
+package com.openclassrooms.tourguide.jfr;
+
+import jdk.jfr.SettingControl;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Réglage JFR "sampling" : seul un événement sur N est enregistré parmi ceux qui dépassent le seuil.
+ * La valeur est le nombre N (1 : tous les événements). Quand plusieurs enregistrements sont actifs,
+ * c'est le plus petit N demandé qui s'applique.
+ */
+public final class SamplingControl extends SettingControl {
+
+    private static final long DEFAULT_PERIOD = 1;
+
+    private final AtomicLong counter = new AtomicLong();
+    private volatile long period = DEFAULT_PERIOD;
+
+    public SamplingControl() {
+    }
+
+    @Override
+    public String combine(Set<String> settingValues) {
+        long combined = Long.MAX_VALUE;
+        for (String settingValue : settingValues) {
+            combined = Math.min(combined, parse(settingValue));
+        }
+        return String.valueOf(combined == Long.MAX_VALUE ? DEFAULT_PERIOD : combined);
+    }
+
+    @Override
+    public void setValue(String settingValue) {
+        period = parse(settingValue);
+    }
+
+    @Override
+    public String getValue() {
+        return String.valueOf(period);
+    }
+
+    /**
+     * @return true si l'événement courant fait partie de l'échantillon
+     */
+    boolean accept() {
+        long current = period;
+        return current <= 1 || counter.incrementAndGet() % current == 0;
+    }
+
+    private static long parse(String settingValue) {
+        try {
+            return Math.max(1, Long.parseLong(settingValue.trim()));
+        } catch (NumberFormatException e) {
+            return DEFAULT_PERIOD;
+        }
+    }
+}
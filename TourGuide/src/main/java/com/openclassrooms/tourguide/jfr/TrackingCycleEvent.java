@@ -0,0 +1,45 @@
+package com.openclassrooms.tourguide.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Événement JFR d'un cycle du Tracker : un cycle complet ou un passage de la voie prioritaire.
+ * Sa durée couvre le suivi du lot ; un cycle complet inclut aussi le déport des utilisateurs inactifs.
+ */
+@Name(TrackingCycleEvent.NAME)
+@Label("Tracking Cycle")
+@Description("Cycle de suivi des utilisateurs par le Tracker")
+@Category({"TourGuide", "Tracking"})
+@StackTrace(false)
+public class TrackingCycleEvent extends Event {
+
+    public static final String NAME = "com.openclassrooms.tourguide.TrackingCycle";
+
+    @Label("Priority Lane")
+    @Description("true pour un passage de la voie prioritaire, false pour un cycle complet")
+    public boolean priorityLane;
+
+    @Label("Users Requested")
+    public int usersRequested;
+
+    @Label("Users Completed")
+    public int usersCompleted;
+
+    @Label("Users Carried Over")
+    public int usersCarriedOver;
+
+    @Label("Users Failed")
+    public int usersFailed;
+
+    @Label("Users Skipped In Progress")
+    public int usersSkippedInProgress;
+
+    @Label("Users Spilled")
+    @Description("Utilisateurs inactifs dont l'historique a été déporté sur disque à la fin du cycle")
+    public int usersSpilled;
+}
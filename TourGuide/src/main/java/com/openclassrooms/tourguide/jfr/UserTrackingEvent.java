@@ -0,0 +1,50 @@
+package com.openclassrooms.tourguide.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Événement JFR du suivi d'un utilisateur : localisation par GpsUtil, ajout à l'historique et calcul des récompenses.
+ */
+@Name(UserTrackingEvent.NAME)
+@Label("User Tracking")
+@Description("Suivi de la localisation et des récompenses d'un utilisateur")
+@Category({"TourGuide", "Tracking"})
+@StackTrace(false)
+@Threshold("20 ms")
+public class UserTrackingEvent extends Event {
+
+    public static final String NAME = "com.openclassrooms.tourguide.UserTracking";
+
+    @Label("User Id")
+    public String userId;
+
+    @Label("Execution Mode")
+    public String executionMode;
+
+    @Label("GpsUtil Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long gpsDuration;
+
+    @Label("RewardCentral Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long rewardCentralDuration;
+
+    @Label("Rewards Granted")
+    public int rewardsGranted;
+
+    @Label("Sampling")
+    @Description("Un événement sur N est enregistré parmi ceux qui dépassent le seuil")
+    @Name("sampling")
+    @SettingDefinition
+    protected boolean sampling(SamplingControl control) {
+        return control.accept();
+    }
+}
@@ -0,0 +1,98 @@
+package com.openclassrooms.tourguide.model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import gpsUtil.location.Attraction;
+
+/**
+ * Registre des attractions connues, qui attribue à chacune un ordinal stable.
+ * GpsUtil renvoie de nouvelles instances d'attractions à chaque appel : comme dans le reste
+ * de l'application, une attraction est identifiée par son nom. Les ordinaux permettent
+ * de stocker des références compactes (int) à une attraction, par exemple dans les récompenses.
+ * Chaque RewardsService possède son catalogue : les ordinaux n'ont de sens que pour le catalogue qui les a attribués.
+ */
+public final class AttractionCatalog {
+
+	private final Map<String, Integer> ordinalsByName = new ConcurrentHashMap<>();
+	private final List<Attraction> attractions = new CopyOnWriteArrayList<>();
+	/**
+	 * Incrémentée à chaque enregistrement d'une nouvelle attraction
+	 */
+	private volatile int version;
+
+	/**
+	 * Renvoie l'ordinal d'une attraction, en l'enregistrant si elle est inconnue.
+	 *
+	 * @param attraction L'attraction
+	 * @return L'ordinal de l'attraction
+	 */
+	public int ordinalOf(Attraction attraction) {
+		Integer ordinal = ordinalsByName.get(attraction.attractionName);
+		if (ordinal != null) {
+			return ordinal;
+		}
+		return register(attraction);
+	}
+
+	/**
+	 * Enregistre toutes les attractions d'un catalogue, dans l'ordre de la liste.
+	 *
+	 * @param attractionList Les attractions
+	 */
+	public void registerAll(List<Attraction> attractionList) {
+		for (Attraction attraction : attractionList) {
+			ordinalOf(attraction);
+		}
+	}
+
+	/**
+	 * Renvoie les ordinaux d'une liste d'attractions, dans le même ordre.
+	 *
+	 * @param attractionList Les attractions
+	 * @return Le tableau des ordinaux
+	 */
+	public int[] ordinalsOf(List<Attraction> attractionList) {
+		int[] ordinals = new int[attractionList.size()];
+		for (int i = 0; i < ordinals.length; i++) {
+			ordinals[i] = ordinalOf(attractionList.get(i));
+		}
+		return ordinals;
+	}
+
+	/**
+	 * @param ordinal L'ordinal d'une attraction enregistrée
+	 * @return L'attraction correspondante (la première instance enregistrée sous ce nom)
+	 */
+	public Attraction get(int ordinal) {
+		return attractions.get(ordinal);
+	}
+
+	/**
+	 * @return Le nombre d'attractions enregistrées
+	 */
+	public int size() {
+		return attractions.size();
+	}
+
+	/**
+	 * @return La version du catalogue, qui change à chaque nouvelle attraction : les résultats
+	 * calculés sur le catalogue (voir NearbyAttractionCache) sont invalides quand elle change
+	 */
+	public int version() {
+		return version;
+	}
+
+	private synchronized int register(Attraction attraction) {
+		Integer ordinal = ordinalsByName.get(attraction.attractionName);
+		if (ordinal == null) {
+			ordinal = attractions.size();
+			attractions.add(attraction);
+			ordinalsByName.put(attraction.attractionName, ordinal);
+			version++;
+		}
+		return ordinal;
+	}
+}
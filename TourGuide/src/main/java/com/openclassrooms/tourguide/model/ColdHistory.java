@@ -0,0 +1,37 @@
+package com.openclassrooms.tourguide.model;
+
+import java.util.BitSet;
+
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Partie déportée de l'historique d'un utilisateur : référence du segment sur disque et résumé
+ * gardé en mémoire pour répondre sans recharger (nombre de localisations et de récompenses,
+ * attractions récompensées, dernière localisation).
+ */
+final class ColdHistory {
+
+	final HistorySegmentStore store;
+	final HistorySegmentStore.Segment segment;
+	final int locationCount;
+	final int rewardCount;
+	final BitSet rewardedAttractions;
+	final VisitedLocation lastVisitedLocation;
+
+	ColdHistory(HistorySegmentStore store, HistorySegmentStore.Segment segment, int locationCount, int rewardCount,
+			BitSet rewardedAttractions, VisitedLocation lastVisitedLocation) {
+		this.store = store;
+		this.segment = segment;
+		this.locationCount = locationCount;
+		this.rewardCount = rewardCount;
+		this.rewardedAttractions = rewardedAttractions;
+		this.lastVisitedLocation = lastVisitedLocation;
+	}
+
+	/**
+	 * @return Le même résumé, pointant vers une copie du segment (voir HistorySegmentStore.compact)
+	 */
+	ColdHistory withSegment(HistorySegmentStore.Segment relocated) {
+		return new ColdHistory(store, relocated, locationCount, rewardCount, rewardedAttractions, lastVisitedLocation);
+	}
+}
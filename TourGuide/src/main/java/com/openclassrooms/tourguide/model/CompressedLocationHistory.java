@@ -0,0 +1,374 @@
+package com.openclassrooms.tourguide.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Historique de localisation compressé d'un utilisateur.
+ * Latitude et longitude sont quantifiées en entiers (1e-7 degré, environ 1 cm), l'instant est en millisecondes epoch.
+ * Les localisations sont regroupées par blocs de BLOCK_SIZE : la première de chaque bloc est gardée en valeurs
+ * absolues dans un point de reprise, les suivantes sont encodées par différence avec la précédente,
+ * en varint zig-zag (les localisations successives d'un utilisateur sont proches dans l'espace et le temps).
+ * L'accès à une localisation décode au plus BLOCK_SIZE - 1 différences depuis le point de reprise de son bloc ;
+ * la lecture séquentielle (voir Reader) décode une seule différence par localisation, sans allocation.
+ *
+ * L'historique ne fait que croître : les données déjà écrites ne sont jamais modifiées, ce qui permet de partager
+ * les tableaux avec une vue figée (voir view). Un historique vidé est remplacé, pas réinitialisé.
+ *
+ * Les localisations renvoyées connaissent leur index dans l'historique complet de l'utilisateur (voir HistoryLocation) :
+ * un historique qui suit une partie déportée commence à l'index firstIndex.
+ *
+ * Cette classe n'est pas thread-safe : User synchronise les accès.
+ */
+final class CompressedLocationHistory {
+
+	/**
+	 * Nombre de localisations par bloc
+	 */
+	static final int BLOCK_SIZE = 64;
+	/**
+	 * Unités de quantification par degré
+	 */
+	static final double SCALE = 1e7;
+
+	private static final byte[] EMPTY_BYTES = new byte[0];
+	private static final int[] EMPTY_INTS = new int[0];
+	private static final long[] EMPTY_LONGS = new long[0];
+
+	private final UUID userId;
+	/**
+	 * Index de la première localisation dans l'historique complet de l'utilisateur
+	 */
+	private final int firstIndex;
+	private byte[] bytes = EMPTY_BYTES;
+	private int length;
+	private int size;
+	private int[] blockOffsets = EMPTY_INTS;
+	private int[] blockLatitudes = EMPTY_INTS;
+	private int[] blockLongitudes = EMPTY_INTS;
+	private long[] blockTimes = EMPTY_LONGS;
+	private int lastLatitude;
+	private int lastLongitude;
+	private long lastTime;
+	/**
+	 * Dernière localisation ajoutée, renvoyée telle quelle par last()
+	 */
+	private HistoryLocation last;
+
+	/**
+	 * @param userId     L'utilisateur
+	 * @param firstIndex Index de la première localisation dans l'historique complet de l'utilisateur
+	 */
+	CompressedLocationHistory(UUID userId, int firstIndex) {
+		this.userId = userId;
+		this.firstIndex = firstIndex;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return La dernière localisation ajoutée, telle qu'enregistrée (quantifiée), sans décodage, ou null si l'historique est vide
+	 */
+	VisitedLocation last() {
+		return last;
+	}
+
+	/**
+	 * Ajoute une localisation. La localisation enregistrée est quantifiée : elle se relit à l'identique,
+	 * qu'elle soit la dernière de l'historique ou non.
+	 *
+	 * @param visitedLocation La localisation à ajouter
+	 * @return La localisation telle qu'enregistrée, avec son index dans l'historique
+	 */
+	VisitedLocation add(VisitedLocation visitedLocation) {
+		int latitude = quantize(visitedLocation.location.latitude);
+		int longitude = quantize(visitedLocation.location.longitude);
+		long time = visitedLocation.timeVisited.getTime();
+		add(latitude, longitude, time);
+		Location location = degrees(latitude) == visitedLocation.location.latitude
+				&& degrees(longitude) == visitedLocation.location.longitude
+				? visitedLocation.location
+				: new Location(degrees(latitude), degrees(longitude));
+		last = new HistoryLocation(userId, location, new Date(time), firstIndex + size - 1);
+		return last;
+	}
+
+	private void add(int latitude, int longitude, long time) {
+		if (size % BLOCK_SIZE == 0) {
+			int block = size / BLOCK_SIZE;
+			if (block == blockOffsets.length) {
+				int capacity = Math.max(2, block * 2);
+				blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+				blockLatitudes = Arrays.copyOf(blockLatitudes, capacity);
+				blockLongitudes = Arrays.copyOf(blockLongitudes, capacity);
+				blockTimes = Arrays.copyOf(blockTimes, capacity);
+			}
+			blockOffsets[block] = length;
+			blockLatitudes[block] = latitude;
+			blockLongitudes[block] = longitude;
+			blockTimes[block] = time;
+		} else {
+			// au plus 3 varints de 10 octets
+			if (length + 30 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(32, bytes.length + (bytes.length >> 1) + 30));
+			}
+			writeVarLong((long) latitude - lastLatitude);
+			writeVarLong((long) longitude - lastLongitude);
+			writeVarLong(time - lastTime);
+		}
+		lastLatitude = latitude;
+		lastLongitude = longitude;
+		lastTime = time;
+		size++;
+	}
+
+	/**
+	 * Ajoute à la suite toutes les localisations d'un autre historique.
+	 *
+	 * @param other L'historique à ajouter
+	 */
+	void appendAll(CompressedLocationHistory other) {
+		Reader reader = new Reader();
+		for (int i = 0; i < other.size; i++) {
+			reader.read(other, i);
+			add(reader.latitude, reader.longitude, reader.time);
+		}
+		if (other.last != null) {
+			last = other.last;
+		}
+	}
+
+	/**
+	 * Recrée la localisation d'index donné. La dernière localisation, déjà quantifiée, est renvoyée sans décodage.
+	 *
+	 * @param index Index de la localisation, entre 0 et size() exclu
+	 * @return La localisation
+	 */
+	VisitedLocation get(int index) {
+		return get(index, new Reader());
+	}
+
+	private VisitedLocation get(int index, Reader reader) {
+		if (index == size - 1 && last != null) {
+			return last;
+		}
+		reader.read(this, index);
+		return reader.toVisitedLocation();
+	}
+
+	/**
+	 * Indique si une localisation est celle d'index donné, après quantification.
+	 * Ne décode qu'un bloc au plus : sert à vérifier l'index porté par une HistoryLocation.
+	 *
+	 * @param index           Index de la localisation dans cet historique
+	 * @param visitedLocation La localisation
+	 * @return true si la localisation d'index donné a même position et même instant
+	 */
+	boolean matches(int index, VisitedLocation visitedLocation) {
+		if (index < 0 || index >= size || !userId.equals(visitedLocation.userId)) {
+			return false;
+		}
+		Reader reader = new Reader();
+		reader.read(this, index);
+		return reader.latitude == quantize(visitedLocation.location.latitude)
+				&& reader.longitude == quantize(visitedLocation.location.longitude)
+				&& reader.time == visitedLocation.timeVisited.getTime();
+	}
+
+	/**
+	 * @return Index de la première localisation dans l'historique complet de l'utilisateur
+	 */
+	int firstIndex() {
+		return firstIndex;
+	}
+
+	/**
+	 * Renvoie une vue en lecture seule de l'historique tel qu'il est à cet instant.
+	 * La vue partage les données de l'historique : elle ne coûte rien à créer
+	 * et reste valide, sans verrou, quand l'historique continue de croître.
+	 *
+	 * @return La vue figée de l'historique
+	 */
+	List<VisitedLocation> view() {
+		CompressedLocationHistory frozen = new CompressedLocationHistory(userId, firstIndex);
+		frozen.bytes = bytes;
+		frozen.length = length;
+		frozen.size = size;
+		frozen.blockOffsets = blockOffsets;
+		frozen.blockLatitudes = blockLatitudes;
+		frozen.blockLongitudes = blockLongitudes;
+		frozen.blockTimes = blockTimes;
+		frozen.last = last;
+		return new View(frozen);
+	}
+
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(size);
+		out.writeInt(length);
+		out.write(bytes, 0, length);
+		int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		for (int block = 0; block < blocks; block++) {
+			out.writeInt(blockOffsets[block]);
+			out.writeInt(blockLatitudes[block]);
+			out.writeInt(blockLongitudes[block]);
+			out.writeLong(blockTimes[block]);
+		}
+	}
+
+	/**
+	 * Relit un historique écrit par writeTo ; un segment contient toujours l'historique depuis son début.
+	 */
+	static CompressedLocationHistory readFrom(DataInputStream in, UUID userId) throws IOException {
+		CompressedLocationHistory history = new CompressedLocationHistory(userId, 0);
+		history.size = in.readInt();
+		history.length = in.readInt();
+		history.bytes = new byte[history.length];
+		in.readFully(history.bytes);
+		int blocks = (history.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		history.blockOffsets = new int[blocks];
+		history.blockLatitudes = new int[blocks];
+		history.blockLongitudes = new int[blocks];
+		history.blockTimes = new long[blocks];
+		for (int block = 0; block < blocks; block++) {
+			history.blockOffsets[block] = in.readInt();
+			history.blockLatitudes[block] = in.readInt();
+			history.blockLongitudes[block] = in.readInt();
+			history.blockTimes[block] = in.readLong();
+		}
+		if (history.size > 0) {
+			Reader reader = new Reader();
+			reader.read(history, history.size - 1);
+			history.lastLatitude = reader.latitude;
+			history.lastLongitude = reader.longitude;
+			history.lastTime = reader.time;
+			history.last = reader.toVisitedLocation();
+		}
+		return history;
+	}
+
+	static int quantize(double degrees) {
+		return (int) Math.round(degrees * SCALE);
+	}
+
+	static double degrees(int quantized) {
+		// une division (et non une multiplication par 1e-7) restitue exactement les valeurs d'au plus 7 décimales
+		return quantized / SCALE;
+	}
+
+	private void writeVarLong(long value) {
+		long zigZag = (value << 1) ^ (value >> 63);
+		while ((zigZag & ~0x7FL) != 0) {
+			bytes[length++] = (byte) ((zigZag & 0x7F) | 0x80);
+			zigZag >>>= 7;
+		}
+		bytes[length++] = (byte) zigZag;
+	}
+
+	/**
+	 * Curseur de décodage réutilisable : lire les index dans l'ordre croissant ne décode qu'une différence
+	 * par localisation, un saut en arrière ou vers un autre bloc repart du point de reprise.
+	 */
+	static final class Reader {
+		private CompressedLocationHistory history;
+		private int index = -1;
+		private int offset;
+		int latitude;
+		int longitude;
+		long time;
+
+		/**
+		 * Décode la localisation d'index donné dans les champs latitude, longitude et time.
+		 */
+		void read(CompressedLocationHistory history, int target) {
+			if (history != this.history || target < index || target / BLOCK_SIZE != index / BLOCK_SIZE) {
+				int block = target / BLOCK_SIZE;
+				this.history = history;
+				index = block * BLOCK_SIZE;
+				offset = history.blockOffsets[block];
+				latitude = history.blockLatitudes[block];
+				longitude = history.blockLongitudes[block];
+				time = history.blockTimes[block];
+			}
+			byte[] bytes = history.bytes;
+			while (index < target) {
+				latitude += (int) readVarLong(bytes);
+				longitude += (int) readVarLong(bytes);
+				time += readVarLong(bytes);
+				index++;
+			}
+		}
+
+		double latitudeDegrees() {
+			return degrees(latitude);
+		}
+
+		double longitudeDegrees() {
+			return degrees(longitude);
+		}
+
+		/**
+		 * @return La dernière localisation décodée, avec son index dans l'historique complet
+		 */
+		HistoryLocation toVisitedLocation() {
+			return new HistoryLocation(history.userId, new Location(degrees(latitude), degrees(longitude)), new Date(time),
+					history.firstIndex + index);
+		}
+
+		private long readVarLong(byte[] bytes) {
+			long zigZag = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[offset++];
+				zigZag |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return (zigZag >>> 1) ^ -(zigZag & 1);
+		}
+	}
+
+	/**
+	 * Vue figée en lecture seule ; l'accès séquentiel ne décode qu'une différence par élément.
+	 */
+	private static final class View extends AbstractList<VisitedLocation> implements RandomAccess {
+		private final CompressedLocationHistory history;
+		private final Reader reader = new Reader();
+
+		private View(CompressedLocationHistory history) {
+			this.history = history;
+		}
+
+		@Override
+		public synchronized VisitedLocation get(int index) {
+			return history.get(checkIndex(index), reader);
+		}
+
+		private int checkIndex(int index) {
+			if (index < 0 || index >= history.size) {
+				throw new IndexOutOfBoundsException("Index " + index + " hors de l'historique (" + history.size + ")");
+			}
+			return index;
+		}
+
+		@Override
+		public int size() {
+			return history.size;
+		}
+	}
+}
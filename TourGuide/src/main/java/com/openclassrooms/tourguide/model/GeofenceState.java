@@ -0,0 +1,173 @@
+package com.openclassrooms.tourguide.model;
+
+import java.util.Arrays;
+
+/**
+ * État des zones de proximité (geofences) d'un utilisateur : attractions dans la zone desquelles il se trouve,
+ * avec l'instant d'entrée, et pour chaque attraction (par ordinal, voir AttractionCatalog) le nombre de visites
+ * et le temps passé dans la zone lors des visites terminées.
+ * L'état retient aussi le nombre de localisations de l'historique déjà évaluées : chaque mise à jour
+ * ne traite que les localisations ajoutées depuis. Il est remis à zéro quand l'historique est vidé (voir reset).
+ *
+ * Cette classe n'est pas thread-safe : GeofenceEngine synchronise les accès sur l'instance.
+ */
+public final class GeofenceState {
+
+	private static final int[] EMPTY_INTS = new int[0];
+	private static final long[] EMPTY_LONGS = new long[0];
+
+	private int historyGeneration;
+	private int evaluatedLocations;
+	private long lastLocationMillis;
+	private int[] insideOrdinals = EMPTY_INTS;
+	private long[] enteredAtMillis = EMPTY_LONGS;
+	private int insideCount;
+	private int[] visits = EMPTY_INTS;
+	private long[] dwellMillis = EMPTY_LONGS;
+
+	/**
+	 * @return Le nombre de localisations de l'historique déjà évaluées
+	 */
+	public int getEvaluatedLocations() {
+		return evaluatedLocations;
+	}
+
+	/**
+	 * Enregistre l'évaluation d'une localisation.
+	 *
+	 * @param locationIndex Index de la localisation dans l'historique
+	 * @param timeMillis    Instant de la localisation
+	 */
+	public void evaluated(int locationIndex, long timeMillis) {
+		evaluatedLocations = locationIndex + 1;
+		lastLocationMillis = Math.max(lastLocationMillis, timeMillis);
+	}
+
+	/**
+	 * @return La génération de l'historique évalué (voir User.getHistoryGeneration)
+	 */
+	public int getHistoryGeneration() {
+		return historyGeneration;
+	}
+
+	/**
+	 * Repart du début d'un nouvel historique, après que l'historique a été vidé : les visites en cours sont closes
+	 * à la dernière localisation évaluée, sans événement de sortie ; visites et temps passé déjà cumulés sont conservés.
+	 *
+	 * @param historyGeneration La génération du nouvel historique
+	 */
+	public void reset(int historyGeneration) {
+		for (int i = 0; i < insideCount; i++) {
+			dwellMillis[insideOrdinals[i]] += Math.max(0, lastLocationMillis - enteredAtMillis[i]);
+		}
+		insideCount = 0;
+		evaluatedLocations = 0;
+		this.historyGeneration = historyGeneration;
+	}
+
+	public boolean isInside(int attractionOrdinal) {
+		return indexOfInside(attractionOrdinal) >= 0;
+	}
+
+	/**
+	 * @return Le nombre d'attractions dans la zone desquelles l'utilisateur se trouve
+	 */
+	public int getInsideCount() {
+		return insideCount;
+	}
+
+	/**
+	 * @param i Entre 0 et getInsideCount() exclu
+	 * @return L'ordinal de la i-ème attraction dans la zone de laquelle l'utilisateur se trouve
+	 */
+	public int insideOrdinal(int i) {
+		return insideOrdinals[i];
+	}
+
+	/**
+	 * @return L'instant d'entrée dans la zone d'une attraction, ou -1 si l'utilisateur n'y est pas
+	 */
+	public long getEnteredAtMillis(int attractionOrdinal) {
+		int i = indexOfInside(attractionOrdinal);
+		return i < 0 ? -1 : enteredAtMillis[i];
+	}
+
+	/**
+	 * Enregistre l'entrée dans la zone d'une attraction.
+	 */
+	public void enter(int attractionOrdinal, long timeMillis) {
+		if (insideCount == insideOrdinals.length) {
+			int capacity = Math.max(2, insideCount * 2);
+			insideOrdinals = Arrays.copyOf(insideOrdinals, capacity);
+			enteredAtMillis = Arrays.copyOf(enteredAtMillis, capacity);
+		}
+		insideOrdinals[insideCount] = attractionOrdinal;
+		enteredAtMillis[insideCount] = timeMillis;
+		insideCount++;
+		ensureOrdinal(attractionOrdinal);
+		visits[attractionOrdinal]++;
+	}
+
+	/**
+	 * Enregistre la sortie de la zone d'une attraction et cumule la durée de la visite.
+	 *
+	 * @return La durée de la visite en millisecondes (0 si les instants ne sont pas chronologiques)
+	 */
+	public long exit(int attractionOrdinal, long timeMillis) {
+		int i = indexOfInside(attractionOrdinal);
+		if (i < 0) {
+			return 0;
+		}
+		long dwell = Math.max(0, timeMillis - enteredAtMillis[i]);
+		insideCount--;
+		insideOrdinals[i] = insideOrdinals[insideCount];
+		enteredAtMillis[i] = enteredAtMillis[insideCount];
+		dwellMillis[attractionOrdinal] += dwell;
+		return dwell;
+	}
+
+	/**
+	 * @return Le nombre d'entrées dans la zone d'une attraction
+	 */
+	public int getVisits(int attractionOrdinal) {
+		return attractionOrdinal < visits.length ? visits[attractionOrdinal] : 0;
+	}
+
+	/**
+	 * Temps total passé dans la zone d'une attraction ; une visite en cours compte jusqu'à la dernière localisation évaluée.
+	 *
+	 * @return La durée en millisecondes
+	 */
+	public long getDwellMillis(int attractionOrdinal) {
+		long dwell = attractionOrdinal < dwellMillis.length ? dwellMillis[attractionOrdinal] : 0;
+		int i = indexOfInside(attractionOrdinal);
+		if (i >= 0) {
+			dwell += Math.max(0, lastLocationMillis - enteredAtMillis[i]);
+		}
+		return dwell;
+	}
+
+	/**
+	 * @return Un majorant strict des ordinaux des attractions visitées
+	 */
+	public int getOrdinalBound() {
+		return visits.length;
+	}
+
+	private void ensureOrdinal(int attractionOrdinal) {
+		if (attractionOrdinal >= visits.length) {
+			int capacity = Math.max(attractionOrdinal + 1, visits.length + (visits.length >> 1));
+			visits = Arrays.copyOf(visits, capacity);
+			dwellMillis = Arrays.copyOf(dwellMillis, capacity);
+		}
+	}
+
+	private int indexOfInside(int attractionOrdinal) {
+		for (int i = 0; i < insideCount; i++) {
+			if (insideOrdinals[i] == attractionOrdinal) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
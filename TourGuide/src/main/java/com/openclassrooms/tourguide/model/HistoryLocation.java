@@ -0,0 +1,24 @@
+package com.openclassrooms.tourguide.model;
+
+import java.util.Date;
+import java.util.UUID;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Localisation lue dans l'historique d'un utilisateur (ou renvoyée à son ajout), qui connaît son index
+ * dans cet historique : une récompense qui la référence retrouve sa localisation sans recherche.
+ */
+final class HistoryLocation extends VisitedLocation {
+
+	/**
+	 * Index de la localisation dans l'historique complet de l'utilisateur, déporté compris
+	 */
+	final int index;
+
+	HistoryLocation(UUID userId, Location location, Date timeVisited, int index) {
+		super(userId, location, timeVisited);
+		this.index = index;
+	}
+}
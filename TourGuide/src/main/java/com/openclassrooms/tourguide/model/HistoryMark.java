@@ -0,0 +1,27 @@
+package com.openclassrooms.tourguide.model;
+
+/**
+ * Taille de l'historique d'un utilisateur à un instant donné (voir User.markHistory).
+ * L'historique et les récompenses ne font que croître : le préfixe délimité par une marque
+ * reste identique tant que l'historique n'est pas vidé, ce que la génération permet de détecter.
+ */
+public final class HistoryMark {
+
+	final int locationCount;
+	final int rewardCount;
+	final int generation;
+
+	HistoryMark(int locationCount, int rewardCount, int generation) {
+		this.locationCount = locationCount;
+		this.rewardCount = rewardCount;
+		this.generation = generation;
+	}
+
+	public int getLocationCount() {
+		return locationCount;
+	}
+
+	public int getRewardCount() {
+		return rewardCount;
+	}
+}
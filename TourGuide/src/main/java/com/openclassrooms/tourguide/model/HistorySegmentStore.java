@@ -0,0 +1,322 @@
+package com.openclassrooms.tourguide.model;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fichier de segments où sont déportés les historiques des utilisateurs inactifs.
+ * Chaque déport ajoute un segment en fin de fichier, jamais modifié ensuite : les écritures
+ * concurrentes réservent leur zone puis écrivent à une position absolue, sans verrou.
+ * Un segment remplacé par un déport plus récent ou rechargé n'est plus lu : sa taille est comptée comme perdue.
+ *
+ * Quand la place perdue dépasse la moitié du fichier, le magasin est compacté (voir compact) : les segments
+ * encore utilisés sont recopiés dans un nouveau fichier, et l'ancien est fermé et supprimé dès que plus aucun
+ * segment ni aucune lecture en cours n'y fait référence.
+ *
+ * Le magasin mesure aussi les rechargements (fautes) : nombre et latence.
+ */
+public class HistorySegmentStore implements Closeable {
+
+	private final Path directory;
+	private volatile SegmentFile current;
+	/**
+	 * Fichiers remplacés par une compaction, fermés dès qu'ils ne sont plus utilisés ; protégé par this
+	 */
+	private final List<SegmentFile> retiredFiles = new ArrayList<>();
+	private final LongAdder deadBytes = new LongAdder();
+	private final LongAdder spills = new LongAdder();
+	private final LongAdder compactions = new LongAdder();
+	private final LongAdder faults = new LongAdder();
+	private final LongAdder totalFaultNanos = new LongAdder();
+	private final LongAccumulator maxFaultNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param path Fichier des segments, vidé à l'ouverture. Les fichiers des compactions sont créés à côté.
+	 */
+	public HistorySegmentStore(Path path) throws IOException {
+		this(path, false);
+	}
+
+	private HistorySegmentStore(Path path, boolean temporary) throws IOException {
+		this.directory = path.toAbsolutePath().getParent();
+		this.current = new SegmentFile(path, temporary);
+	}
+
+	/**
+	 * Ouvre un magasin dans un fichier temporaire, supprimé à sa fermeture ou à l'arrêt de la JVM.
+	 *
+	 * @return Le magasin
+	 */
+	public static HistorySegmentStore createTemporary() {
+		try {
+			return new HistorySegmentStore(createTemporaryFile(null), true);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static Path createTemporaryFile(Path directory) throws IOException {
+		Path file = directory == null
+				? Files.createTempFile("tourguide-history", ".seg")
+				: Files.createTempFile(directory, "tourguide-history", ".seg");
+		file.toFile().deleteOnExit();
+		return file;
+	}
+
+	Segment write(byte[] segment) {
+		Segment written = current.append(segment);
+		spills.increment();
+		return written;
+	}
+
+	/**
+	 * Recopie un segment dans le fichier courant, sans le compter comme un déport.
+	 */
+	Segment copy(Segment segment) {
+		return current.append(segment.read());
+	}
+
+	/**
+	 * Signale qu'un segment ne sera plus lu.
+	 */
+	void release(Segment segment) {
+		if (segment.file == current) {
+			deadBytes.add(segment.length);
+		}
+		segment.file.releaseSegment();
+	}
+
+	void recordFault(long nanos) {
+		faults.increment();
+		totalFaultNanos.add(nanos);
+		maxFaultNanos.accumulate(nanos);
+	}
+
+	/**
+	 * @param minDeadBytes Place perdue en deçà de laquelle la compaction n'en vaut pas la peine
+	 * @return true si la place perdue atteint minDeadBytes et dépasse la moitié du fichier courant
+	 */
+	public boolean needsCompaction(long minDeadBytes) {
+		long dead = deadBytes.sum();
+		return dead >= minDeadBytes && dead * 2 > current.size();
+	}
+
+	/**
+	 * Recopie dans un nouveau fichier les segments des utilisateurs donnés ; les déports suivants y sont écrits.
+	 * L'ancien fichier est fermé et supprimé dès qu'il n'est plus utilisé : un utilisateur absent de la liste
+	 * y garde son segment, qui reste lisible.
+	 * Les déports ne doivent pas être concurrents d'une compaction.
+	 *
+	 * @param users Les utilisateurs dont l'historique a pu être déporté
+	 */
+	public void compact(Collection<User> users) {
+		SegmentFile previous = current;
+		try {
+			current = new SegmentFile(createTemporaryFile(directory), true);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Création du fichier de compaction impossible dans " + directory, e);
+		}
+		deadBytes.reset();
+		for (User user : users) {
+			user.relocateSegment(this, previous);
+		}
+		synchronized (this) {
+			retiredFiles.removeIf(SegmentFile::isClosed);
+			retiredFiles.add(previous);
+		}
+		previous.retire();
+		compactions.increment();
+	}
+
+	/**
+	 * @return La taille du fichier courant, segments inutilisés compris, en octets
+	 */
+	public long getSizeBytes() {
+		return current.size();
+	}
+
+	/**
+	 * @return La taille des segments du fichier courant remplacés ou rechargés, qui ne seront plus lus, en octets
+	 */
+	public long getDeadBytes() {
+		return deadBytes.sum();
+	}
+
+	public long getSpillCount() {
+		return spills.sum();
+	}
+
+	public long getCompactionCount() {
+		return compactions.sum();
+	}
+
+	public long getFaultCount() {
+		return faults.sum();
+	}
+
+	public double getMeanFaultMillis() {
+		long count = faults.sum();
+		return count == 0 ? 0 : totalFaultNanos.sum() / 1e6 / count;
+	}
+
+	public double getMaxFaultMillis() {
+		return maxFaultNanos.get() / 1e6;
+	}
+
+	@Override
+	public void close() throws IOException {
+		List<SegmentFile> files;
+		synchronized (this) {
+			files = new ArrayList<>(retiredFiles);
+			retiredFiles.clear();
+		}
+		files.add(current);
+		for (SegmentFile file : files) {
+			file.close();
+		}
+	}
+
+	/**
+	 * Emplacement d'un segment dans un fichier du magasin
+	 */
+	static final class Segment {
+		private final SegmentFile file;
+		private final long offset;
+		final int length;
+
+		private Segment(SegmentFile file, long offset, int length) {
+			this.file = file;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		boolean isIn(SegmentFile segmentFile) {
+			return file == segmentFile;
+		}
+
+		byte[] read() {
+			return file.read(offset, length);
+		}
+
+		/**
+		 * Garde le fichier du segment ouvert jusqu'à unpin, pour une lecture faite hors du verrou de l'utilisateur.
+		 */
+		void pin() {
+			file.pin();
+		}
+
+		void unpin() {
+			file.unpin();
+		}
+	}
+
+	static final class SegmentFile {
+		private final Path path;
+		private final boolean temporary;
+		private final FileChannel channel;
+		private final AtomicLong end = new AtomicLong();
+		// protégés par this
+		private int liveSegments;
+		private int readers;
+		private boolean retired;
+		private boolean closed;
+
+		private SegmentFile(Path path, boolean temporary) throws IOException {
+			this.path = path;
+			this.temporary = temporary;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		private Segment append(byte[] segment) {
+			long offset = end.getAndAdd(segment.length);
+			ByteBuffer buffer = ByteBuffer.wrap(segment);
+			try {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer, offset + buffer.position());
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Écriture du segment impossible dans " + path, e);
+			}
+			synchronized (this) {
+				liveSegments++;
+			}
+			return new Segment(this, offset, segment.length);
+		}
+
+		private byte[] read(long offset, int length) {
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			try {
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, offset + buffer.position()) < 0) {
+						throw new EOFException("Segment tronqué à l'offset " + offset);
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Lecture du segment impossible dans " + path, e);
+			}
+			return buffer.array();
+		}
+
+		private long size() {
+			return end.get();
+		}
+
+		private synchronized void pin() {
+			readers++;
+		}
+
+		private synchronized void unpin() {
+			readers--;
+			closeIfUnused();
+		}
+
+		private synchronized void releaseSegment() {
+			liveSegments--;
+			closeIfUnused();
+		}
+
+		private synchronized void retire() {
+			retired = true;
+			closeIfUnused();
+		}
+
+		private synchronized boolean isClosed() {
+			return closed;
+		}
+
+		private void closeIfUnused() {
+			if (retired && liveSegments == 0 && readers == 0) {
+				try {
+					close();
+				} catch (IOException e) {
+					throw new UncheckedIOException("Fermeture impossible de " + path, e);
+				}
+			}
+		}
+
+		private synchronized void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			channel.close();
+			if (temporary) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+}
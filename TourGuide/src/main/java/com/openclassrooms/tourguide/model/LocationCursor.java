@@ -0,0 +1,64 @@
+package com.openclassrooms.tourguide.model;
+
+/**
+ * Parcours séquentiel de l'historique de localisation d'un utilisateur, sans créer d'objet par localisation.
+ * Chaque appel à next() décode la localisation suivante sous le verrou de l'utilisateur ; les valeurs lues
+ * restent disponibles jusqu'à l'appel suivant. Un curseur n'est pas thread-safe : il est propre à un calcul.
+ *
+ * Comme getVisitedLocation, la lecture d'une localisation déportée recharge l'historique.
+ */
+public final class LocationCursor {
+
+	private final User user;
+	private final int end;
+	final CompressedLocationHistory.Reader reader = new CompressedLocationHistory.Reader();
+	int nextIndex;
+	private int index = -1;
+	private double latitude;
+	private double longitude;
+	private long timeMillis;
+
+	LocationCursor(User user, int from, int end) {
+		this.user = user;
+		this.nextIndex = Math.max(0, from);
+		this.end = end;
+	}
+
+	/**
+	 * Passe à la localisation suivante.
+	 *
+	 * @return false quand la fin du parcours est atteinte
+	 */
+	public boolean next() {
+		if (nextIndex >= end || !user.readLocation(this)) {
+			return false;
+		}
+		index = nextIndex++;
+		latitude = reader.latitudeDegrees();
+		longitude = reader.longitudeDegrees();
+		timeMillis = reader.time;
+		return true;
+	}
+
+	/**
+	 * @return L'index dans l'historique de la localisation courante
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+	/**
+	 * @return L'instant de la localisation courante, en millisecondes epoch
+	 */
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+}
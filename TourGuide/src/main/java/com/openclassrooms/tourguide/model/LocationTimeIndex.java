@@ -0,0 +1,84 @@
+package com.openclassrooms.tourguide.model;
+
+import java.util.Arrays;
+
+/**
+ * Index temporel de l'historique de localisation d'un utilisateur.
+ * Les instants de visite sont maintenus triés avec, pour chacun, l'index de la localisation
+ * dans l'historique : une requête sur une plage de temps se fait par recherche dichotomique.
+ * Les localisations arrivent presque toujours dans l'ordre chronologique : l'ajout est alors
+ * un simple ajout en fin de tableau.
+ *
+ * Cette classe n'est pas thread-safe : User synchronise les accès.
+ */
+class LocationTimeIndex {
+
+	private static final long[] EMPTY_TIMES = new long[0];
+	private static final int[] EMPTY_POSITIONS = new int[0];
+
+	private long[] times = EMPTY_TIMES;
+	private int[] positions = EMPTY_POSITIONS;
+	private int size;
+
+	void add(long time, int position) {
+		if (size == times.length) {
+			int capacity = Math.max(4, size + (size >> 1));
+			times = Arrays.copyOf(times, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+		// insertion après les instants égaux, pour conserver l'ordre d'arrivée
+		int insertAt = size == 0 || time >= times[size - 1] ? size : upperBound(time);
+		if (insertAt < size) {
+			System.arraycopy(times, insertAt, times, insertAt + 1, size - insertAt);
+			System.arraycopy(positions, insertAt, positions, insertAt + 1, size - insertAt);
+		}
+		times[insertAt] = time;
+		positions[insertAt] = position;
+		size++;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return Le premier rang dont l'instant est supérieur ou égal à time
+	 */
+	int lowerBound(long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return Le premier rang dont l'instant est strictement supérieur à time
+	 */
+	int upperBound(long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return L'index dans l'historique de la localisation de rang donné (ordre chronologique)
+	 */
+	int positionAt(int rank) {
+		return positions[rank];
+	}
+}
@@ -3,7 +3,9 @@ package com.openclassrooms.tourguide.model;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import gpsUtil.location.VisitedLocation;
 import tripPricer.Provider;
@@ -14,15 +16,48 @@ public class User {
 	private String phoneNumber;
 	private String emailAddress;
 	private Date latestLocationTimestamp;
-	private List<VisitedLocation> visitedLocations = new ArrayList<>();
-	private List<UserReward> userRewards = new ArrayList<>();
+	/**
+	 * Historique résident, compressé ; quand l'historique est déporté, seules les localisations ajoutées depuis le déport
+	 */
+	private CompressedLocationHistory visitedLocations;
+	private final LocationTimeIndex locationTimeIndex = new LocationTimeIndex();
+	/**
+	 * Récompenses résidentes ; quand l'historique est déporté, seules celles obtenues depuis le déport
+	 */
+	private UserRewardLog userRewards = new UserRewardLog();
+	/**
+	 * Catalogue qui a attribué les ordinaux des attractions récompensées, celui du service de la première récompense
+	 */
+	private AttractionCatalog attractionCatalog;
 	private UserPreferences userPreferences = new UserPreferences();
+	/**
+	 * Offres de voyage ; null quand elles sont déportées avec l'historique
+	 */
 	private List<Provider> tripDeals = new ArrayList<>();
+	/**
+	 * Instant du dernier calcul des offres de voyage, en millisecondes epoch (0 si jamais ou périmées)
+	 */
+	private volatile long tripDealsRefreshedMillis;
+	private final AtomicInteger cumulativeRewardPoints = new AtomicInteger();
+	private volatile long lastApiActivityMillis;
+	/**
+	 * Partie déportée sur disque de l'historique, null quand tout l'historique est en mémoire
+	 */
+	private ColdHistory coldHistory;
+	private volatile long residentSinceMillis = System.currentTimeMillis();
+	/**
+	 * Incrémentée quand l'historique est vidé : les marques antérieures (voir markHistory) ne délimitent plus un préfixe
+	 */
+	private int historyGeneration;
+	/**
+	 * Zones de proximité des attractions, créées à la première évaluation (voir GeofenceEngine)
+	 */
+	private GeofenceState geofenceState;
 	private boolean calculateRewardEnCours=false;
-	private boolean trackUserLocationEnCours=false;
 	public User(UUID userId, String userName, String phoneNumber, String emailAddress) {
 		this.userId = userId;
 		this.userName = userName;
+		this.visitedLocations = new CompressedLocationHistory(userId, 0);
 		this.phoneNumber = phoneNumber;
 		this.emailAddress = emailAddress;
 	}
@@ -37,15 +72,20 @@ public class User {
 	public void stopCalculateReward() {
 		this.calculateRewardEnCours = false;
 	}
-	public boolean isTrackUserLocationEnCours() {
-		return trackUserLocationEnCours;
-	}
 
-	public void startTrackUserLocation() {
-		this.trackUserLocationEnCours = true;
+	/**
+	 * Signale que l'utilisateur vient de consulter l'API (position, attractions à proximité).
+	 * Le Tracker suit en priorité les utilisateurs actifs récemment.
+	 */
+	public void markApiActivity() {
+		lastApiActivityMillis = System.currentTimeMillis();
 	}
-	public void stopTrackUserLocation() {
-		this.trackUserLocationEnCours = false;
+
+	/**
+	 * @return L'instant de la dernière consultation de l'API, en millisecondes epoch (0 si jamais)
+	 */
+	public long getLastApiActivityMillis() {
+		return lastApiActivityMillis;
 	}
 
 	public UUID getUserId() {
@@ -80,26 +120,269 @@ public class User {
 		return latestLocationTimestamp;
 	}
 	
-	public void addToVisitedLocations(VisitedLocation visitedLocation) {
-		visitedLocations.add(visitedLocation);
+	/**
+	 * Ajoute une localisation à l'historique, sans recharger un historique déporté.
+	 * Latitude et longitude sont enregistrées au 1e-7 degré près (voir CompressedLocationHistory).
+	 *
+	 * @param visitedLocation La localisation à ajouter
+	 * @return La localisation telle qu'enregistrée, identique à ce que renverra la lecture de l'historique ;
+	 * elle porte son index dans l'historique, qu'une récompense qui la référence reprend sans recherche
+	 */
+	public synchronized VisitedLocation addToVisitedLocations(VisitedLocation visitedLocation) {
+		VisitedLocation stored = visitedLocations.add(visitedLocation);
+		if (coldHistory == null) {
+			locationTimeIndex.add(visitedLocation.timeVisited.getTime(), visitedLocations.size() - 1);
+		}
+		return stored;
 	}
 	
-	public List<VisitedLocation> getVisitedLocations() {
-		return visitedLocations;
+	/**
+	 * Renvoie l'historique complet, tel qu'il est à cet instant, en lecture seule ; un historique déporté est d'abord rechargé.
+	 * Les localisations sont décodées à la lecture : pour parcourir l'historique sans créer d'objets, voir locationCursor.
+	 */
+	public synchronized List<VisitedLocation> getVisitedLocations() {
+		faultIn();
+		return visitedLocations.view();
+	}
+
+	/**
+	 * Ouvre un parcours séquentiel de l'historique, de l'index from à la fin de l'historique actuel.
+	 *
+	 * @param from Index de la première localisation à lire
+	 * @return Le curseur, positionné avant la première localisation
+	 */
+	public synchronized LocationCursor locationCursor(int from) {
+		return new LocationCursor(this, from, getVisitedLocationCount());
+	}
+
+	/**
+	 * Décode dans le curseur sa prochaine localisation.
+	 *
+	 * @return false si cette localisation n'existe plus (historique vidé)
+	 */
+	synchronized boolean readLocation(LocationCursor cursor) {
+		int index = cursor.nextIndex;
+		if (index >= getVisitedLocationCount()) {
+			return false;
+		}
+		if (index < firstResidentLocationIndex()) {
+			faultIn();
+		}
+		cursor.reader.read(visitedLocations, index - firstResidentLocationIndex());
+		return true;
+	}
+
+	/**
+	 * @return Le nombre de localisations de l'historique, déportées comprises
+	 */
+	public synchronized int getVisitedLocationCount() {
+		return firstResidentLocationIndex() + visitedLocations.size();
+	}
+
+	/**
+	 * Renvoie une localisation de l'historique. Seul l'accès à une localisation déportée recharge l'historique.
+	 *
+	 * @param index Index de la localisation, entre 0 et getVisitedLocationCount() exclu
+	 * @return La localisation
+	 */
+	public synchronized VisitedLocation getVisitedLocation(int index) {
+		int first = firstResidentLocationIndex();
+		if (index >= first) {
+			return visitedLocations.get(index - first);
+		}
+		faultIn();
+		return visitedLocations.get(index);
+	}
+
+	/**
+	 * Index de la première localisation en mémoire : les localisations précédentes sont déportées.
+	 * Le calcul périodique des récompenses commence à cet index, les localisations déportées
+	 * ayant déjà été évaluées avant leur déport.
+	 *
+	 * @return 0 si tout l'historique est en mémoire
+	 */
+	public synchronized int getFirstResidentLocationIndex() {
+		return firstResidentLocationIndex();
+	}
+
+	private int firstResidentLocationIndex() {
+		return coldHistory == null ? 0 : coldHistory.locationCount;
+	}
+
+	/**
+	 * Renvoie les localisations visitées dans une plage de temps, par ordre chronologique.
+	 * La recherche utilise l'index temporel de l'historique (recherche dichotomique).
+	 *
+	 * @param from Début de la plage (inclus)
+	 * @param to   Fin de la plage (incluse)
+	 * @return Les localisations visitées entre from et to
+	 */
+	public synchronized List<VisitedLocation> getVisitedLocationsBetween(Date from, Date to) {
+		faultIn();
+		int first = locationTimeIndex.lowerBound(from.getTime());
+		int last = locationTimeIndex.upperBound(to.getTime());
+		List<VisitedLocation> locations = new ArrayList<>(Math.max(0, last - first));
+		List<VisitedLocation> history = visitedLocations.view();
+		for (int rank = first; rank < last; rank++) {
+			locations.add(history.get(locationTimeIndex.positionAt(rank)));
+		}
+		return locations;
 	}
 	
-	public void clearVisitedLocations() {
-		visitedLocations.clear();
+	/**
+	 * @return La génération de l'historique, incrémentée chaque fois qu'il est vidé
+	 */
+	public synchronized int getHistoryGeneration() {
+		return historyGeneration;
+	}
+
+	public synchronized void clearVisitedLocations() {
+		faultIn();
+		userRewards.detachAll(visitedLocations.view());
+		// les vues déjà renvoyées partagent les données de l'historique : il est remplacé, pas vidé
+		visitedLocations = new CompressedLocationHistory(userId, 0);
+		locationTimeIndex.clear();
+		historyGeneration++;
 	}
 	
-	public void addUserReward(UserReward userReward) {
-		if(userRewards.stream().filter(r -> r.attraction.attractionName.equals(userReward.attraction.attractionName)).count() == 0) {
-			userRewards.add(userReward);
+	/**
+	 * Ajoute une récompense si l'utilisateur n'en a pas déjà une pour la même attraction,
+	 * et met à jour le total cumulé de ses points.
+	 * Réservé à RewardsService, qui notifie ses écouteurs (classement, popularité) : voir RewardsService.addUserReward.
+	 *
+	 * @param catalog    Catalogue des attractions du service qui attribue la récompense
+	 * @param userReward La récompense à ajouter
+	 * @return true si la récompense a été ajoutée
+	 */
+	public synchronized boolean addUserReward(AttractionCatalog catalog, UserReward userReward) {
+		useCatalog(catalog);
+		int attractionOrdinal = catalog.ordinalOf(userReward.attraction);
+		if (hasRewardFor(attractionOrdinal)) {
+			return false;
+		}
+		return addUserReward(catalog, attractionOrdinal, visitedLocationIndexOf(userReward.visitedLocation),
+				userReward.getRewardPoints());
+	}
+
+	/**
+	 * Renvoie l'index d'une localisation lue dans l'historique ou renvoyée par addToVisitedLocations,
+	 * à partir de l'index qu'elle porte (voir HistoryLocation) : seul son bloc est décodé pour le vérifier.
+	 * Une autre localisation, ou une localisation d'un historique vidé depuis, est détachée de l'historique.
+	 *
+	 * @param visitedLocation La localisation d'une récompense
+	 * @return Son index dans l'historique, ou l'index négatif de la localisation détachée
+	 */
+	private int visitedLocationIndexOf(VisitedLocation visitedLocation) {
+		if (visitedLocation instanceof HistoryLocation historyLocation) {
+			int index = historyLocation.index;
+			if (index < firstResidentLocationIndex()) {
+				faultIn();
+			}
+			if (visitedLocations.matches(index - visitedLocations.firstIndex(), visitedLocation)) {
+				return index;
+			}
+		}
+		return userRewards.detach(visitedLocation);
+	}
+
+	/**
+	 * Ajoute une récompense sous forme compacte si l'utilisateur n'en a pas déjà une pour cette attraction.
+	 * Réservé à RewardsService, qui notifie ses écouteurs.
+	 *
+	 * @param catalog              Catalogue qui a attribué l'ordinal de l'attraction
+	 * @param attractionOrdinal    Ordinal de l'attraction
+	 * @param visitedLocationIndex Index de la localisation récompensée dans l'historique
+	 * @param rewardPoints         Points de la récompense
+	 * @return true si la récompense a été ajoutée
+	 * @throws IllegalArgumentException si l'utilisateur a déjà été récompensé avec un autre catalogue
+	 */
+	public synchronized boolean addUserReward(AttractionCatalog catalog, int attractionOrdinal, int visitedLocationIndex,
+			int rewardPoints) {
+		useCatalog(catalog);
+		if (hasRewardFor(attractionOrdinal)) {
+			return false;
+		}
+		userRewards.add(attractionOrdinal, visitedLocationIndex, rewardPoints);
+		cumulativeRewardPoints.addAndGet(rewardPoints);
+		return true;
+	}
+
+	private void useCatalog(AttractionCatalog catalog) {
+		if (attractionCatalog == null) {
+			attractionCatalog = catalog;
+		} else if (attractionCatalog != catalog) {
+			throw new IllegalArgumentException("Récompenses de l'utilisateur " + userName + " attribuées avec un autre catalogue d'attractions");
 		}
 	}
+
+	/**
+	 * @param attractionOrdinal Ordinal de l'attraction (voir AttractionCatalog)
+	 * @return true si l'utilisateur a déjà été récompensé pour cette attraction
+	 */
+	public synchronized boolean hasRewardFor(int attractionOrdinal) {
+		return userRewards.hasReward(attractionOrdinal)
+				|| coldHistory != null && coldHistory.rewardedAttractions.get(attractionOrdinal);
+	}
+
+	/**
+	 * Total des points des récompenses obtenues, maintenu à chaque ajout de récompense.
+	 *
+	 * @return Le total cumulé des points de récompense
+	 */
+	public int getCumulativeRewardPoints() {
+		return cumulativeRewardPoints.get();
+	}
 	
-	public List<UserReward> getUserRewards() {
-		return userRewards;
+	/**
+	 * Recrée la liste des récompenses de l'utilisateur à partir de leur représentation compacte.
+	 * La liste renvoyée est une copie : les récompenses s'ajoutent par RewardsService.addUserReward.
+	 *
+	 * @return Les récompenses de l'utilisateur
+	 */
+	public synchronized List<UserReward> getUserRewards() {
+		faultIn();
+		List<UserReward> rewards = new ArrayList<>(userRewards.size());
+		List<VisitedLocation> history = visitedLocations.view();
+		for (int i = 0; i < userRewards.size(); i++) {
+			rewards.add(userRewards.toUserReward(i, history, attractionCatalog));
+		}
+		return rewards;
+	}
+
+	/**
+	 * Recrée une tranche des récompenses sous un seul verrou, pour les parcourir sans le reprendre à chaque élément.
+	 *
+	 * @param from Index de la première récompense
+	 * @param to   Index de fin (exclu), au plus getUserRewardCount()
+	 * @return Les récompenses de from à to
+	 */
+	public synchronized List<UserReward> getUserRewards(int from, int to) {
+		Objects.checkFromToIndex(from, to, getUserRewardCount());
+		faultIn();
+		List<UserReward> rewards = new ArrayList<>(to - from);
+		List<VisitedLocation> history = visitedLocations.view();
+		for (int i = from; i < to; i++) {
+			rewards.add(userRewards.toUserReward(i, history, attractionCatalog));
+		}
+		return rewards;
+	}
+
+	/**
+	 * @return Le nombre de récompenses de l'utilisateur
+	 */
+	public synchronized int getUserRewardCount() {
+		return (coldHistory == null ? 0 : coldHistory.rewardCount) + userRewards.size();
+	}
+
+	/**
+	 * Recrée une seule récompense, sans matérialiser toute la liste.
+	 *
+	 * @param index Index de la récompense, entre 0 et getUserRewardCount() exclu
+	 * @return La récompense
+	 */
+	public synchronized UserReward getUserReward(int index) {
+		faultIn();
+		return userRewards.toUserReward(index, visitedLocations.view(), attractionCatalog);
 	}
 	
 	public UserPreferences getUserPreferences() {
@@ -108,18 +391,261 @@ public class User {
 	
 	public void setUserPreferences(UserPreferences userPreferences) {
 		this.userPreferences = userPreferences;
+		// les offres dépendent des préférences (voyageurs, durée)
+		expireTripDeals();
+	}
+
+	/**
+	 * @return L'état des zones de proximité de l'utilisateur, créé au premier appel
+	 */
+	public synchronized GeofenceState getGeofenceState() {
+		if (geofenceState == null) {
+			geofenceState = new GeofenceState();
+		}
+		return geofenceState;
 	}
 
-	public VisitedLocation getLastVisitedLocation() {
-		return visitedLocations.get(visitedLocations.size() - 1);
+	/**
+	 * @return La dernière localisation de l'historique, sans recharger un historique déporté
+	 * @throws IndexOutOfBoundsException si l'historique est vide
+	 */
+	public synchronized VisitedLocation getLastVisitedLocation() {
+		VisitedLocation last = visitedLocations.isEmpty() && coldHistory != null
+				? coldHistory.lastVisitedLocation
+				: visitedLocations.last();
+		if (last == null) {
+			throw new IndexOutOfBoundsException("Index -1 hors de l'historique (0)");
+		}
+		return last;
 	}
 	
-	public void setTripDeals(List<Provider> tripDeals) {
+	/**
+	 * Enregistre les offres de voyage calculées pour l'utilisateur et l'instant de leur calcul.
+	 *
+	 * @param tripDeals Les offres
+	 */
+	public synchronized void setTripDeals(List<Provider> tripDeals) {
 		this.tripDeals = tripDeals;
+		this.tripDealsRefreshedMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return L'instant du dernier calcul des offres de voyage, en millisecondes epoch (0 si jamais ou périmées)
+	 */
+	public long getTripDealsRefreshedMillis() {
+		return tripDealsRefreshedMillis;
+	}
+
+	/**
+	 * Marque les offres de voyage comme périmées, par exemple quand le total des points a changé de palier.
+	 */
+	public void expireTripDeals() {
+		tripDealsRefreshedMillis = 0;
 	}
 	
-	public List<Provider> getTripDeals() {
+	public synchronized List<Provider> getTripDeals() {
+		faultIn();
 		return tripDeals;
 	}
 
+	/**
+	 * @return true si tout l'historique est en mémoire
+	 */
+	public synchronized boolean isResident() {
+		return coldHistory == null;
+	}
+
+	/**
+	 * @return L'instant du dernier rechargement de l'historique (ou de la création de l'utilisateur), en millisecondes epoch
+	 */
+	public long getResidentSinceMillis() {
+		return residentSinceMillis;
+	}
+
+	/**
+	 * @return Le nombre de localisations en mémoire
+	 */
+	public synchronized int getResidentLocationCount() {
+		return visitedLocations.size();
+	}
+
+	/**
+	 * Marque la taille actuelle de l'historique et des récompenses, pour en copier plus tard
+	 * exactement ce préfixe (voir readHistory) alors que le suivi continue d'y ajouter des éléments.
+	 *
+	 * @return La marque
+	 */
+	public synchronized HistoryMark markHistory() {
+		return new HistoryMark(getVisitedLocationCount(), getUserRewardCount(), historyGeneration);
+	}
+
+	/**
+	 * Copie la partie de l'historique et des récompenses délimitée par une marque, sans recharger
+	 * un historique déporté : la partie déportée est lue et décodée hors verrou, depuis son segment.
+	 * Si l'historique a été vidé depuis la marque, c'est l'état courant qui est copié.
+	 *
+	 * @param mark Une marque obtenue par markHistory
+	 * @return La copie de l'historique et des récompenses
+	 */
+	public UserHistorySnapshot readHistory(HistoryMark mark) {
+		ColdHistory cold;
+		boolean consistent;
+		double[] latitudes;
+		double[] longitudes;
+		long[] timestamps;
+		int[] rewardOrdinals;
+		int[] rewardLocationIndexes;
+		int[] rewardPoints;
+		synchronized (this) {
+			consistent = mark.generation == historyGeneration;
+			int locationCount = consistent ? mark.locationCount : getVisitedLocationCount();
+			int rewardCount = consistent ? mark.rewardCount : getUserRewardCount();
+			latitudes = new double[locationCount];
+			longitudes = new double[locationCount];
+			timestamps = new long[locationCount];
+			rewardOrdinals = new int[rewardCount];
+			rewardLocationIndexes = new int[rewardCount];
+			rewardPoints = new int[rewardCount];
+			cold = coldHistory;
+			if (cold != null) {
+				// le segment peut être libéré pendant la lecture hors verrou : son fichier doit rester ouvert
+				cold.segment.pin();
+			}
+			int first = firstResidentLocationIndex();
+			CompressedLocationHistory.Reader reader = new CompressedLocationHistory.Reader();
+			for (int i = first; i < locationCount; i++) {
+				reader.read(visitedLocations, i - first);
+				copyLocation(reader, i, latitudes, longitudes, timestamps);
+			}
+			int firstResidentReward = cold == null ? 0 : cold.rewardCount;
+			for (int i = firstResidentReward; i < rewardCount; i++) {
+				copyReward(userRewards, i - firstResidentReward, i, rewardOrdinals, rewardLocationIndexes, rewardPoints);
+			}
+		}
+		if (cold != null) {
+			byte[] segment;
+			try {
+				segment = cold.segment.read();
+			} finally {
+				cold.segment.unpin();
+			}
+			UserHistoryCodec.Decoded decoded = UserHistoryCodec.decode(userId, segment);
+			int coldLocations = Math.min(cold.locationCount, timestamps.length);
+			CompressedLocationHistory.Reader reader = new CompressedLocationHistory.Reader();
+			for (int i = 0; i < coldLocations; i++) {
+				reader.read(decoded.visitedLocations, i);
+				copyLocation(reader, i, latitudes, longitudes, timestamps);
+			}
+			int coldRewards = Math.min(cold.rewardCount, rewardPoints.length);
+			for (int i = 0; i < coldRewards; i++) {
+				copyReward(decoded.rewards, i, i, rewardOrdinals, rewardLocationIndexes, rewardPoints);
+			}
+		}
+		return new UserHistorySnapshot(userId, userName, latitudes, longitudes, timestamps,
+				rewardOrdinals, rewardLocationIndexes, rewardPoints, consistent);
+	}
+
+	private static void copyLocation(CompressedLocationHistory.Reader reader, int index, double[] latitudes,
+			double[] longitudes, long[] timestamps) {
+		latitudes[index] = reader.latitudeDegrees();
+		longitudes[index] = reader.longitudeDegrees();
+		timestamps[index] = reader.time;
+	}
+
+	private static void copyReward(UserRewardLog rewards, int from, int index, int[] rewardOrdinals,
+			int[] rewardLocationIndexes, int[] rewardPoints) {
+		rewardOrdinals[index] = rewards.attractionOrdinal(from);
+		// une localisation détachée de l'historique (index négatif) n'a pas d'index exportable
+		rewardLocationIndexes[index] = Math.max(-1, rewards.visitedLocationIndex(from));
+		rewardPoints[index] = rewards.rewardPoints(from);
+	}
+
+	/**
+	 * Déporte l'historique, les récompenses et les offres de voyage dans un segment sur disque.
+	 * Seul un résumé reste en mémoire ; l'historique est rechargé au premier accès qui en a besoin.
+	 * Les listes déjà renvoyées aux appelants restent valides : l'historique n'est pas vidé, seulement remplacé.
+	 * Pour un utilisateur déjà déporté, le segment est réécrit avec ce qui s'est accumulé en mémoire depuis :
+	 * l'ancien segment est relu sans recharger l'historique, ce n'est pas un rechargement (faute).
+	 *
+	 * @param store Le magasin de segments
+	 * @return true si un segment a été écrit, false si l'historique déporté n'avait pas changé
+	 */
+	public synchronized boolean spill(HistorySegmentStore store) {
+		ColdHistory previous = coldHistory;
+		if (previous != null && visitedLocations.isEmpty() && userRewards.size() == 0 && tripDeals == null) {
+			return false;
+		}
+		CompressedLocationHistory history = visitedLocations;
+		UserRewardLog rewards = userRewards;
+		List<Provider> deals = tripDeals;
+		if (previous != null) {
+			UserHistoryCodec.Decoded decoded = UserHistoryCodec.decode(userId, previous.segment.read());
+			decoded.visitedLocations.appendAll(visitedLocations);
+			decoded.rewards.appendAll(userRewards);
+			history = decoded.visitedLocations;
+			rewards = decoded.rewards;
+			if (deals == null) {
+				deals = decoded.tripDeals;
+			}
+		}
+		HistorySegmentStore.Segment segment = store.write(UserHistoryCodec.encode(history, rewards,
+				deals == null ? List.of() : deals));
+		coldHistory = new ColdHistory(store, segment, history.size(), rewards.size(),
+				rewards.rewardedAttractions(), history.last());
+		if (previous != null) {
+			previous.store.release(previous.segment);
+		}
+		visitedLocations = new CompressedLocationHistory(userId, coldHistory.locationCount);
+		locationTimeIndex.clear();
+		userRewards = new UserRewardLog();
+		tripDeals = null;
+		return true;
+	}
+
+	/**
+	 * Recharge l'historique déporté et y fusionne les localisations, récompenses et offres ajoutées depuis le déport.
+	 */
+	private void faultIn() {
+		if (coldHistory == null) {
+			return;
+		}
+		long start = System.nanoTime();
+		ColdHistory cold = coldHistory;
+		UserHistoryCodec.Decoded decoded = UserHistoryCodec.decode(userId, cold.segment.read());
+		CompressedLocationHistory history = decoded.visitedLocations;
+		history.appendAll(visitedLocations);
+		UserRewardLog rewards = decoded.rewards;
+		// les récompenses obtenues depuis le déport référencent déjà l'historique complet
+		rewards.appendAll(userRewards);
+		locationTimeIndex.clear();
+		CompressedLocationHistory.Reader reader = new CompressedLocationHistory.Reader();
+		for (int i = 0; i < history.size(); i++) {
+			reader.read(history, i);
+			locationTimeIndex.add(reader.time, i);
+		}
+		visitedLocations = history;
+		userRewards = rewards;
+		if (tripDeals == null) {
+			tripDeals = decoded.tripDeals;
+		}
+		coldHistory = null;
+		residentSinceMillis = System.currentTimeMillis();
+		cold.store.release(cold.segment);
+		cold.store.recordFault(System.nanoTime() - start);
+	}
+
+	/**
+	 * Recopie le segment de l'utilisateur dans le fichier courant du magasin s'il se trouve dans le fichier compacté.
+	 *
+	 * @param store     Le magasin en cours de compaction
+	 * @param compacted Le fichier remplacé
+	 */
+	synchronized void relocateSegment(HistorySegmentStore store, HistorySegmentStore.SegmentFile compacted) {
+		ColdHistory cold = coldHistory;
+		if (cold != null && cold.store == store && cold.segment.isIn(compacted)) {
+			coldHistory = cold.withSegment(store.copy(cold.segment));
+			store.release(cold.segment);
+		}
+	}
+
 }
\ No newline at end of file
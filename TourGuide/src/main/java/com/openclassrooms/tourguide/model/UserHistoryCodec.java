@@ -0,0 +1,108 @@
+package com.openclassrooms.tourguide.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import tripPricer.Provider;
+
+/**
+ * Format binaire d'un segment d'historique :
+ * localisations sous leur forme compressée (voir CompressedLocationHistory), récompenses compactes (ordinal, index de localisation, points)
+ * suivies des localisations détachées, puis offres de voyage.
+ * L'identifiant de l'utilisateur n'est pas répété : il est fourni à la lecture.
+ */
+final class UserHistoryCodec {
+
+	private UserHistoryCodec() {
+	}
+
+	static byte[] encode(CompressedLocationHistory visitedLocations, UserRewardLog rewards, List<Provider> tripDeals) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + visitedLocations.size() * 8);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			visitedLocations.writeTo(out);
+			out.writeInt(rewards.size());
+			for (int i = 0; i < rewards.size(); i++) {
+				out.writeInt(rewards.attractionOrdinal(i));
+				out.writeInt(rewards.visitedLocationIndex(i));
+				out.writeInt(rewards.rewardPoints(i));
+			}
+			List<VisitedLocation> detached = rewards.detachedLocations();
+			out.writeInt(detached.size());
+			for (VisitedLocation visitedLocation : detached) {
+				writeLocation(out, visitedLocation);
+			}
+			out.writeInt(tripDeals.size());
+			for (Provider provider : tripDeals) {
+				out.writeLong(provider.tripId.getMostSignificantBits());
+				out.writeLong(provider.tripId.getLeastSignificantBits());
+				out.writeUTF(provider.name);
+				out.writeDouble(provider.price);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	static Decoded decode(UUID userId, byte[] segment) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(segment))) {
+			CompressedLocationHistory visitedLocations = CompressedLocationHistory.readFrom(in, userId);
+			int rewardCount = in.readInt();
+			int[] rewards = new int[rewardCount * 3];
+			for (int i = 0; i < rewards.length; i++) {
+				rewards[i] = in.readInt();
+			}
+			UserRewardLog rewardLog = new UserRewardLog();
+			int detachedCount = in.readInt();
+			for (int i = 0; i < detachedCount; i++) {
+				rewardLog.detach(readLocation(in, userId));
+			}
+			for (int i = 0; i < rewardCount; i++) {
+				rewardLog.add(rewards[i * 3], rewards[i * 3 + 1], rewards[i * 3 + 2]);
+			}
+			int tripDealCount = in.readInt();
+			List<Provider> tripDeals = new ArrayList<>(tripDealCount);
+			for (int i = 0; i < tripDealCount; i++) {
+				UUID tripId = new UUID(in.readLong(), in.readLong());
+				tripDeals.add(new Provider(tripId, in.readUTF(), in.readDouble()));
+			}
+			return new Decoded(visitedLocations, rewardLog, tripDeals);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void writeLocation(DataOutputStream out, VisitedLocation visitedLocation) throws IOException {
+		out.writeDouble(visitedLocation.location.latitude);
+		out.writeDouble(visitedLocation.location.longitude);
+		out.writeLong(visitedLocation.timeVisited.getTime());
+	}
+
+	private static VisitedLocation readLocation(DataInputStream in, UUID userId) throws IOException {
+		double latitude = in.readDouble();
+		double longitude = in.readDouble();
+		return new VisitedLocation(userId, new Location(latitude, longitude), new Date(in.readLong()));
+	}
+
+	static final class Decoded {
+		final CompressedLocationHistory visitedLocations;
+		final UserRewardLog rewards;
+		final List<Provider> tripDeals;
+
+		private Decoded(CompressedLocationHistory visitedLocations, UserRewardLog rewards, List<Provider> tripDeals) {
+			this.visitedLocations = visitedLocations;
+			this.rewards = rewards;
+			this.tripDeals = tripDeals;
+		}
+	}
+}
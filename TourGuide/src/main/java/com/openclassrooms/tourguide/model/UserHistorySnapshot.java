@@ -0,0 +1,87 @@
+package com.openclassrooms.tourguide.model;
+
+import java.util.UUID;
+
+/**
+ * Copie figée de l'historique et des récompenses d'un utilisateur, en colonnes de primitives.
+ * Les récompenses référencent leur localisation par son index dans l'historique, -1 si elle en a été retirée.
+ * Les tableaux sont partagés avec l'appelant et ne doivent pas être modifiés.
+ */
+public final class UserHistorySnapshot {
+
+	private final UUID userId;
+	private final String userName;
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final long[] timestamps;
+	private final int[] rewardAttractionOrdinals;
+	private final int[] rewardLocationIndexes;
+	private final int[] rewardPoints;
+	private final boolean consistent;
+
+	UserHistorySnapshot(UUID userId, String userName, double[] latitudes, double[] longitudes, long[] timestamps,
+			int[] rewardAttractionOrdinals, int[] rewardLocationIndexes, int[] rewardPoints, boolean consistent) {
+		this.userId = userId;
+		this.userName = userName;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.timestamps = timestamps;
+		this.rewardAttractionOrdinals = rewardAttractionOrdinals;
+		this.rewardLocationIndexes = rewardLocationIndexes;
+		this.rewardPoints = rewardPoints;
+		this.consistent = consistent;
+	}
+
+	public UUID getUserId() {
+		return userId;
+	}
+
+	public String getUserName() {
+		return userName;
+	}
+
+	public int getLocationCount() {
+		return timestamps.length;
+	}
+
+	public double[] getLatitudes() {
+		return latitudes;
+	}
+
+	public double[] getLongitudes() {
+		return longitudes;
+	}
+
+	/**
+	 * @return Les instants des localisations, en millisecondes epoch
+	 */
+	public long[] getTimestamps() {
+		return timestamps;
+	}
+
+	public int getRewardCount() {
+		return rewardPoints.length;
+	}
+
+	/**
+	 * @return Les ordinaux des attractions récompensées (voir AttractionCatalog)
+	 */
+	public int[] getRewardAttractionOrdinals() {
+		return rewardAttractionOrdinals;
+	}
+
+	public int[] getRewardLocationIndexes() {
+		return rewardLocationIndexes;
+	}
+
+	public int[] getRewardPoints() {
+		return rewardPoints;
+	}
+
+	/**
+	 * @return false si l'historique a été vidé depuis la marque : la copie reflète alors l'état courant
+	 */
+	public boolean isConsistent() {
+		return consistent;
+	}
+}
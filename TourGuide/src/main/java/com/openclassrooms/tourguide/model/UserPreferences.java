@@ -2,6 +2,7 @@ package com.openclassrooms.tourguide.model;
 
 public class UserPreferences {
 	
+	// rayon de récompense en miles ; Integer.MAX_VALUE signifie "pas de préférence" (rayon par défaut du service)
 	private int attractionProximity = Integer.MAX_VALUE;
 	private int tripDuration = 1;
 	private int ticketQuantity = 1;
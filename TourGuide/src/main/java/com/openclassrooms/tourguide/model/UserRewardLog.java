@@ -0,0 +1,135 @@
+package com.openclassrooms.tourguide.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Représentation compacte des récompenses d'un utilisateur.
+ * Chaque récompense est stockée dans des tableaux de primitives : ordinal de l'attraction
+ * (voir AttractionCatalog), index de la localisation dans l'historique de l'utilisateur et points.
+ * Un BitSet des attractions déjà récompensées permet de tester l'existence d'une récompense en O(1).
+ * Les objets UserReward ne sont recréés qu'à la lecture.
+ *
+ * Cette classe n'est pas thread-safe : User synchronise les accès.
+ */
+class UserRewardLog {
+
+	private static final int[] EMPTY = new int[0];
+
+	private int[] attractionOrdinals = EMPTY;
+	private int[] visitedLocationIndexes = EMPTY;
+	private int[] rewardPoints = EMPTY;
+	private int size;
+	private final BitSet rewardedAttractions = new BitSet();
+	/**
+	 * Localisations des récompenses absentes de l'historique, référencées par un index négatif -(k + 1)
+	 */
+	private List<VisitedLocation> detachedLocations;
+
+	boolean hasReward(int attractionOrdinal) {
+		return rewardedAttractions.get(attractionOrdinal);
+	}
+
+	void add(int attractionOrdinal, int visitedLocationIndex, int points) {
+		if (size == attractionOrdinals.length) {
+			int capacity = Math.max(4, size + (size >> 1));
+			attractionOrdinals = Arrays.copyOf(attractionOrdinals, capacity);
+			visitedLocationIndexes = Arrays.copyOf(visitedLocationIndexes, capacity);
+			rewardPoints = Arrays.copyOf(rewardPoints, capacity);
+		}
+		attractionOrdinals[size] = attractionOrdinal;
+		visitedLocationIndexes[size] = visitedLocationIndex;
+		rewardPoints[size] = points;
+		size++;
+		rewardedAttractions.set(attractionOrdinal);
+	}
+
+	/**
+	 * Enregistre une localisation hors historique et renvoie l'index négatif qui la référence.
+	 */
+	int detach(VisitedLocation visitedLocation) {
+		if (detachedLocations == null) {
+			detachedLocations = new ArrayList<>(1);
+		}
+		detachedLocations.add(visitedLocation);
+		return -detachedLocations.size();
+	}
+
+	/**
+	 * Détache les localisations des récompenses de l'historique, avant que celui-ci ne soit vidé.
+	 *
+	 * @param visitedLocations Historique de l'utilisateur
+	 */
+	void detachAll(List<VisitedLocation> visitedLocations) {
+		for (int i = 0; i < size; i++) {
+			if (visitedLocationIndexes[i] >= 0) {
+				visitedLocationIndexes[i] = detach(visitedLocations.get(visitedLocationIndexes[i]));
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	int attractionOrdinal(int index) {
+		return attractionOrdinals[index];
+	}
+
+	int rewardPoints(int index) {
+		return rewardPoints[index];
+	}
+
+	int visitedLocationIndex(int index) {
+		return visitedLocationIndexes[index];
+	}
+
+	List<VisitedLocation> detachedLocations() {
+		return detachedLocations == null ? List.of() : detachedLocations;
+	}
+
+	/**
+	 * @return Une copie de l'ensemble des ordinaux des attractions récompensées
+	 */
+	BitSet rewardedAttractions() {
+		return (BitSet) rewardedAttractions.clone();
+	}
+
+	/**
+	 * Ajoute à la suite les récompenses d'un autre journal dont les index de localisation positifs
+	 * désignent déjà le même historique ; ses localisations détachées sont reprises dans ce journal.
+	 *
+	 * @param other Le journal à ajouter
+	 */
+	void appendAll(UserRewardLog other) {
+		for (int i = 0; i < other.size; i++) {
+			int locationIndex = other.visitedLocationIndexes[i];
+			if (locationIndex < 0) {
+				locationIndex = detach(other.detachedLocations.get(-locationIndex - 1));
+			}
+			add(other.attractionOrdinals[i], locationIndex, other.rewardPoints[i]);
+		}
+	}
+
+	/**
+	 * Recrée la récompense d'index donné.
+	 *
+	 * @param index            Index de la récompense
+	 * @param visitedLocations Historique de l'utilisateur
+	 * @param catalog          Catalogue qui a attribué les ordinaux des attractions
+	 * @return La récompense
+	 */
+	UserReward toUserReward(int index, List<VisitedLocation> visitedLocations, AttractionCatalog catalog) {
+		Objects.checkIndex(index, size);
+		int locationIndex = visitedLocationIndexes[index];
+		VisitedLocation visitedLocation = locationIndex >= 0
+				? visitedLocations.get(locationIndex)
+				: detachedLocations.get(-locationIndex - 1);
+		return new UserReward(visitedLocation, catalog.get(attractionOrdinals[index]), rewardPoints[index]);
+	}
+}
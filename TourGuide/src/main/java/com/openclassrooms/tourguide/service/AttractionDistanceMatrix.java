@@ -0,0 +1,59 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.AttractionCatalog;
+import gpsUtil.location.Attraction;
+
+/**
+ * Distances entre toutes les attractions du catalogue, précalculées une fois par version du catalogue.
+ * Les distances sont rangées ligne par ligne dans un seul tableau de float, indexé par ordinal
+ * (voir AttractionCatalog) : parcourir les voisins d'une attraction lit une zone mémoire contiguë.
+ * La matrice est immuable : elle peut être partagée entre threads.
+ */
+class AttractionDistanceMatrix {
+
+    private final AttractionCatalog catalog;
+    private final int version;
+    private final int size;
+    private final float[] distances;
+
+    private AttractionDistanceMatrix(AttractionCatalog catalog, int version, int size) {
+        this.catalog = catalog;
+        this.version = version;
+        this.size = size;
+        this.distances = new float[size * size];
+        for (int i = 0; i < size; i++) {
+            Attraction from = catalog.get(i);
+            for (int j = i + 1; j < size; j++) {
+                float distance = (float) RewardsService.distance(from, catalog.get(j));
+                distances[i * size + j] = distance;
+                distances[j * size + i] = distance;
+            }
+        }
+    }
+
+    /**
+     * Construit la matrice de l'état courant d'un catalogue.
+     */
+    static AttractionDistanceMatrix ofCatalog(AttractionCatalog catalog) {
+        int version = catalog.version();
+        return new AttractionDistanceMatrix(catalog, version, catalog.size());
+    }
+
+    /**
+     * @return true si la matrice a été construite sur la version courante du catalogue
+     */
+    boolean isCurrent() {
+        return version == catalog.version();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return La distance en miles entre deux attractions
+     */
+    float distance(int fromOrdinal, int toOrdinal) {
+        return distances[fromOrdinal * size + toOrdinal];
+    }
+}
@@ -0,0 +1,179 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.AttractionCatalog;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index spatial d'un catalogue d'attractions, trié par latitude.
+ * Une recherche par rayon ne calcule la distance exacte que pour les attractions situées
+ * dans la bande de latitude couverte par le rayon (un degré de latitude mesure toujours
+ * environ 69 miles, quelle que soit la longitude).
+ * L'index est immuable : il peut être partagé entre threads.
+ */
+public class AttractionIndex {
+
+    /**
+     * Distance en miles statutaires correspondant à un degré de latitude
+     */
+    private static final double MILES_PER_DEGREE_OF_LATITUDE = 60 * RewardsService.STATUTE_MILES_PER_NAUTICAL_MILE;
+    private static final int[] NO_MATCH = new int[0];
+
+    /**
+     * Noms des attractions indexées, dans l'ordre de la liste d'origine
+     */
+    private final String[] sourceNames;
+    /**
+     * Dernière liste reconnue par isFor : la vérifier à nouveau est immédiat
+     */
+    private volatile List<Attraction> lastMatched;
+    private final Attraction[] attractions;
+    private final int[] ordinals;
+    private final double[] latitudes;
+
+    private AttractionIndex(AttractionCatalog catalog, List<Attraction> source) {
+        this.attractions = source.toArray(new Attraction[0]);
+        this.sourceNames = new String[attractions.length];
+        for (int i = 0; i < attractions.length; i++) {
+            sourceNames[i] = attractions[i].attractionName;
+        }
+        this.lastMatched = source;
+        Arrays.sort(attractions, Comparator.comparingDouble((Attraction attraction) -> attraction.latitude));
+        this.ordinals = new int[attractions.length];
+        this.latitudes = new double[attractions.length];
+        for (int i = 0; i < attractions.length; i++) {
+            ordinals[i] = catalog.ordinalOf(attractions[i]);
+            latitudes[i] = attractions[i].latitude;
+        }
+    }
+
+    /**
+     * Construit l'index d'une liste d'attractions.
+     *
+     * @param catalog     Le catalogue qui attribue les ordinaux des attractions (voir ordinalAt)
+     * @param attractions Les attractions à indexer
+     * @return L'index
+     */
+    public static AttractionIndex of(AttractionCatalog catalog, List<Attraction> attractions) {
+        return new AttractionIndex(catalog, attractions);
+    }
+
+    /**
+     * GpsUtil renvoie une nouvelle liste à chaque appel : les listes sont comparées par contenu, les attractions
+     * étant identifiées par leur nom comme dans AttractionCatalog.
+     *
+     * @return true si cet index a été construit à partir des mêmes attractions, dans le même ordre
+     */
+    public boolean isFor(List<Attraction> attractions) {
+        if (lastMatched == attractions) {
+            return true;
+        }
+        if (attractions.size() != sourceNames.length) {
+            return false;
+        }
+        for (int i = 0; i < sourceNames.length; i++) {
+            if (!sourceNames[i].equals(attractions.get(i).attractionName)) {
+                return false;
+            }
+        }
+        lastMatched = attractions;
+        return true;
+    }
+
+    /**
+     * @return Le nombre d'attractions indexées
+     */
+    public int size() {
+        return attractions.length;
+    }
+
+    /**
+     * Recherche les attractions dont la distance à une localisation est dans ]minRadius, maxRadius].
+     * Un minRadius négatif recherche toutes les attractions à moins de maxRadius miles.
+     *
+     * @param location  La localisation de référence
+     * @param minRadius Distance minimale exclue, en miles
+     * @param maxRadius Distance maximale incluse, en miles
+     * @return Les positions des attractions trouvées dans l'index (voir attractionAt, ordinalAt)
+     */
+    public int[] findWithin(Location location, double minRadius, double maxRadius) {
+        return findWithin(location.latitude, location.longitude, minRadius, maxRadius);
+    }
+
+    /**
+     * Variante de findWithin(Location, double, double) pour une localisation donnée par ses coordonnées.
+     */
+    public int[] findWithin(double latitude, double longitude, double minRadius, double maxRadius) {
+        int first = bandStart(latitude, maxRadius);
+        int last = bandEnd(latitude, maxRadius);
+        int[] matches = NO_MATCH;
+        int count = 0;
+        for (int i = first; i < last; i++) {
+            double distance = RewardsService.distance(attractions[i].latitude, attractions[i].longitude, latitude, longitude);
+            if (distance <= maxRadius && distance > minRadius) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, Math.max(4, count * 2));
+                }
+                matches[count++] = i;
+            }
+        }
+        return count == matches.length ? matches : Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Variante de findWithin sans allocation : les positions trouvées sont écrites dans un tampon fourni par l'appelant.
+     *
+     * @param positions Tampon de taille au moins size()
+     * @return Le nombre de positions écrites au début du tampon
+     */
+    public int findWithin(double latitude, double longitude, double minRadius, double maxRadius, int[] positions) {
+        int last = bandEnd(latitude, maxRadius);
+        int count = 0;
+        for (int i = bandStart(latitude, maxRadius); i < last; i++) {
+            double distance = RewardsService.distance(attractions[i].latitude, attractions[i].longitude, latitude, longitude);
+            if (distance <= maxRadius && distance > minRadius) {
+                positions[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    public Attraction attractionAt(int position) {
+        return attractions[position];
+    }
+
+    public int ordinalAt(int position) {
+        return ordinals[position];
+    }
+
+    /**
+     * Début de la bande de latitude couverte par le rayon ; une petite marge absorbe les arrondis du calcul de distance.
+     */
+    private int bandStart(double latitude, double radius) {
+        double latitudeBand = radius / MILES_PER_DEGREE_OF_LATITUDE;
+        return latitudeBand < 180 ? lowerBound(latitude - latitudeBand - 1e-9) : 0;
+    }
+
+    private int bandEnd(double latitude, double radius) {
+        double latitudeBand = radius / MILES_PER_DEGREE_OF_LATITUDE;
+        return latitudeBand < 180 ? lowerBound(Math.nextUp(latitude + latitudeBand + 1e-9)) : attractions.length;
+    }
+
+    private int lowerBound(double latitude) {
+        int low = 0;
+        int high = latitudes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (latitudes[mid] < latitude) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
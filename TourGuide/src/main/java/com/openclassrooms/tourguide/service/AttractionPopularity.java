@@ -0,0 +1,245 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.AttractionCatalog;
+import com.openclassrooms.tourguide.model.User;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs de popularité des attractions, maintenus en temps réel :
+ * - nombre d'utilisateurs actuellement à proximité de chaque attraction
+ * - nombre de récompenses attribuées pour chaque attraction, et total de leurs points
+ * - carte de chaleur des dernières positions connues, sur une grille de 2 degrés
+ *
+ * Les compteurs sont des LongAdder, répartis par cellule pour limiter la contention entre threads de suivi.
+ * Pour chaque utilisateur, on retient les attractions proches (dans son rayon de proximité, voir RewardsService.getRewardRadius)
+ * et la cellule de sa dernière position, afin de décrémenter les bons compteurs quand il se déplace.
+ * Les attractions proches sont cherchées dans un index spatial du catalogue (voir AttractionIndex).
+ */
+public class AttractionPopularity implements RewardGrantListener {
+
+    /**
+     * Taille d'une cellule de la carte de chaleur, en degrés
+     */
+    public static final int HEAT_MAP_CELL_DEGREES = 2;
+    private static final int LATITUDE_CELLS = 180 / HEAT_MAP_CELL_DEGREES;
+    private static final int LONGITUDE_CELLS = 360 / HEAT_MAP_CELL_DEGREES;
+    private static final int[] NO_ATTRACTION = new int[0];
+
+    private final RewardsService rewardsService;
+    private final AttractionCatalog attractionCatalog;
+    private volatile LongAdder[] usersNearby = new LongAdder[0];
+    private volatile LongAdder[] rewardsGranted = new LongAdder[0];
+    private volatile LongAdder[] rewardPointsGranted = new LongAdder[0];
+    private final LongAdder[] heatMap = newAdders(LATITUDE_CELLS * LONGITUDE_CELLS);
+    private final Map<UUID, Presence> presenceByUser = new ConcurrentHashMap<>();
+    private volatile CatalogIndex catalogIndex;
+    /**
+     * Tampons de recherche, un par thread de suivi
+     */
+    private final ThreadLocal<SearchBuffer> searchBuffers = ThreadLocal.withInitial(SearchBuffer::new);
+
+    public AttractionPopularity(RewardsService rewardsService) {
+        this.rewardsService = rewardsService;
+        this.attractionCatalog = rewardsService.getAttractionCatalog();
+    }
+
+    @Override
+    public void onRewardGranted(User user, int attractionOrdinal, int rewardPoints) {
+        ensureCapacity(attractionOrdinal + 1);
+        rewardPointsGranted[attractionOrdinal].add(rewardPoints);
+        rewardsGranted[attractionOrdinal].increment();
+    }
+
+    /**
+     * Met à jour les compteurs avec la nouvelle position d'un utilisateur.
+     *
+     * @param user            L'utilisateur
+     * @param visitedLocation Sa nouvelle position
+     */
+    public void onUserLocated(User user, VisitedLocation visitedLocation) {
+        SearchBuffer buffer = searchBuffers.get();
+        int count = nearbyAttractions(user, visitedLocation.location, buffer);
+        int cell = heatMapCell(visitedLocation.location.latitude, visitedLocation.location.longitude);
+        // compute est atomique par utilisateur : deux mises à jour du même utilisateur ne s'entrelacent pas
+        presenceByUser.compute(user.getUserId(), (userId, previous) -> {
+            if (previous != null && previous.heatMapCell == cell && sameOrdinals(previous.nearbyAttractions, buffer.ordinals, count)) {
+                // cas le plus fréquent : l'utilisateur reste près des mêmes attractions et dans la même cellule
+                return previous;
+            }
+            int[] nearby = count == 0 ? NO_ATTRACTION : Arrays.copyOf(buffer.ordinals, count);
+            if (previous != null) {
+                heatMap[previous.heatMapCell].decrement();
+                for (int ordinal : previous.nearbyAttractions) {
+                    usersNearby[ordinal].decrement();
+                }
+            }
+            heatMap[cell].increment();
+            for (int ordinal : nearby) {
+                usersNearby[ordinal].increment();
+            }
+            return new Presence(nearby, cell);
+        });
+    }
+
+    /**
+     * @param attractionOrdinal Ordinal de l'attraction
+     * @return Le nombre d'utilisateurs dont la dernière position est proche de l'attraction
+     */
+    public long getUsersNearby(int attractionOrdinal) {
+        LongAdder[] counters = usersNearby;
+        return attractionOrdinal < counters.length ? counters[attractionOrdinal].sum() : 0;
+    }
+
+    /**
+     * @param attractionOrdinal Ordinal de l'attraction
+     * @return Le nombre de récompenses attribuées pour l'attraction
+     */
+    public long getRewardsGranted(int attractionOrdinal) {
+        LongAdder[] counters = rewardsGranted;
+        return attractionOrdinal < counters.length ? counters[attractionOrdinal].sum() : 0;
+    }
+
+    /**
+     * @param attractionOrdinal Ordinal de l'attraction
+     * @return La moyenne des points des récompenses attribuées pour l'attraction, ou 0 si aucune
+     */
+    public double getMeanRewardPoints(int attractionOrdinal) {
+        LongAdder[] points = rewardPointsGranted;
+        LongAdder[] counters = rewardsGranted;
+        if (attractionOrdinal >= points.length || attractionOrdinal >= counters.length) {
+            return 0;
+        }
+        long count = counters[attractionOrdinal].sum();
+        return count == 0 ? 0 : (double) points[attractionOrdinal].sum() / count;
+    }
+
+    /**
+     * Lit la carte de chaleur : nombre d'utilisateurs dont la dernière position est dans chaque cellule.
+     * La cellule d'index i couvre les latitudes [-90 + 2 * (i / 180), +2[ et les longitudes [-180 + 2 * (i % 180), +2[.
+     *
+     * @return Le nombre d'utilisateurs par cellule
+     */
+    public long[] getHeatMap() {
+        long[] counts = new long[heatMap.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = heatMap[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * @return Le nombre de cellules de longitude par ligne de la carte de chaleur
+     */
+    public static int getHeatMapColumns() {
+        return LONGITUDE_CELLS;
+    }
+
+    /**
+     * Recherche les attractions proches d'une position, dans le rayon de proximité de l'utilisateur.
+     * Les ordinaux sont écrits dans le tampon du thread : le tableau retenu n'est alloué que si l'ensemble
+     * des attractions proches a changé depuis la position précédente.
+     *
+     * @return Le nombre d'ordinaux écrits au début de buffer.ordinals
+     */
+    private int nearbyAttractions(User user, Location location, SearchBuffer buffer) {
+        AttractionIndex index = catalogIndex();
+        ensureCapacity(attractionCatalog.size());
+        if (buffer.positions.length < index.size()) {
+            buffer.positions = new int[index.size()];
+            buffer.ordinals = new int[index.size()];
+        }
+        int count = index.findWithin(location.latitude, location.longitude, -1, rewardsService.getRewardRadius(user),
+                buffer.positions);
+        for (int i = 0; i < count; i++) {
+            buffer.ordinals[i] = index.ordinalAt(buffer.positions[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Index spatial de tout le catalogue, reconstruit quand une attraction y est ajoutée.
+     */
+    private AttractionIndex catalogIndex() {
+        CatalogIndex current = catalogIndex;
+        int version = attractionCatalog.version();
+        if (current == null || current.version != version) {
+            List<Attraction> attractions = new ArrayList<>(attractionCatalog.size());
+            for (int ordinal = 0; ordinal < attractionCatalog.size(); ordinal++) {
+                attractions.add(attractionCatalog.get(ordinal));
+            }
+            current = new CatalogIndex(version, AttractionIndex.of(attractionCatalog, attractions));
+            catalogIndex = current;
+        }
+        return current.index;
+    }
+
+    private static boolean sameOrdinals(int[] ordinals, int[] buffer, int count) {
+        return ordinals.length == count && Arrays.equals(ordinals, 0, count, buffer, 0, count);
+    }
+
+    private void ensureCapacity(int attractionCount) {
+        if (usersNearby.length >= attractionCount) {
+            return;
+        }
+        synchronized (this) {
+            if (usersNearby.length < attractionCount) {
+                rewardPointsGranted = grow(rewardPointsGranted, attractionCount);
+                rewardsGranted = grow(rewardsGranted, attractionCount);
+                usersNearby = grow(usersNearby, attractionCount);
+            }
+        }
+    }
+
+    private static LongAdder[] grow(LongAdder[] counters, int size) {
+        LongAdder[] grown = Arrays.copyOf(counters, size);
+        for (int i = counters.length; i < size; i++) {
+            grown[i] = new LongAdder();
+        }
+        return grown;
+    }
+
+    private static LongAdder[] newAdders(int size) {
+        return grow(new LongAdder[0], size);
+    }
+
+    private static int heatMapCell(double latitude, double longitude) {
+        int row = Math.min(LATITUDE_CELLS - 1, Math.max(0, (int) Math.floor((latitude + 90) / HEAT_MAP_CELL_DEGREES)));
+        int column = Math.floorMod((int) Math.floor((longitude + 180) / HEAT_MAP_CELL_DEGREES), LONGITUDE_CELLS);
+        return row * LONGITUDE_CELLS + column;
+    }
+
+    private static final class SearchBuffer {
+        private int[] positions = NO_ATTRACTION;
+        private int[] ordinals = NO_ATTRACTION;
+    }
+
+    private static final class CatalogIndex {
+        private final int version;
+        private final AttractionIndex index;
+
+        private CatalogIndex(int version, AttractionIndex index) {
+            this.version = version;
+            this.index = index;
+        }
+    }
+
+    private static final class Presence {
+        private final int[] nearbyAttractions;
+        private final int heatMapCell;
+
+        private Presence(int[] nearbyAttractions, int heatMapCell) {
+            this.nearbyAttractions = nearbyAttractions;
+            this.heatMapCell = heatMapCell;
+        }
+    }
+}
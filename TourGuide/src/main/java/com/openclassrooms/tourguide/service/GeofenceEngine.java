@@ -0,0 +1,139 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.dto.GeofenceDTO;
+import com.openclassrooms.tourguide.model.AttractionCatalog;
+import com.openclassrooms.tourguide.model.GeofenceState;
+import com.openclassrooms.tourguide.model.LocationCursor;
+import com.openclassrooms.tourguide.model.User;
+import gpsUtil.location.Attraction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Moteur de zones de proximité (geofences) : suit, pour chaque utilisateur, les attractions dans la zone desquelles
+ * il se trouve (voir GeofenceState) et produit un événement à chaque entrée et à chaque sortie.
+ *
+ * Chaque mise à jour n'évalue que les localisations ajoutées à l'historique depuis la précédente, et pour chacune
+ * seulement les attractions de son voisinage : l'index spatial donne les candidates à l'entrée, et la sortie
+ * n'est testée que pour les attractions où l'utilisateur se trouve déjà.
+ * On sort d'une zone au-delà du rayon augmenté de EXIT_MARGIN_MILES : une position qui oscille autour
+ * de la limite ne produit pas une suite d'entrées et de sorties.
+ */
+public class GeofenceEngine {
+
+    /**
+     * Marge ajoutée au rayon de proximité pour la sortie d'une zone, en miles
+     */
+    static final double EXIT_MARGIN_MILES = 0.5;
+
+    private final AttractionCatalog attractionCatalog;
+    private final List<GeofenceListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param attractionCatalog Le catalogue des attractions du service des récompenses, qui attribue les ordinaux
+     */
+    public GeofenceEngine(AttractionCatalog attractionCatalog) {
+        this.attractionCatalog = attractionCatalog;
+    }
+
+    /**
+     * Enregistre un écouteur notifié à chaque entrée et sortie.
+     *
+     * @param listener L'écouteur à enregistrer
+     */
+    public void addListener(GeofenceListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Évalue les localisations ajoutées à l'historique de l'utilisateur depuis la dernière mise à jour,
+     * puis notifie les écouteurs. Les localisations déportées sur disque ne sont pas relues.
+     *
+     * @param user   L'utilisateur
+     * @param index  Index des attractions
+     * @param radius Rayon de proximité de l'utilisateur, en miles
+     * @return Les entrées et sorties, dans l'ordre de l'historique
+     */
+    public List<GeofenceEvent> update(User user, AttractionIndex index, double radius) {
+        GeofenceState state = user.getGeofenceState();
+        List<GeofenceEvent> events = new ArrayList<>(0);
+        synchronized (state) {
+            int historyGeneration = user.getHistoryGeneration();
+            if (state.getHistoryGeneration() != historyGeneration) {
+                // historique vidé depuis la dernière mise à jour, même s'il a été rempli à nouveau depuis
+                state.reset(historyGeneration);
+            }
+            LocationCursor cursor = user.locationCursor(
+                    Math.max(state.getEvaluatedLocations(), user.getFirstResidentLocationIndex()));
+            while (cursor.next()) {
+                evaluate(state, index, radius, cursor, events);
+            }
+        }
+        for (GeofenceEvent event : events) {
+            for (GeofenceListener listener : listeners) {
+                listener.onGeofenceEvent(user, event);
+            }
+        }
+        return events;
+    }
+
+    private void evaluate(GeofenceState state, AttractionIndex index, double radius, LocationCursor cursor,
+                          List<GeofenceEvent> events) {
+        double latitude = cursor.getLatitude();
+        double longitude = cursor.getLongitude();
+        long timeMillis = cursor.getTimeMillis();
+        // parcours à rebours : une sortie remplace l'attraction sortie par la dernière, déjà examinée
+        for (int i = state.getInsideCount() - 1; i >= 0; i--) {
+            int attractionOrdinal = state.insideOrdinal(i);
+            Attraction attraction = attractionCatalog.get(attractionOrdinal);
+            if (RewardsService.distance(attraction.latitude, attraction.longitude, latitude, longitude)
+                    > radius + EXIT_MARGIN_MILES) {
+                long dwellMillis = state.exit(attractionOrdinal, timeMillis);
+                events.add(new GeofenceEvent(GeofenceEvent.Type.EXIT, attractionOrdinal, cursor.getIndex(),
+                        timeMillis, dwellMillis));
+            }
+        }
+        for (int position : index.findWithin(latitude, longitude, -1, radius)) {
+            int attractionOrdinal = index.ordinalAt(position);
+            if (!state.isInside(attractionOrdinal)) {
+                state.enter(attractionOrdinal, timeMillis);
+                events.add(new GeofenceEvent(GeofenceEvent.Type.ENTER, attractionOrdinal, cursor.getIndex(),
+                        timeMillis, 0));
+            }
+        }
+        state.evaluated(cursor.getIndex(), timeMillis);
+    }
+
+    /**
+     * Décrit les zones visitées par un utilisateur : celles où il se trouve en premier, puis par temps passé décroissant.
+     *
+     * @param user L'utilisateur
+     * @return Pour chaque attraction visitée, la présence actuelle, le nombre de visites et le temps passé
+     */
+    public List<GeofenceDTO> describe(User user) {
+        GeofenceState state = user.getGeofenceState();
+        List<GeofenceDTO> geofences = new ArrayList<>();
+        synchronized (state) {
+            for (int attractionOrdinal = 0; attractionOrdinal < state.getOrdinalBound(); attractionOrdinal++) {
+                if (state.getVisits(attractionOrdinal) == 0) {
+                    continue;
+                }
+                GeofenceDTO geofenceDTO = new GeofenceDTO();
+                geofenceDTO.setAttractionName(attractionCatalog.get(attractionOrdinal).attractionName);
+                long enteredAtMillis = state.getEnteredAtMillis(attractionOrdinal);
+                geofenceDTO.setInside(enteredAtMillis >= 0);
+                geofenceDTO.setEnteredAt(enteredAtMillis >= 0 ? new Date(enteredAtMillis) : null);
+                geofenceDTO.setVisits(state.getVisits(attractionOrdinal));
+                geofenceDTO.setDwellMillis(state.getDwellMillis(attractionOrdinal));
+                geofences.add(geofenceDTO);
+            }
+        }
+        geofences.sort(Comparator.comparing(GeofenceDTO::isInside, Comparator.reverseOrder())
+                .thenComparing(GeofenceDTO::getDwellMillis, Comparator.reverseOrder()));
+        return geofences;
+    }
+}
@@ -0,0 +1,55 @@
+package com.openclassrooms.tourguide.service;
+
+/**
+ * Entrée ou sortie d'un utilisateur de la zone de proximité d'une attraction (voir GeofenceEngine).
+ */
+public final class GeofenceEvent {
+
+    public enum Type { ENTER, EXIT }
+
+    private final Type type;
+    private final int attractionOrdinal;
+    private final int visitedLocationIndex;
+    private final long timeMillis;
+    private final long dwellMillis;
+
+    GeofenceEvent(Type type, int attractionOrdinal, int visitedLocationIndex, long timeMillis, long dwellMillis) {
+        this.type = type;
+        this.attractionOrdinal = attractionOrdinal;
+        this.visitedLocationIndex = visitedLocationIndex;
+        this.timeMillis = timeMillis;
+        this.dwellMillis = dwellMillis;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return L'ordinal de l'attraction (voir AttractionCatalog)
+     */
+    public int getAttractionOrdinal() {
+        return attractionOrdinal;
+    }
+
+    /**
+     * @return L'index dans l'historique de la localisation qui a provoqué l'événement
+     */
+    public int getVisitedLocationIndex() {
+        return visitedLocationIndex;
+    }
+
+    /**
+     * @return L'instant de cette localisation, en millisecondes epoch
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return Pour une sortie, la durée de la visite en millisecondes ; 0 pour une entrée
+     */
+    public long getDwellMillis() {
+        return dwellMillis;
+    }
+}
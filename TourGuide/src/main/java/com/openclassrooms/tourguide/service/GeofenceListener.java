@@ -0,0 +1,19 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.User;
+
+/**
+ * Écouteur notifié par GeofenceEngine à chaque entrée ou sortie d'un utilisateur de la zone de proximité d'une attraction.
+ * Les notifications sont émises depuis les threads de suivi : l'implémentation doit être rapide et thread-safe.
+ */
+@FunctionalInterface
+public interface GeofenceListener {
+
+    /**
+     * Appelé après la mise à jour de l'état des zones de l'utilisateur.
+     *
+     * @param user  L'utilisateur
+     * @param event L'entrée ou la sortie
+     */
+    void onGeofenceEvent(User user, GeofenceEvent event);
+}
@@ -0,0 +1,192 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.AttractionCatalog;
+import gpsUtil.location.Location;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Planification d'un itinéraire passant par les meilleures attractions autour d'une position.
+ *
+ * 1. Sélection : chaque attraction reçoit un score égal à ses points de récompense attendus (moyenne des
+ *    récompenses déjà attribuées, voir AttractionPopularity) divisés par 1 + sa distance à la position ;
+ *    les N meilleures sont retenues.
+ * 2. Ordre de visite : heuristique du voyageur de commerce sur un chemin ouvert partant de la position,
+ *    d'abord par plus proche voisin, puis amélioré par 2-opt jusqu'à ne plus trouver de gain.
+ *
+ * Les distances entre attractions viennent d'une matrice précalculée (voir AttractionDistanceMatrix),
+ * reconstruite quand le catalogue change : une requête ne calcule que les distances depuis la position.
+ */
+public class ItineraryPlanner {
+
+    /**
+     * Nombre maximal d'attractions d'un itinéraire
+     */
+    public static final int MAX_STOPS = 50;
+    /**
+     * Nombre maximal de passes de 2-opt, pour borner le temps de calcul
+     */
+    private static final int MAX_TWO_OPT_PASSES = 100;
+
+    private final AttractionCatalog attractionCatalog;
+    private final AttractionPopularity attractionPopularity;
+    private volatile AttractionDistanceMatrix matrix;
+
+    /**
+     * @param attractionCatalog    Le catalogue des attractions, qui attribue les ordinaux des itinéraires
+     * @param attractionPopularity Les points moyens obtenus par attraction
+     */
+    public ItineraryPlanner(AttractionCatalog attractionCatalog, AttractionPopularity attractionPopularity) {
+        this.attractionCatalog = attractionCatalog;
+        this.attractionPopularity = attractionPopularity;
+    }
+
+    /**
+     * Calcule un itinéraire depuis une position.
+     *
+     * @param start     La position de départ
+     * @param maxStops  Nombre d'attractions souhaité, ramené entre 1 et MAX_STOPS
+     * @param excluded  Attractions à ignorer, par ordinal (par exemple celles déjà récompensées)
+     * @return Les ordinaux des attractions dans l'ordre de visite
+     */
+    public int[] plan(Location start, int maxStops, IntPredicate excluded) {
+        AttractionDistanceMatrix distances = matrix();
+        int[] selected = select(start, distances.size(), Math.min(Math.max(1, maxStops), MAX_STOPS), excluded);
+        int stops = selected.length;
+        if (stops <= 1) {
+            return selected;
+        }
+
+        // matrice locale : noeud 0 = départ, noeud i = selected[i - 1]
+        int nodes = stops + 1;
+        double[] local = new double[nodes * nodes];
+        for (int i = 0; i < stops; i++) {
+            double fromStart = RewardsService.distance(start, attractionCatalog.get(selected[i]));
+            local[i + 1] = fromStart;
+            local[(i + 1) * nodes] = fromStart;
+            for (int j = 0; j < stops; j++) {
+                local[(i + 1) * nodes + j + 1] = distances.distance(selected[i], selected[j]);
+            }
+        }
+
+        int[] path = nearestNeighbour(local, nodes);
+        twoOpt(local, nodes, path);
+
+        int[] ordered = new int[stops];
+        for (int i = 0; i < stops; i++) {
+            ordered[i] = selected[path[i + 1] - 1];
+        }
+        return ordered;
+    }
+
+    /**
+     * @param attractionOrdinal Ordinal de l'attraction
+     * @return Les points de récompense attendus pour l'attraction, 0 si elle n'a encore jamais été récompensée
+     */
+    public double getExpectedRewardPoints(int attractionOrdinal) {
+        return attractionPopularity.getMeanRewardPoints(attractionOrdinal);
+    }
+
+    private int[] select(Location start, int size, int maxStops, IntPredicate excluded) {
+        // les attractions jamais récompensées reçoivent la moyenne des autres, pour ne pas être écartées d'office
+        double[] expectedPoints = new double[size];
+        double totalPoints = 0;
+        int known = 0;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            expectedPoints[ordinal] = attractionPopularity.getMeanRewardPoints(ordinal);
+            if (expectedPoints[ordinal] > 0) {
+                totalPoints += expectedPoints[ordinal];
+                known++;
+            }
+        }
+        double defaultPoints = known == 0 ? 1 : totalPoints / known;
+
+        int candidates = 0;
+        int[] ordinals = new int[size];
+        double[] scores = new double[size];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            if (excluded.test(ordinal)) {
+                continue;
+            }
+            double points = expectedPoints[ordinal] > 0 ? expectedPoints[ordinal] : defaultPoints;
+            scores[ordinal] = points / (1 + RewardsService.distance(start, attractionCatalog.get(ordinal)));
+            ordinals[candidates++] = ordinal;
+        }
+        // tri des candidats par score décroissant, via des clés long (score, ordinal) sans objets intermédiaires
+        long[] keys = new long[candidates];
+        for (int i = 0; i < candidates; i++) {
+            keys[i] = (long) Float.floatToIntBits((float) scores[ordinals[i]]) << 32 | ordinals[i];
+        }
+        Arrays.sort(keys);
+        int stops = Math.min(maxStops, candidates);
+        int[] selected = new int[stops];
+        for (int i = 0; i < stops; i++) {
+            selected[i] = (int) keys[candidates - 1 - i];
+        }
+        return selected;
+    }
+
+    /**
+     * Chemin glouton depuis le noeud 0, en allant toujours au noeud non visité le plus proche.
+     */
+    private static int[] nearestNeighbour(double[] local, int nodes) {
+        int[] path = new int[nodes];
+        boolean[] visited = new boolean[nodes];
+        visited[0] = true;
+        for (int step = 1; step < nodes; step++) {
+            int from = path[step - 1];
+            int next = -1;
+            for (int candidate = 1; candidate < nodes; candidate++) {
+                if (!visited[candidate] && (next < 0 || local[from * nodes + candidate] < local[from * nodes + next])) {
+                    next = candidate;
+                }
+            }
+            path[step] = next;
+            visited[next] = true;
+        }
+        return path;
+    }
+
+    /**
+     * Améliore un chemin ouvert par 2-opt : inverse un segment tant que cela raccourcit le chemin.
+     * Le départ (path[0]) reste fixe, la fin du chemin est libre.
+     */
+    private static void twoOpt(double[] local, int nodes, int[] path) {
+        int last = nodes - 1;
+        boolean improved = true;
+        for (int pass = 0; improved && pass < MAX_TWO_OPT_PASSES; pass++) {
+            improved = false;
+            for (int i = 1; i < last; i++) {
+                for (int j = i + 1; j <= last; j++) {
+                    double before = local[path[i - 1] * nodes + path[i]]
+                            + (j < last ? local[path[j] * nodes + path[j + 1]] : 0);
+                    double after = local[path[i - 1] * nodes + path[j]]
+                            + (j < last ? local[path[i] * nodes + path[j + 1]] : 0);
+                    if (after < before - 1e-9) {
+                        reverse(path, i, j);
+                        improved = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void reverse(int[] path, int from, int to) {
+        for (int i = from, j = to; i < j; i++, j--) {
+            int node = path[i];
+            path[i] = path[j];
+            path[j] = node;
+        }
+    }
+
+    private AttractionDistanceMatrix matrix() {
+        AttractionDistanceMatrix current = matrix;
+        if (current == null || !current.isCurrent()) {
+            // deux requêtes simultanées après un changement de catalogue peuvent construire la même matrice
+            current = AttractionDistanceMatrix.ofCatalog(attractionCatalog);
+            matrix = current;
+        }
+        return current;
+    }
+}
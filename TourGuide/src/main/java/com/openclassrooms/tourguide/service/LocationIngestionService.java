@@ -0,0 +1,260 @@
+package com.openclassrooms.tourguide.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.tourguide.dto.IngestionResultDTO;
+import com.openclassrooms.tourguide.model.User;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Service d'ingestion des localisations poussées par les appareils ou les passerelles, en lots.
+ * Le corps de la requête est lu en flux, enregistrement par enregistrement, sans construire le lot en mémoire :
+ * chaque localisation est ajoutée à l'historique de son utilisateur dès sa lecture.
+ *
+ * Deux formats sont acceptés :
+ * - NDJSON : un objet par ligne, {"userId":"...","latitude":48.85,"longitude":2.35,"timestamp":1700000000000}
+ *   (timestamp en millisecondes epoch) ;
+ * - binaire : une suite d'enregistrements de 40 octets big-endian : userId (2 long), latitude, longitude (double),
+ *   timestamp (long, millisecondes epoch).
+ *
+ * Les enregistrements d'un utilisateur inconnu ou aux coordonnées invalides sont ignorés et comptés comme rejetés.
+ * Les récompenses sont calculées en arrière-plan : les utilisateurs localisés sont mis en attente, et un seul thread
+ * les traite par lots (voir RewardsService.calculateRewardsByCell), en regroupant les lots reçus entre-temps.
+ * Le même thread met ensuite à jour leurs zones de proximité : les localisations poussées produisent les mêmes
+ * entrées et sorties que celles du suivi.
+ */
+@Service
+public class LocationIngestionService {
+    /**
+     * Taille d'un enregistrement du format binaire, en octets
+     */
+    public static final int BINARY_RECORD_BYTES = 40;
+    /**
+     * Nombre d'enregistrements lus entre deux déclenchements du calcul des récompenses, pour les très gros lots
+     */
+    private static final int REWARDS_TRIGGER_INTERVAL = 10_000;
+
+    private final Logger logger = LoggerFactory.getLogger(LocationIngestionService.class);
+    private final TourGuideService tourGuideService;
+    private final RewardsService rewardsService;
+    private final ObjectMapper objectMapper;
+    /**
+     * Utilisateurs localisés dont les récompenses restent à calculer, sans doublon
+     */
+    private final Set<User> pendingRewardUsers = ConcurrentHashMap.newKeySet();
+    private final Queue<User> pendingRewardQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean rewardsScheduled = new AtomicBoolean();
+    private final ExecutorService rewardsDrainer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ingestion-rewards");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LocationIngestionService(TourGuideService tourGuideService, RewardsService rewardsService,
+                                    ObjectMapper objectMapper) {
+        this.tourGuideService = tourGuideService;
+        this.rewardsService = rewardsService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Ingère un lot de localisations au format NDJSON.
+     * Un lot mal formé est interrompu : les localisations lues avant l'erreur restent enregistrées.
+     *
+     * @param in Corps de la requête
+     * @return Le nombre de localisations acceptées et rejetées
+     * @throws IllegalArgumentException si le flux n'est pas du NDJSON valide
+     */
+    public IngestionResultDTO ingestNdjson(InputStream in) throws IOException {
+        Batch batch = new Batch();
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            // le flux appartient au conteneur de servlets, on ne le ferme pas
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Objet JSON attendu ligne " + parser.currentLocation().getLineNr());
+                }
+                String userId = null;
+                double latitude = Double.NaN;
+                double longitude = Double.NaN;
+                long timestamp = Long.MIN_VALUE;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "userId" -> userId = parser.getValueAsString();
+                        case "latitude" -> latitude = parser.getValueAsDouble(Double.NaN);
+                        case "longitude" -> longitude = parser.getValueAsDouble(Double.NaN);
+                        case "timestamp" -> timestamp = parser.getValueAsLong(Long.MIN_VALUE);
+                        default -> parser.skipChildren();
+                    }
+                }
+                batch.accept(parseUserId(userId), latitude, longitude, timestamp);
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("NDJSON invalide : " + e.getOriginalMessage(), e);
+        } finally {
+            batch.finish();
+        }
+        return batch.result();
+    }
+
+    /**
+     * Ingère un lot de localisations au format binaire (enregistrements de BINARY_RECORD_BYTES octets).
+     * Un lot tronqué est interrompu : les enregistrements complets lus avant restent enregistrés.
+     *
+     * @param in Corps de la requête
+     * @return Le nombre de localisations acceptées et rejetées
+     * @throws IllegalArgumentException si le flux se termine au milieu d'un enregistrement
+     */
+    public IngestionResultDTO ingestBinary(InputStream in) throws IOException {
+        Batch batch = new Batch();
+        // tampon réutilisé pour tout le lot, d'un nombre entier d'enregistrements
+        ByteBuffer buffer = ByteBuffer.allocate(BINARY_RECORD_BYTES * 1024);
+        try {
+            int read;
+            while ((read = in.readNBytes(buffer.array(), 0, buffer.capacity())) > 0) {
+                buffer.clear().limit(read);
+                while (buffer.remaining() >= BINARY_RECORD_BYTES) {
+                    UUID userId = new UUID(buffer.getLong(), buffer.getLong());
+                    batch.accept(userId, buffer.getDouble(), buffer.getDouble(), buffer.getLong());
+                }
+                if (buffer.hasRemaining()) {
+                    throw new IllegalArgumentException("Enregistrement tronqué après " + batch.records + " enregistrements");
+                }
+            }
+        } finally {
+            batch.finish();
+        }
+        return batch.result();
+    }
+
+    private static UUID parseUserId(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(userId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Met un utilisateur en attente de calcul de ses récompenses, s'il n'y est pas déjà.
+     */
+    private void queueRewards(User user) {
+        if (pendingRewardUsers.add(user)) {
+            pendingRewardQueue.add(user);
+        }
+    }
+
+    /**
+     * Lance le calcul des récompenses en attente, si aucun n'est déjà en cours.
+     */
+    private void triggerRewards() {
+        if (!pendingRewardQueue.isEmpty() && !rewardsDrainer.isShutdown() && rewardsScheduled.compareAndSet(false, true)) {
+            rewardsDrainer.execute(this::drainRewards);
+        }
+    }
+
+    /**
+     * Arrête le calcul des récompenses en attente : un calcul en cours se termine, les suivants ne sont pas lancés.
+     */
+    @PreDestroy
+    public void close() {
+        rewardsDrainer.shutdown();
+    }
+
+    private void drainRewards() {
+        while (true) {
+            List<User> users = new ArrayList<>();
+            User user;
+            while ((user = pendingRewardQueue.poll()) != null) {
+                pendingRewardUsers.remove(user);
+                users.add(user);
+            }
+            if (users.isEmpty()) {
+                rewardsScheduled.set(false);
+                // un lot a pu mettre des utilisateurs en attente entre le dernier poll et la remise à false
+                if (pendingRewardQueue.isEmpty() || !rewardsScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                rewardsService.calculateRewardsByCell(users);
+                rewardsService.updateGeofences(users);
+            } catch (RuntimeException e) {
+                logger.warn("drainRewards - Échec du calcul des récompenses de {} utilisateurs", users.size(), e);
+            }
+        }
+    }
+
+    /**
+     * Compteurs d'un lot en cours de lecture.
+     */
+    private class Batch {
+        private long records;
+        private long accepted;
+        private long rejected;
+        private final Set<User> users = new HashSet<>();
+
+        void accept(UUID userId, double latitude, double longitude, long timestamp) {
+            records++;
+            User user = userId == null ? null : tourGuideService.getUser(userId);
+            if (user == null || !(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)
+                    || timestamp == Long.MIN_VALUE) {
+                rejected++;
+                return;
+            }
+            // l'identifiant de l'utilisateur est réutilisé, la localisation est la seule allocation conservée
+            tourGuideService.recordLocation(user, new VisitedLocation(user.getUserId(),
+                    new Location(latitude, longitude), new Date(timestamp)));
+            accepted++;
+            users.add(user);
+            queueRewards(user);
+            if (records % REWARDS_TRIGGER_INTERVAL == 0) {
+                triggerRewards();
+            }
+        }
+
+        void finish() {
+            triggerRewards();
+        }
+
+        IngestionResultDTO result() {
+            logger.debug("ingest - Lot de {} localisations : {} acceptées, {} rejetées, {} utilisateurs",
+                    records, accepted, rejected, users.size());
+            IngestionResultDTO ingestionResultDTO = new IngestionResultDTO();
+            ingestionResultDTO.setAccepted(accepted);
+            ingestionResultDTO.setRejected(rejected);
+            ingestionResultDTO.setUsers(users.size());
+            return ingestionResultDTO;
+        }
+    }
+}
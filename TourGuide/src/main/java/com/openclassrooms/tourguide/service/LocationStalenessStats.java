@@ -0,0 +1,54 @@
+package com.openclassrooms.tourguide.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistiques d'ancienneté des positions servies aux clients de l'API.
+ * L'ancienneté est l'écart entre l'instant de la réponse et l'instant de la position renvoyée.
+ */
+public class LocationStalenessStats {
+
+    /**
+     * Ancienneté au-delà de laquelle une position servie est considérée périmée
+     */
+    public static final long STALE_THRESHOLD_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder totalAgeMillis = new LongAdder();
+    private final LongAccumulator maxAgeMillis = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Enregistre l'ancienneté d'une position servie.
+     *
+     * @param ageMillis Ancienneté de la position, en millisecondes
+     */
+    public void record(long ageMillis) {
+        long age = Math.max(0, ageMillis);
+        served.increment();
+        totalAgeMillis.add(age);
+        maxAgeMillis.accumulate(age);
+        if (age > STALE_THRESHOLD_MILLIS) {
+            stale.increment();
+        }
+    }
+
+    public long getServedCount() {
+        return served.sum();
+    }
+
+    public long getStaleCount() {
+        return stale.sum();
+    }
+
+    public double getMeanAgeMillis() {
+        long count = served.sum();
+        return count == 0 ? 0 : (double) totalAgeMillis.sum() / count;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis.get();
+    }
+}
@@ -0,0 +1,163 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.AttractionCatalog;
+import gpsUtil.location.Location;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache des attractions candidates au classement des plus proches, par cellule geohash.
+ * Des utilisateurs distants de quelques centaines de mètres ont les mêmes attractions les plus proches :
+ * pour chaque cellule (geohash de précision 7, environ 150 m de côté), le cache retient les ordinaux
+ * des attractions pouvant faire partie du classement pour un point quelconque de la cellule.
+ * Seules les distances exactes à ces candidates restent calculées à chaque requête.
+ *
+ * Pour un point p de la cellule de centre c et de demi-diagonale r, une attraction du classement de p
+ * est à au plus d(c) + 2r de c, où d(c) est la distance de la N-ième attraction la plus proche de c :
+ * les candidates retenues sont donc toutes celles situées à moins de d(c) + 2r du centre.
+ *
+ * Les cellules sont évincées par ordre de dernière utilisation (LRU) ; une entrée calculée sur
+ * une autre version du catalogue (voir AttractionCatalog.version) est recalculée.
+ */
+public class NearbyAttractionCache {
+
+    /**
+     * Nombre de bits du geohash (précision 7 : 18 bits de longitude, 17 de latitude)
+     */
+    static final int GEOHASH_BITS = 35;
+    private static final int LONGITUDE_BITS = (GEOHASH_BITS + 1) / 2;
+    private static final int LATITUDE_BITS = GEOHASH_BITS / 2;
+    private static final double CELL_LONGITUDE_DEGREES = 360.0 / (1 << LONGITUDE_BITS);
+    private static final double CELL_LATITUDE_DEGREES = 180.0 / (1 << LATITUDE_BITS);
+    /**
+     * Nombre maximal de cellules conservées
+     */
+    static final int MAX_CELLS = 10_000;
+
+    private final AttractionCatalog attractionCatalog;
+    private final int rankSize;
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > MAX_CELLS;
+        }
+    };
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param attractionCatalog Le catalogue des attractions, qui attribue les ordinaux renvoyés
+     * @param rankSize          Nombre d'attractions du classement (5 pour getNearByAttractions)
+     */
+    public NearbyAttractionCache(AttractionCatalog attractionCatalog, int rankSize) {
+        this.attractionCatalog = attractionCatalog;
+        this.rankSize = rankSize;
+    }
+
+    /**
+     * Renvoie les ordinaux des attractions pouvant faire partie des rankSize plus proches d'une localisation.
+     *
+     * @param location La localisation
+     * @return Les ordinaux candidats (voir AttractionCatalog), à ne pas modifier
+     */
+    public int[] candidates(Location location) {
+        int latitudeIndex = cellIndex(location.latitude + 90, CELL_LATITUDE_DEGREES, LATITUDE_BITS);
+        int longitudeIndex = cellIndex(location.longitude + 180, CELL_LONGITUDE_DEGREES, LONGITUDE_BITS);
+        long geohash = interleave(longitudeIndex, latitudeIndex);
+        int version = attractionCatalog.version();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(geohash);
+        }
+        if (entry != null && entry.version == version) {
+            hits.increment();
+            return entry.ordinals;
+        }
+        misses.increment();
+        // calcul hors verrou : deux requêtes simultanées sur la même cellule calculent le même résultat
+        entry = new Entry(version, computeCandidates(latitudeIndex, longitudeIndex));
+        synchronized (entries) {
+            entries.put(geohash, entry);
+        }
+        return entry.ordinals;
+    }
+
+    private int[] computeCandidates(int latitudeIndex, int longitudeIndex) {
+        double minLatitude = latitudeIndex * CELL_LATITUDE_DEGREES - 90;
+        double minLongitude = longitudeIndex * CELL_LONGITUDE_DEGREES - 180;
+        Location center = new Location(minLatitude + CELL_LATITUDE_DEGREES / 2, minLongitude + CELL_LONGITUDE_DEGREES / 2);
+        double halfDiagonal = 0;
+        for (int corner = 0; corner < 4; corner++) {
+            Location cornerLocation = new Location(minLatitude + (corner & 1) * CELL_LATITUDE_DEGREES,
+                    minLongitude + (corner >> 1) * CELL_LONGITUDE_DEGREES);
+            halfDiagonal = Math.max(halfDiagonal, RewardsService.distance(center, cornerLocation));
+        }
+
+        int size = attractionCatalog.size();
+        double[] distances = new double[size];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            distances[ordinal] = RewardsService.distance(center, attractionCatalog.get(ordinal));
+        }
+        if (size <= rankSize) {
+            int[] all = new int[size];
+            Arrays.setAll(all, ordinal -> ordinal);
+            return all;
+        }
+        double[] sorted = distances.clone();
+        Arrays.sort(sorted);
+        double radius = sorted[rankSize - 1] + 2 * halfDiagonal;
+        int count = 0;
+        int[] ordinals = new int[size];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            if (distances[ordinal] <= radius) {
+                ordinals[count++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(ordinals, count);
+    }
+
+    private static int cellIndex(double offsetDegrees, double cellDegrees, int bits) {
+        return (int) Math.max(0, Math.min((1 << bits) - 1, Math.floor(offsetDegrees / cellDegrees)));
+    }
+
+    /**
+     * Entrelace les bits des index de cellule comme un geohash : longitude sur les bits pairs depuis le poids fort.
+     */
+    private static long interleave(int longitudeIndex, int latitudeIndex) {
+        long geohash = 0;
+        for (int bit = LONGITUDE_BITS - 1; bit >= 0; bit--) {
+            geohash = geohash << 1 | (longitudeIndex >> bit & 1);
+            if (bit > 0) {
+                geohash = geohash << 1 | (latitudeIndex >> bit - 1 & 1);
+            }
+        }
+        return geohash;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static final class Entry {
+        private final int version;
+        private final int[] ordinals;
+
+        private Entry(int version, int[] ordinals) {
+            this.version = version;
+            this.ordinals = ordinals;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.openclassrooms.tourguide.service;
+
+import gpsUtil.location.Attraction;
+
+import java.util.Arrays;
+
+/**
+ * Récompenses trouvées pour un utilisateur mais pas encore attribuées.
+ * Permet de séparer le calcul des récompenses en trois étapes : recherche des attractions visitées
+ * (lecture de l'utilisateur), interrogation de RewardCentral (appel bloquant, sans accès à l'utilisateur),
+ * puis attribution (modification de l'utilisateur).
+ */
+class PendingRewards {
+
+    private int size;
+    private int[] attractionOrdinals = new int[4];
+    private int[] visitedLocationIndexes = new int[4];
+    private Attraction[] attractions = new Attraction[4];
+    private int[] rewardPoints = new int[4];
+
+    void add(int attractionOrdinal, int visitedLocationIndex, Attraction attraction) {
+        if (size == attractionOrdinals.length) {
+            int capacity = size * 2;
+            attractionOrdinals = Arrays.copyOf(attractionOrdinals, capacity);
+            visitedLocationIndexes = Arrays.copyOf(visitedLocationIndexes, capacity);
+            attractions = Arrays.copyOf(attractions, capacity);
+            rewardPoints = Arrays.copyOf(rewardPoints, capacity);
+        }
+        attractionOrdinals[size] = attractionOrdinal;
+        visitedLocationIndexes[size] = visitedLocationIndex;
+        attractions[size] = attraction;
+        size++;
+    }
+
+    boolean contains(int attractionOrdinal) {
+        for (int i = 0; i < size; i++) {
+            if (attractionOrdinals[i] == attractionOrdinal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int attractionOrdinal(int i) {
+        return attractionOrdinals[i];
+    }
+
+    int visitedLocationIndex(int i) {
+        return visitedLocationIndexes[i];
+    }
+
+    Attraction attraction(int i) {
+        return attractions[i];
+    }
+
+    int rewardPoints(int i) {
+        return rewardPoints[i];
+    }
+
+    void setRewardPoints(int i, int points) {
+        rewardPoints[i] = points;
+    }
+}
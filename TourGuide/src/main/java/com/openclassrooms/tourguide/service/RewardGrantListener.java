@@ -0,0 +1,20 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.User;
+
+/**
+ * Écouteur notifié par RewardsService à chaque nouvelle récompense attribuée à un utilisateur.
+ * Les notifications sont émises depuis les threads de calcul : l'implémentation doit être rapide et thread-safe.
+ */
+@FunctionalInterface
+public interface RewardGrantListener {
+
+    /**
+     * Appelé après l'ajout d'une récompense à l'utilisateur.
+     *
+     * @param user              L'utilisateur récompensé
+     * @param attractionOrdinal Ordinal de l'attraction récompensée (voir AttractionCatalog)
+     * @param rewardPoints      Points de la récompense
+     */
+    void onRewardGranted(User user, int attractionOrdinal, int rewardPoints);
+}
@@ -0,0 +1,96 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.User;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Classement des utilisateurs par total de points de récompense.
+ * Le classement est maintenu de façon incrémentale à chaque récompense attribuée,
+ * dans une skip list concurrente : la lecture du top N ne parcourt que N entrées,
+ * sans balayer l'ensemble des utilisateurs.
+ */
+public class RewardLeaderboard implements RewardGrantListener {
+
+    private static final Comparator<Entry> RANKING_ORDER = Comparator
+            .comparingInt((Entry entry) -> entry.rewardPoints).reversed()
+            .thenComparing(entry -> entry.userId);
+
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(RANKING_ORDER);
+    private final Map<UUID, Entry> entriesByUser = new ConcurrentHashMap<>();
+
+    @Override
+    public void onRewardGranted(User user, int attractionOrdinal, int rewardPoints) {
+        update(user);
+    }
+
+    /**
+     * Met à jour la position d'un utilisateur à partir de son total cumulé de points.
+     *
+     * @param user L'utilisateur dont le total a changé
+     */
+    public void update(User user) {
+        // compute est atomique par utilisateur : le retrait de l'ancienne entrée et l'ajout
+        // de la nouvelle ne peuvent pas s'entrelacer avec une autre mise à jour du même utilisateur
+        entriesByUser.compute(user.getUserId(), (userId, previous) -> {
+            Entry current = new Entry(userId, user.getUserName(), user.getCumulativeRewardPoints());
+            if (previous != null) {
+                if (previous.rewardPoints == current.rewardPoints) {
+                    return previous;
+                }
+                ranking.remove(previous);
+            }
+            ranking.add(current);
+            return current;
+        });
+    }
+
+    /**
+     * Renvoie les N premiers utilisateurs du classement.
+     *
+     * @param limit Nombre maximal d'entrées à renvoyer
+     * @return Les entrées du classement, de la meilleure à la moins bonne
+     */
+    public List<Entry> top(int limit) {
+        List<Entry> top = new ArrayList<>(Math.max(0, Math.min(limit, entriesByUser.size())));
+        Iterator<Entry> iterator = ranking.iterator();
+        while (top.size() < limit && iterator.hasNext()) {
+            top.add(iterator.next());
+        }
+        return top;
+    }
+
+    /**
+     * Position d'un utilisateur dans le classement à un instant donné.
+     */
+    public static final class Entry {
+        private final UUID userId;
+        private final String userName;
+        private final int rewardPoints;
+
+        private Entry(UUID userId, String userName, int rewardPoints) {
+            this.userId = userId;
+            this.userName = userName;
+            this.rewardPoints = rewardPoints;
+        }
+
+        public UUID getUserId() {
+            return userId;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        public int getRewardPoints() {
+            return rewardPoints;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.LocationCursor;
+import com.openclassrooms.tourguide.model.User;
+import gpsUtil.location.Location;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jointure spatiale entre les localisations d'un lot d'utilisateurs et le catalogue des attractions.
+ * Les localisations sont regroupées par cellule de CELL_DEGREES degrés : les attractions candidates
+ * sont recherchées une seule fois par cellule, puis chaque localisation n'est comparée qu'à ces candidates.
+ * Quand beaucoup d'utilisateurs sont au même endroit (festival, tests de charge), le coût de la recherche
+ * ne dépend plus du nombre d'utilisateurs mais du nombre de cellules occupées.
+ *
+ * Le résultat est regroupé par attraction : pour chaque attraction, les utilisateurs à récompenser
+ * et l'index de la localisation qui justifie la récompense.
+ */
+class RewardSpatialJoin {
+
+    /**
+     * Taille d'une cellule en degrés (environ 7 miles en latitude)
+     */
+    static final double CELL_DEGREES = 0.1;
+
+    private final AttractionIndex index;
+    private final List<User> users;
+    private final double[] radii;
+
+    private final int[][] groupUsers;
+    private final int[][] groupLocations;
+    private final int[] groupSizes;
+    private int cellCount;
+
+    /**
+     * @param index Index des attractions
+     * @param users Utilisateurs du lot
+     * @param radii Rayon de proximité de chaque utilisateur, en miles, dans l'ordre de users
+     */
+    RewardSpatialJoin(AttractionIndex index, List<User> users, double[] radii) {
+        if ((long) users.size() * index.size() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Lot trop volumineux pour une jointure : " + users.size() + " utilisateurs");
+        }
+        this.index = index;
+        this.users = users;
+        this.radii = radii;
+        this.groupUsers = new int[index.size()][];
+        this.groupLocations = new int[index.size()][];
+        this.groupSizes = new int[index.size()];
+    }
+
+    /**
+     * Effectue la jointure. Les utilisateurs déjà récompensés pour une attraction en sont exclus.
+     */
+    void run() {
+        Map<Long, Cell> cells = new HashMap<>();
+        for (int u = 0; u < users.size(); u++) {
+            User user = users.get(u);
+            // les localisations déportées ont été évaluées avant leur déport
+            LocationCursor cursor = user.locationCursor(user.getFirstResidentLocationIndex());
+            while (cursor.next()) {
+                double latitude = cursor.getLatitude();
+                double longitude = cursor.getLongitude();
+                long latCell = (long) Math.floor(latitude / CELL_DEGREES);
+                long lonCell = (long) Math.floor(longitude / CELL_DEGREES);
+                cells.computeIfAbsent(latCell << 32 | (lonCell & 0xffffffffL), key -> new Cell((int) latCell, (int) lonCell))
+                        .add(u, cursor.getIndex(), latitude, longitude, radii[u]);
+            }
+        }
+        cellCount = cells.size();
+
+        // une récompense par couple (utilisateur, attraction), même si plusieurs localisations la justifient
+        BitSet selected = new BitSet();
+        for (Cell cell : cells.values()) {
+            int[] candidates = index.findWithin(cell.center(), -1, cell.maxRadius + cell.halfDiagonal());
+            for (int i = 0; i < cell.size; i++) {
+                int u = cell.users[i];
+                User user = users.get(u);
+                for (int position : candidates) {
+                    int key = u * index.size() + position;
+                    if (selected.get(key)
+                            || RewardsService.distance(index.attractionAt(position).latitude,
+                                    index.attractionAt(position).longitude, cell.latitudes[i], cell.longitudes[i]) > radii[u]
+                            || user.hasRewardFor(index.ordinalAt(position))) {
+                        continue;
+                    }
+                    selected.set(key);
+                    addToGroup(position, u, cell.locationIndexes[i]);
+                }
+            }
+        }
+    }
+
+    private void addToGroup(int position, int user, int locationIndex) {
+        int size = groupSizes[position];
+        if (groupUsers[position] == null) {
+            groupUsers[position] = new int[8];
+            groupLocations[position] = new int[8];
+        } else if (size == groupUsers[position].length) {
+            groupUsers[position] = Arrays.copyOf(groupUsers[position], size * 2);
+            groupLocations[position] = Arrays.copyOf(groupLocations[position], size * 2);
+        }
+        groupUsers[position][size] = user;
+        groupLocations[position][size] = locationIndex;
+        groupSizes[position] = size + 1;
+    }
+
+    /**
+     * @return Le nombre de cellules occupées par les localisations du lot
+     */
+    int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * @param position Position de l'attraction dans l'index
+     * @return Le nombre d'utilisateurs à récompenser pour cette attraction
+     */
+    int groupSize(int position) {
+        return groupSizes[position];
+    }
+
+    /**
+     * @return L'index dans le lot du k-ième utilisateur à récompenser pour cette attraction
+     */
+    int userAt(int position, int k) {
+        return groupUsers[position][k];
+    }
+
+    /**
+     * @return L'index de la localisation qui justifie la récompense du k-ième utilisateur
+     */
+    int locationAt(int position, int k) {
+        return groupLocations[position][k];
+    }
+
+    /**
+     * Localisations du lot tombant dans une même cellule.
+     */
+    private static final class Cell {
+        private final int latCell;
+        private final int lonCell;
+        private int size;
+        private int[] users = new int[4];
+        private int[] locationIndexes = new int[4];
+        private double[] latitudes = new double[4];
+        private double[] longitudes = new double[4];
+        private double maxRadius;
+
+        private Cell(int latCell, int lonCell) {
+            this.latCell = latCell;
+            this.lonCell = lonCell;
+        }
+
+        private void add(int user, int locationIndex, double latitude, double longitude, double radius) {
+            if (size == users.length) {
+                users = Arrays.copyOf(users, size * 2);
+                locationIndexes = Arrays.copyOf(locationIndexes, size * 2);
+                latitudes = Arrays.copyOf(latitudes, size * 2);
+                longitudes = Arrays.copyOf(longitudes, size * 2);
+            }
+            users[size] = user;
+            locationIndexes[size] = locationIndex;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            size++;
+            maxRadius = Math.max(maxRadius, radius);
+        }
+
+        private Location center() {
+            return new Location((latCell + 0.5) * CELL_DEGREES, (lonCell + 0.5) * CELL_DEGREES);
+        }
+
+        /**
+         * Distance maximale entre le centre de la cellule et l'un de ses points, en miles
+         */
+        private double halfDiagonal() {
+            Location center = center();
+            double half = CELL_DEGREES / 2;
+            return Math.max(
+                    RewardsService.distance(center, new Location(center.latitude - half, center.longitude - half)),
+                    RewardsService.distance(center, new Location(center.latitude + half, center.longitude - half)));
+        }
+    }
+}
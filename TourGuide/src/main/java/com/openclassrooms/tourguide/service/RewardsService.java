@@ -1,13 +1,21 @@
 package com.openclassrooms.tourguide.service;
 
+import com.openclassrooms.tourguide.concurrency.AdaptiveConcurrencyLimiter;
+import com.openclassrooms.tourguide.jfr.ExternalCallEvent;
+import com.openclassrooms.tourguide.jfr.RewardBatchEvent;
+import com.openclassrooms.tourguide.jfr.RewardGrantEvent;
+import com.openclassrooms.tourguide.model.AttractionCatalog;
+import com.openclassrooms.tourguide.model.LocationCursor;
 import com.openclassrooms.tourguide.model.User;
 import com.openclassrooms.tourguide.model.UserReward;
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
 import gpsUtil.location.Location;
-import gpsUtil.location.VisitedLocation;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import rewardCentral.RewardCentral;
 
@@ -24,27 +32,76 @@ public class RewardsService {
     /**
      * Facteur de conversion des miles nautiques en miles statutaires
      */
-    private static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
+    static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
+    /**
+     * Nombre maximal de localisations récentes réévaluées quand le rayon d'un utilisateur augmente
+     */
+    static final int MAX_REEVALUATED_LOCATIONS = 1000;
     private Logger logger = LoggerFactory.getLogger(RewardsService.class);
     /**
      * Distance de proximité par défaut en miles
      */
-    private int defaultProximityBuffer = 10;
-    private int proximityBuffer = defaultProximityBuffer;
+    public static final int DEFAULT_PROXIMITY_BUFFER = 10;
+    /**
+     * Distance de proximité des utilisateurs sans préférence, fixée à la construction
+     */
+    private final int defaultProximityBuffer;
+    private int proximityBuffer;
     /**
      * Portée de proximité pour les attractions en miles
      */
     private int attractionProximityRange = 200;
     private final GpsUtil gpsUtil;
     private final RewardCentral rewardsCentral;
+    /**
+     * Catalogue des attractions du service : les ordinaux des récompenses, des index et des zones de proximité en viennent
+     */
+    private final AttractionCatalog attractionCatalog = new AttractionCatalog();
+    /**
+     * Écouteurs notifiés à chaque nouvelle récompense attribuée
+     */
+    private final CopyOnWriteArrayList<RewardGrantListener> rewardGrantListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Dernier index construit, réutilisé tant que les mêmes attractions sont passées, quelle que soit la liste (voir AttractionIndex.isFor)
+     */
+    private volatile AttractionIndex attractionIndex;
+    /**
+     * Executor des calculs en lot, dimensionné d'après la latence observée de RewardCentral
+     */
+    private final AdaptiveConcurrencyLimiter rewardsExecutor =
+            new AdaptiveConcurrencyLimiter("rewards", 64, 8, 4096, 500, TimeUnit.MILLISECONDS);
+    /**
+     * Zones de proximité des utilisateurs, mises à jour à chaque suivi (voir updateGeofences)
+     */
+    private final GeofenceEngine geofenceEngine = new GeofenceEngine(attractionCatalog);
 
     public RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral) {
+        this(gpsUtil, rewardCentral, DEFAULT_PROXIMITY_BUFFER);
+    }
+
+    /**
+     * @param proximityBuffer Distance de proximité en miles appliquée aux utilisateurs sans préférence
+     */
+    @Autowired
+    public RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral,
+                          @Value("${tourguide.rewards.proximity-buffer-miles:" + DEFAULT_PROXIMITY_BUFFER + "}") int proximityBuffer) {
         this.gpsUtil = gpsUtil;
         this.rewardsCentral = rewardCentral;
+        this.defaultProximityBuffer = proximityBuffer;
+        this.proximityBuffer = proximityBuffer;
+        attractionCatalog.registerAll(gpsUtil.getAttractions());
+    }
+
+    /**
+     * @return Le catalogue des attractions du service, qui attribue les ordinaux des attractions récompensées
+     */
+    public AttractionCatalog getAttractionCatalog() {
+        return attractionCatalog;
     }
 
     /**
-     * Définit la distance de proximité personnalisée.
+     * Remplace la distance de proximité par défaut. Réservé aux tests, avant tout calcul :
+     * la distance se règle à la construction (propriété tourguide.rewards.proximity-buffer-miles).
      *
      * @param proximityBuffer Distance en miles
      */
@@ -53,41 +110,161 @@ public class RewardsService {
     }
 
     /**
-     * Réinitialise la distance de proximité à sa valeur par défaut.
+     * @return La distance de proximité en miles en deçà de laquelle une attraction est considérée visitée
+     */
+    public int getProximityBuffer() {
+        return proximityBuffer;
+    }
+
+    /**
+     * Rétablit la distance de proximité fixée à la construction. Réservé aux tests, voir setProximityBuffer.
      */
     public void setDefaultProximityBuffer() {
         proximityBuffer = defaultProximityBuffer;
     }
 
+    /**
+     * Enregistre un écouteur notifié à chaque nouvelle récompense attribuée par ce service.
+     * Sans effet si l'écouteur est déjà enregistré.
+     *
+     * @param listener L'écouteur à enregistrer
+     */
+    public void addRewardGrantListener(RewardGrantListener listener) {
+        rewardGrantListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Retire un écouteur enregistré par addRewardGrantListener.
+     *
+     * @param listener L'écouteur à retirer
+     */
+    public void removeRewardGrantListener(RewardGrantListener listener) {
+        rewardGrantListeners.remove(listener);
+    }
+
+    /**
+     * Ajoute une récompense à un utilisateur s'il n'en a pas déjà une pour la même attraction, et notifie les écouteurs.
+     * Toute récompense passe par ce service : l'ajouter directement à l'utilisateur échapperait au classement
+     * et aux compteurs de popularité.
+     *
+     * @param user       L'utilisateur
+     * @param userReward La récompense à ajouter
+     * @return true si la récompense a été ajoutée
+     */
+    public boolean addUserReward(User user, UserReward userReward) {
+        int attractionOrdinal = attractionCatalog.ordinalOf(userReward.attraction);
+        if (!user.addUserReward(attractionCatalog, userReward)) {
+            return false;
+        }
+        // l'index de la localisation n'est connu que de l'utilisateur
+        rewardGranted(user, attractionOrdinal, -1, userReward.getRewardPoints());
+        return true;
+    }
+
+    /**
+     * @return Le moteur des zones de proximité, pour l'abonnement aux entrées et sorties et la lecture des durées de visite
+     */
+    public GeofenceEngine getGeofenceEngine() {
+        return geofenceEngine;
+    }
+
+    /**
+     * Arrête l'executor des calculs en lot. Le service peut être partagé par plusieurs TourGuideService :
+     * il est fermé à part, par Spring, après eux.
+     */
+    @PreDestroy
+    public void close() {
+        rewardsExecutor.shutdown();
+    }
+
+    /**
+     * @return L'executor des calculs en lot, pour l'exposition de ses métriques
+     */
+    public AdaptiveConcurrencyLimiter getRewardsExecutor() {
+        return rewardsExecutor;
+    }
+
     /**
      * Calcule les récompenses pour une liste d'utilisateurs de manière asynchrone.
+     * Le nombre de calculs simultanés est réglé par l'executor adaptatif du service.
      *
      * @param users Liste des utilisateurs pour lesquels calculer les récompenses
      */
     public void calculateRewards(List<User> users) {
+        RewardBatchEvent event = new RewardBatchEvent();
+        event.begin();
         List<Attraction> attractions = gpsUtil.getAttractions();
+        AttractionIndex index = attractionIndex(attractions);
+        int defaultRadius = proximityBuffer;
         List<CompletableFuture<Boolean>> futures = new ArrayList<>();
-        ExecutorService executor = Executors.newFixedThreadPool(5000);
+        for (User user : users) {
+            CompletableFuture<Boolean> completableFuture = CompletableFuture.supplyAsync(() -> {
+                if (user.isCalculateRewardEnCours()) return true;
+                user.startCalculateReward();
+                try {
+                    calculateRewards(user, index, -1, getRewardRadius(user, defaultRadius), user.getFirstResidentLocationIndex());
+                } finally {
+                    user.stopCalculateReward();
+                }
+                return true;
+            }, rewardsExecutor);
+            futures.add(completableFuture);
+        }
+        // Attente de la completion de tous les futures du lot
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        commitBatchEvent(event, "PER_USER", users.size());
+        logger.info("calculateRewards - Lot de {} utilisateurs traité avec succès (concurrence {})",
+                users.size(), rewardsExecutor.getLimit());
+    }
+
+    /**
+     * Calcule les récompenses d'un lot d'utilisateurs par jointure spatiale, pour les lots où beaucoup
+     * d'utilisateurs partagent les mêmes lieux : les attractions candidates sont recherchées une fois
+     * par cellule occupée (voir RewardSpatialJoin) et seules les vérifications exactes restent par utilisateur.
+     * Les interrogations de RewardCentral sont ensuite émises groupées par attraction.
+     * Le résultat est identique à celui de calculateRewards(List).
+     *
+     * @param users Liste des utilisateurs pour lesquels calculer les récompenses
+     */
+    public void calculateRewardsByCell(List<User> users) {
+        RewardBatchEvent event = new RewardBatchEvent();
+        event.begin();
+        List<Attraction> attractions = gpsUtil.getAttractions();
+        AttractionIndex index = attractionIndex(attractions);
+        int defaultRadius = proximityBuffer;
+        List<User> batch = new ArrayList<>(users.size());
+        for (User user : users) {
+            if (user.isCalculateRewardEnCours()) continue;
+            user.startCalculateReward();
+            batch.add(user);
+        }
         try {
-            for (User user : users) {
-                CompletableFuture<Boolean> completableFuture = CompletableFuture.supplyAsync(() -> {
-                    if (user.isCalculateRewardEnCours()) return true;
-                    user.startCalculateReward();
-                    try {
-                        calculateRewards(user, attractions);
-                    } finally {
-                        user.stopCalculateReward();
-                    }
-                    return true;
-                }, executor);
-                futures.add(completableFuture);
+            double[] radii = new double[batch.size()];
+            for (int u = 0; u < radii.length; u++) {
+                radii[u] = getRewardRadius(batch.get(u), defaultRadius);
+            }
+            RewardSpatialJoin join = new RewardSpatialJoin(index, batch, radii);
+            join.run();
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int position = 0; position < index.size(); position++) {
+                Attraction attraction = index.attractionAt(position);
+                int attractionOrdinal = index.ordinalAt(position);
+                for (int k = 0; k < join.groupSize(position); k++) {
+                    User user = batch.get(join.userAt(position, k));
+                    int visitedLocationIndex = join.locationAt(position, k);
+                    futures.add(CompletableFuture.runAsync(() -> grantReward(user, attractionOrdinal,
+                            visitedLocationIndex, getRewardPoints(attraction, user)), rewardsExecutor));
+                }
             }
-            // Attente de la completion de tous les futures du lot
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-            logger.info("calculateRewards - Lot de {} utilisateurs traité avec succès", users.size());
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            commitBatchEvent(event, "BY_CELL", batch.size());
+            logger.info("calculateRewardsByCell - Lot de {} utilisateurs traité avec succès ({} cellules, {} récompenses)",
+                    batch.size(), join.getCellCount(), futures.size());
         } finally {
-            // Arrêter proprement l'executor
-            executor.shutdown();
+            for (User user : batch) {
+                user.stopCalculateReward();
+            }
         }
     }
 
@@ -101,21 +278,202 @@ public class RewardsService {
         calculateRewards(user, attractions);
     }
 
-    public void calculateRewards(User user, List<Attraction> attractions) {
-        List<VisitedLocation> userLocations = user.getVisitedLocations();
-        // utilisation d'un compteur a taille fixe
-        for (int i = 0; i < userLocations.size(); i++) {
-            //  Pour chaque attraction
-            for (Attraction attraction : attractions) {
+    /**
+     * Calcule les récompenses d'un utilisateur à partir d'un catalogue d'attractions déjà chargé.
+     * Le rayon de proximité est celui de l'utilisateur (voir getRewardRadius).
+     *
+     * @param user        Utilisateur pour lequel calculer les récompenses
+     * @param attractions Catalogue des attractions
+     * @return Le temps passé à interroger RewardCentral, en nanosecondes
+     */
+    public long calculateRewards(User user, List<Attraction> attractions) {
+        return calculateRewards(user, attractionIndex(attractions), -1, getRewardRadius(user),
+                user.getFirstResidentLocationIndex());
+    }
+
+    /**
+     * Met à jour les zones de proximité d'un utilisateur avec les localisations ajoutées depuis la dernière mise à jour,
+     * et le récompense à chaque entrée dans la zone d'une attraction pas encore récompensée.
+     * Contrairement à calculateRewards, l'historique déjà évalué n'est pas reparcouru : c'est le calcul du suivi.
+     *
+     * @param user        L'utilisateur suivi
+     * @param attractions Catalogue des attractions
+     * @return Le temps passé à interroger RewardCentral, en nanosecondes
+     */
+    public long updateGeofences(User user, List<Attraction> attractions) {
+        long rewardCentralNanos = 0;
+        for (GeofenceEvent event : geofenceEngine.update(user, attractionIndex(attractions), getRewardRadius(user))) {
+            int attractionOrdinal = event.getAttractionOrdinal();
+            if (event.getType() == GeofenceEvent.Type.ENTER && !user.hasRewardFor(attractionOrdinal)) {
+                long rewardCentralStart = System.nanoTime();
+                int rewardPoints = getRewardPoints(attractionCatalog.get(attractionOrdinal), user);
+                rewardCentralNanos += System.nanoTime() - rewardCentralStart;
+                grantReward(user, attractionOrdinal, event.getVisitedLocationIndex(), rewardPoints);
+            }
+        }
+        return rewardCentralNanos;
+    }
+
+    /**
+     * Met à jour les zones de proximité d'un lot d'utilisateurs (voir updateGeofences), typiquement après
+     * calculateRewardsByCell : les entrées dans la zone d'une attraction déjà récompensée n'interrogent pas RewardCentral.
+     *
+     * @param users Les utilisateurs dont l'historique a reçu de nouvelles localisations
+     */
+    public void updateGeofences(List<User> users) {
+        List<Attraction> attractions = gpsUtil.getAttractions();
+        for (User user : users) {
+            updateGeofences(user, attractions);
+        }
+    }
+
+    /**
+     * Réévalue les récompenses d'un utilisateur après une augmentation de son rayon de proximité.
+     * Seules les attractions situées entre l'ancien et le nouveau rayon sont examinées,
+     * et seulement pour les MAX_REEVALUATED_LOCATIONS localisations les plus récentes.
+     *
+     * @param user           L'utilisateur dont le rayon a changé
+     * @param attractions    Catalogue des attractions
+     * @param previousRadius Rayon de proximité avant le changement, en miles
+     */
+    public void reevaluateRewards(User user, List<Attraction> attractions, double previousRadius) {
+        double radius = getRewardRadius(user);
+        if (radius <= previousRadius) {
+            // les récompenses déjà obtenues sont conservées quand le rayon diminue
+            return;
+        }
+        // une localisation déportée (voir UserTiering) recharge l'historique : c'est une action explicite de l'utilisateur
+        int firstLocation = Math.max(0, user.getVisitedLocationCount() - MAX_REEVALUATED_LOCATIONS);
+        calculateRewards(user, attractionIndex(attractions), previousRadius, radius, firstLocation);
+    }
+
+    /**
+     * Rayon de proximité appliqué à un utilisateur : sa préférence attractionProximity si elle est définie,
+     * sinon la distance de proximité par défaut du service.
+     * La valeur par défaut de la préférence (Integer.MAX_VALUE) signifie "pas de préférence".
+     *
+     * @param user L'utilisateur
+     * @return Le rayon de proximité en miles
+     */
+    public double getRewardRadius(User user) {
+        return getRewardRadius(user, proximityBuffer);
+    }
+
+    private double getRewardRadius(User user, int defaultRadius) {
+        int attractionProximity = user.getUserPreferences().getAttractionProximity();
+        return attractionProximity == Integer.MAX_VALUE ? defaultRadius : attractionProximity;
+    }
+
+    private long calculateRewards(User user, AttractionIndex index, double minRadius, double maxRadius, int firstLocation) {
+        long rewardCentralNanos = 0;
+        // parcours borné à l'historique actuel, décodé sans créer d'objet par localisation
+        LocationCursor cursor = user.locationCursor(firstLocation);
+        while (cursor.next()) {
+            int i = cursor.getIndex();
+            // seules les attractions dans le rayon de cette localisation sont examinées
+            for (int position : index.findWithin(cursor.getLatitude(), cursor.getLongitude(), minRadius, maxRadius)) {
+                int attractionOrdinal = index.ordinalAt(position);
                 // on vérifie que le user n'a pas déja eu la récompense
-                if (user.getUserRewards().stream().filter(r -> r.attraction.attractionName.equals(attraction.attractionName)).count() == 0) {
-                    // s'il est assez proche, on lui ajoute la récompense
-                    if (nearAttraction(userLocations.get(i), attraction)) {
-                        user.addUserReward(new UserReward(userLocations.get(i), attraction, getRewardPoints(attraction, user)));
-                    }
+                if (!user.hasRewardFor(attractionOrdinal)) {
+                    Attraction attraction = index.attractionAt(position);
+                    long rewardCentralStart = System.nanoTime();
+                    int rewardPoints = getRewardPoints(attraction, user);
+                    rewardCentralNanos += System.nanoTime() - rewardCentralStart;
+                    grantReward(user, attractionOrdinal, i, rewardPoints);
                 }
             }
         }
+        return rewardCentralNanos;
+    }
+
+    /**
+     * Met à jour les zones de proximité d'un utilisateur (voir updateGeofences) et renvoie les récompenses
+     * à attribuer pour les entrées, sans interroger RewardCentral ni modifier les récompenses de l'utilisateur.
+     * Première étape du calcul en mode SHARDED, exécutée par le shard propriétaire de l'utilisateur.
+     *
+     * @param user        L'utilisateur concerné
+     * @param attractions Catalogue des attractions
+     * @return Les récompenses à attribuer, sans leurs points
+     */
+    PendingRewards findPendingRewards(User user, List<Attraction> attractions) {
+        PendingRewards pending = new PendingRewards();
+        for (GeofenceEvent event : geofenceEngine.update(user, attractionIndex(attractions), getRewardRadius(user))) {
+            int attractionOrdinal = event.getAttractionOrdinal();
+            if (event.getType() == GeofenceEvent.Type.ENTER && !user.hasRewardFor(attractionOrdinal)
+                    && !pending.contains(attractionOrdinal)) {
+                pending.add(attractionOrdinal, event.getVisitedLocationIndex(), attractionCatalog.get(attractionOrdinal));
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Interroge RewardCentral pour chaque récompense en attente. N'accède pas aux données de l'utilisateur.
+     *
+     * @param user    L'utilisateur concerné
+     * @param pending Les récompenses en attente, complétées de leurs points
+     * @return Le temps passé à interroger RewardCentral, en nanosecondes
+     */
+    long fetchRewardPoints(User user, PendingRewards pending) {
+        long start = System.nanoTime();
+        for (int i = 0; i < pending.size(); i++) {
+            pending.setRewardPoints(i, getRewardPoints(pending.attraction(i), user));
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Attribue les récompenses en attente qui ne l'ont pas été entre-temps.
+     * Dernière étape du calcul en mode SHARDED, exécutée par le shard propriétaire de l'utilisateur.
+     *
+     * @param user    L'utilisateur concerné
+     * @param pending Les récompenses en attente, avec leurs points
+     */
+    void grantPendingRewards(User user, PendingRewards pending) {
+        for (int i = 0; i < pending.size(); i++) {
+            grantReward(user, pending.attractionOrdinal(i), pending.visitedLocationIndex(i), pending.rewardPoints(i));
+        }
+    }
+
+    private AttractionIndex attractionIndex(List<Attraction> attractions) {
+        AttractionIndex index = attractionIndex;
+        if (index == null || !index.isFor(attractions)) {
+            index = AttractionIndex.of(attractionCatalog, attractions);
+            attractionIndex = index;
+        }
+        return index;
+    }
+
+    private void commitBatchEvent(RewardBatchEvent event, String strategy, int users) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.strategy = strategy;
+            event.users = users;
+            event.concurrency = rewardsExecutor.getLimit();
+            event.commit();
+        }
+    }
+
+    private void grantReward(User user, int attractionOrdinal, int visitedLocationIndex, int rewardPoints) {
+        if (user.addUserReward(attractionCatalog, attractionOrdinal, visitedLocationIndex, rewardPoints)) {
+            rewardGranted(user, attractionOrdinal, visitedLocationIndex, rewardPoints);
+        }
+    }
+
+    private void rewardGranted(User user, int attractionOrdinal, int visitedLocationIndex, int rewardPoints) {
+        RewardGrantEvent event = new RewardGrantEvent();
+        if (event.shouldCommit()) {
+            Attraction attraction = attractionCatalog.get(attractionOrdinal);
+            event.userId = user.getUserId().toString();
+            event.attractionId = attraction.attractionId.toString();
+            event.attractionName = attraction.attractionName;
+            event.rewardPoints = rewardPoints;
+            event.visitedLocationIndex = visitedLocationIndex;
+            event.commit();
+        }
+        for (RewardGrantListener listener : rewardGrantListeners) {
+            listener.onRewardGranted(user, attractionOrdinal, rewardPoints);
+        }
     }
 
     /**
@@ -129,10 +487,6 @@ public class RewardsService {
         return getDistance(attraction, location) > attractionProximityRange ? false : true;
     }
 
-    private boolean nearAttraction(VisitedLocation visitedLocation, Attraction attraction) {
-        return getDistance(attraction, visitedLocation.location) > proximityBuffer ? false : true;
-    }
-
     /**
      * Récupère le nombre de points de récompense pour une attraction et un utilisateur.
      *
@@ -141,7 +495,11 @@ public class RewardsService {
      * @return Le nombre de points de récompense
      */
     public int getRewardPoints(Attraction attraction, User user) {
-        return rewardsCentral.getAttractionRewardPoints(attraction.attractionId, user.getUserId());
+        ExternalCallEvent event = new ExternalCallEvent();
+        event.begin();
+        int rewardPoints = rewardsCentral.getAttractionRewardPoints(attraction.attractionId, user.getUserId());
+        event.complete(ExternalCallEvent.REWARD_CENTRAL, "getAttractionRewardPoints", user.getUserId(), attraction.attractionId);
+        return rewardPoints;
     }
 
     /**
@@ -154,13 +512,23 @@ public class RewardsService {
      */
 
     public double getDistance(Location loc1, Location loc2) {
-        double lat1 = Math.toRadians(loc1.latitude);
-        double lon1 = Math.toRadians(loc1.longitude);
-        double lat2 = Math.toRadians(loc2.latitude);
-        double lon2 = Math.toRadians(loc2.longitude);
+        return distance(loc1, loc2);
+    }
+
+    static double distance(Location loc1, Location loc2) {
+        return distance(loc1.latitude, loc1.longitude, loc2.latitude, loc2.longitude);
+    }
+
+    static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double lat1 = Math.toRadians(latitude1);
+        double lon1 = Math.toRadians(longitude1);
+        double lat2 = Math.toRadians(latitude2);
+        double lon2 = Math.toRadians(longitude2);
 
-        double angle = Math.acos(Math.sin(lat1) * Math.sin(lat2)
-                + Math.cos(lat1) * Math.cos(lat2) * Math.cos(lon1 - lon2));
+        // l'arrondi peut faire légèrement sortir le cosinus de [-1, 1] pour des points confondus
+        double cosAngle = Math.sin(lat1) * Math.sin(lat2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.cos(lon1 - lon2);
+        double angle = Math.acos(Math.max(-1, Math.min(1, cosAngle)));
 
         double nauticalMiles = 60 * Math.toDegrees(angle);
         double statuteMiles = STATUTE_MILES_PER_NAUTICAL_MILE * nauticalMiles;
@@ -1,28 +1,55 @@
 package com.openclassrooms.tourguide.service;
 
+import com.openclassrooms.tourguide.concurrency.AdaptiveConcurrencyLimiter;
+import com.openclassrooms.tourguide.concurrency.ShardedUserExecutor;
+import com.openclassrooms.tourguide.concurrency.TrackingExecutionMode;
+import com.openclassrooms.tourguide.dto.AttractionPopularityDTO;
 import com.openclassrooms.tourguide.dto.AttractionUserDTO;
+import com.openclassrooms.tourguide.dto.GeofenceDTO;
+import com.openclassrooms.tourguide.dto.HeatMapCellDTO;
+import com.openclassrooms.tourguide.dto.HeatMapDTO;
+import com.openclassrooms.tourguide.dto.ItineraryDTO;
+import com.openclassrooms.tourguide.dto.ItineraryStopDTO;
+import com.openclassrooms.tourguide.dto.LeaderboardEntryDTO;
 import com.openclassrooms.tourguide.dto.NearbyAttractionsDTO;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.jfr.ExternalCallEvent;
+import com.openclassrooms.tourguide.jfr.UserTrackingEvent;
+import com.openclassrooms.tourguide.model.AttractionCatalog;
 import com.openclassrooms.tourguide.model.User;
 import com.openclassrooms.tourguide.model.UserReward;
 import com.openclassrooms.tourguide.tracker.Tracker;
+import com.openclassrooms.tourguide.tracker.TrackingCycleRecorder;
+import com.openclassrooms.tourguide.tracker.TrackingCycleReport;
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
 import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
+import jakarta.annotation.PreDestroy;
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import tripPricer.Provider;
 import tripPricer.TripPricer;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -36,6 +63,11 @@ import java.util.stream.IntStream;
  * Ce service utilise GpsUtil pour la géolocalisation, RewardsService pour le calcul des récompenses,
  * et TripPricer pour générer des offres de voyage. Il gère également un système de suivi
  * automatique des utilisateurs via un Tracker.
+ *
+ * Dans l'application, la création des utilisateurs internes et le démarrage du Tracker se font en arrière-plan
+ * une fois Spring démarré (ApplicationReadyEvent), pour que le temps de démarrage ne dépende pas du nombre
+ * d'utilisateurs ; l'avancement est exposé par getWarmUpProgress. Construit directement (tests),
+ * le service fait ce démarrage dans le constructeur.
  */
 @Service
 public class TourGuideService {
@@ -43,23 +75,145 @@ public class TourGuideService {
     private final GpsUtil gpsUtil;
     private final RewardsService rewardsService;
     private final TripPricer tripPricer = new TripPricer();
+    private final RewardLeaderboard rewardLeaderboard = new RewardLeaderboard();
+    private final LocationStalenessStats locationStalenessStats = new LocationStalenessStats();
+    private final VisitedAreaIndex visitedAreaIndex = new VisitedAreaIndex();
+    private final UserTiering userTiering = new UserTiering();
+    /**
+     * Nombre maximal d'abonnements SSE ouverts simultanément
+     */
+    private static final int MAX_UPDATE_SUBSCRIPTIONS = 10_000;
+    private final UserUpdateBroadcaster userUpdates;
+    /**
+     * Nombre d'attractions renvoyées par getNearByAttractions
+     */
+    private static final int NEARBY_ATTRACTIONS = 5;
+    private final NearbyAttractionCache nearbyAttractionCache;
+    private final TripDealsPrefetcher tripDealsPrefetcher = new TripDealsPrefetcher(this::refreshTripDeals);
+    /**
+     * Catalogue des attractions du service des récompenses
+     */
+    private final AttractionCatalog attractionCatalog;
+    private final AttractionPopularity attractionPopularity;
+    private final ItineraryPlanner itineraryPlanner;
+    /**
+     * Écouteurs enregistrés auprès du RewardsService, retirés à la fermeture du service (voir close)
+     */
+    private final List<RewardGrantListener> rewardGrantListeners;
+    /**
+     * Suivis de localisation en cours, par utilisateur
+     */
+    private final Map<UUID, CompletableFuture<VisitedLocation>> inFlightLocations = new ConcurrentHashMap<>();
+    /**
+     * Executor des suivis en lot, dimensionné d'après la latence observée de GpsUtil et RewardCentral
+     */
+    private final AdaptiveConcurrencyLimiter trackingExecutor =
+            new AdaptiveConcurrencyLimiter("tracking", 64, 8, 4096, 500, TimeUnit.MILLISECONDS);
+    /**
+     * Shards propriétaires des utilisateurs, utilisés en mode SHARDED
+     */
+    private final ShardedUserExecutor userShards =
+            new ShardedUserExecutor("user-shard", Runtime.getRuntime().availableProcessors());
+    private volatile TrackingExecutionMode executionMode = TrackingExecutionMode.POOL;
+    private final WarmUpProgress warmUpProgress = new WarmUpProgress();
+    private final CompletableFuture<Void> warmUpCompletion = new CompletableFuture<>();
     public final Tracker tracker;
+    /**
+     * Délai laissé au Tracker, puis aux suivis déjà lancés, pour se terminer à la fermeture du service
+     */
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+    private final Thread shutdownHook = new Thread(this::close, "tourguide-shutdown");
+    private final AtomicBoolean closed = new AtomicBoolean();
     boolean testMode = true;
 
+    /**
+     * Crée le service, ses utilisateurs internes et démarre le Tracker avant de rendre la main.
+     */
     public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService) {
+        this(gpsUtil, rewardsService, false);
+    }
+
+    /**
+     * @param asyncWarmUp Si true, les utilisateurs internes sont créés et le Tracker démarré en arrière-plan,
+     *                    à la réception de ApplicationReadyEvent (voir startWarmUp)
+     */
+    @Autowired
+    public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService,
+                            @Value("${tourguide.startup.async-warm-up:true}") boolean asyncWarmUp) {
         this.gpsUtil = gpsUtil;
         this.rewardsService = rewardsService;
+        this.attractionCatalog = rewardsService.getAttractionCatalog();
+        this.attractionPopularity = new AttractionPopularity(rewardsService);
+        this.itineraryPlanner = new ItineraryPlanner(attractionCatalog, attractionPopularity);
+        this.userUpdates = new UserUpdateBroadcaster(attractionCatalog, MAX_UPDATE_SUBSCRIPTIONS);
+        this.nearbyAttractionCache = new NearbyAttractionCache(attractionCatalog, NEARBY_ATTRACTIONS);
+        this.rewardGrantListeners = List.of(rewardLeaderboard, attractionPopularity, userUpdates, tripDealsPrefetcher);
+        for (RewardGrantListener listener : rewardGrantListeners) {
+            rewardsService.addRewardGrantListener(listener);
+        }
 
         Locale.setDefault(Locale.US);
 
-        if (testMode) {
-            logger.info("TestMode enabled");
-            logger.info("Initializing users");
-            initializeInternalUsers();
-            logger.debug("Finished initializing users");
-        }
         tracker = new Tracker(this);
         addShutDownHook();
+        if (!asyncWarmUp) {
+            warmUpProgress.populating(testMode ? InternalTestHelper.getInternalUserNumber() : 0);
+            warmUp();
+            warmUpCompletion.join();
+        }
+    }
+
+    /**
+     * Lance le démarrage une fois l'application démarrée : Spring sert déjà les requêtes pendant sa progression.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        startWarmUp();
+    }
+
+    /**
+     * Lance en arrière-plan la création des utilisateurs internes puis le démarrage du Tracker.
+     * Sans effet si le démarrage est déjà fait ou en cours.
+     *
+     * @return La fin du démarrage
+     */
+    public synchronized CompletableFuture<Void> startWarmUp() {
+        if (warmUpProgress.getPhase() != WarmUpProgress.Phase.PENDING) {
+            return warmUpCompletion;
+        }
+        warmUpProgress.populating(testMode ? InternalTestHelper.getInternalUserNumber() : 0);
+        Thread thread = new Thread(this::warmUp, "tourguide-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+        return warmUpCompletion;
+    }
+
+    private void warmUp() {
+        try {
+            if (testMode) {
+                logger.info("TestMode enabled");
+                logger.info("Initializing users");
+                initializeInternalUsers();
+                logger.debug("Finished initializing users");
+            }
+            warmUpProgress.startingTracker();
+            tracker.startTracking();
+            warmUpProgress.ready();
+            logger.info("Démarrage terminé en " + warmUpProgress.getElapsedMillis() + " ms ("
+                    + warmUpProgress.getUsersCreated() + " utilisateurs)");
+            warmUpCompletion.complete(null);
+        } catch (RuntimeException e) {
+            warmUpProgress.failed(e);
+            logger.error("Échec du démarrage : " + e.getMessage(), e);
+            warmUpCompletion.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return L'avancement du démarrage, pour l'indicateur de disponibilité
+     */
+    public WarmUpProgress getWarmUpProgress() {
+        return warmUpProgress;
     }
 
     /**
@@ -74,15 +228,119 @@ public class TourGuideService {
 
     /**
      * Obtient la dernière localisation d'un utilisateur ou le localise s'il n'a pas d'historique.
+     * L'appel marque l'utilisateur comme actif (il sera suivi en priorité par le Tracker)
+     * et l'ancienneté de la position servie est mesurée.
      *
      * @param user L'utilisateur dont on veut connaître la position
      * @return La dernière localisation visitée par l'utilisateur
      */
     public VisitedLocation getUserLocation(User user) {
-        if (user.getVisitedLocations().isEmpty())
-            return trackUserLocation(user);
+        markActive(user);
+        VisitedLocation visitedLocation;
+        if (user.getVisitedLocationCount() == 0)
+            visitedLocation = join(trackUserLocationOnce(user, gpsUtil.getAttractions(), null, null, true));
         else
-            return user.getLastVisitedLocation();
+            visitedLocation = user.getLastVisitedLocation();
+        locationStalenessStats.record(System.currentTimeMillis() - visitedLocation.timeVisited.getTime());
+        return visitedLocation;
+    }
+
+    /**
+     * Marque un utilisateur comme actif : il est suivi en priorité et ses offres de voyage sont précalculées.
+     */
+    private void markActive(User user) {
+        user.markApiActivity();
+        tripDealsPrefetcher.enqueue(user);
+    }
+
+    /**
+     * @return Le précalcul des offres de voyage, pour l'exposition de ses métriques
+     */
+    public TripDealsPrefetcher getTripDealsPrefetcher() {
+        return tripDealsPrefetcher;
+    }
+
+    /**
+     * @return Le cache des attractions candidates par cellule, pour l'exposition de ses métriques
+     */
+    public NearbyAttractionCache getNearbyAttractionCache() {
+        return nearbyAttractionCache;
+    }
+
+    /**
+     * @return Le catalogue des attractions du service des récompenses, qui attribue les ordinaux des attractions
+     */
+    public AttractionCatalog getAttractionCatalog() {
+        return attractionCatalog;
+    }
+
+    /**
+     * @return L'executor des suivis en lot, pour l'exposition de ses métriques
+     */
+    public AdaptiveConcurrencyLimiter getTrackingExecutor() {
+        return trackingExecutor;
+    }
+
+    /**
+     * @return La répartition des utilisateurs entre mémoire et disque, pour l'exposition de ses métriques
+     */
+    public UserTiering getUserTiering() {
+        return userTiering;
+    }
+
+    /**
+     * Déporte sur disque l'historique des utilisateurs inactifs (voir UserTiering).
+     *
+     * @return Le nombre de segments écrits
+     */
+    public int spillInactiveUsers() {
+        return userTiering.spillInactiveUsers(getAllUsers(), System.currentTimeMillis());
+    }
+
+    /**
+     * Abonne un client aux nouvelles localisations et récompenses d'un utilisateur (voir UserUpdateBroadcaster).
+     *
+     * @param user    L'utilisateur suivi
+     * @param emitter Le flux SSE du client
+     * @throws IllegalStateException si le nombre maximal d'abonnements est atteint
+     */
+    public void subscribeUpdates(User user, SseEmitter emitter) {
+        markActive(user);
+        userUpdates.subscribe(user, emitter);
+    }
+
+    /**
+     * @return La diffusion des mises à jour aux abonnés, pour l'exposition de ses métriques
+     */
+    public UserUpdateBroadcaster getUserUpdates() {
+        return userUpdates;
+    }
+
+    /**
+     * @return Les shards propriétaires des utilisateurs, pour l'exposition de leurs métriques
+     */
+    public ShardedUserExecutor getUserShards() {
+        return userShards;
+    }
+
+    public TrackingExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Change le mode d'exécution du suivi. Les suivis déjà lancés terminent dans leur mode d'origine.
+     *
+     * @param executionMode POOL (défaut) ou SHARDED
+     */
+    public void setExecutionMode(TrackingExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * @return Les statistiques d'ancienneté des positions servies par getUserLocation
+     */
+    public LocationStalenessStats getLocationStalenessStats() {
+        return locationStalenessStats;
     }
 
     /**
@@ -95,6 +353,16 @@ public class TourGuideService {
         return internalUserMap.get(userName);
     }
 
+    /**
+     * Récupère un utilisateur par son identifiant.
+     *
+     * @param userId L'identifiant recherché
+     * @return L'utilisateur correspondant, ou null s'il est inconnu
+     */
+    public User getUser(UUID userId) {
+        return usersById.get(userId);
+    }
+
     /**
      * Récupère la liste de tous les utilisateurs.
      *
@@ -110,57 +378,211 @@ public class TourGuideService {
      * @param user L'utilisateur à ajouter
      */
     public void addUser(User user) {
-        if (!internalUserMap.containsKey(user.getUserName())) {
-            internalUserMap.put(user.getUserName(), user);
+        if (internalUserMap.putIfAbsent(user.getUserName(), user) == null) {
+            usersById.put(user.getUserId(), user);
+            List<VisitedLocation> visitedLocations = new ArrayList<>(user.getVisitedLocations());
+            for (VisitedLocation visitedLocation : visitedLocations) {
+                visitedAreaIndex.index(user, visitedLocation);
+            }
+            if (!visitedLocations.isEmpty()) {
+                attractionPopularity.onUserLocated(user, visitedLocations.get(visitedLocations.size() - 1));
+            }
         }
     }
 
+    /**
+     * Renvoie les localisations visitées par un utilisateur dans une plage de temps, par ordre chronologique.
+     *
+     * @param user L'utilisateur
+     * @param from Début de la plage (inclus)
+     * @param to   Fin de la plage (incluse)
+     * @return Les localisations visitées entre from et to
+     */
+    public List<VisitedLocation> getLocationHistory(User user, Date from, Date to) {
+        return user.getVisitedLocationsBetween(from, to);
+    }
+
+    /**
+     * Recherche les utilisateurs passés dans une zone géographique pendant une période.
+     *
+     * @param minLatitude  Latitude minimale de la zone
+     * @param maxLatitude  Latitude maximale de la zone
+     * @param minLongitude Longitude minimale de la zone
+     * @param maxLongitude Longitude maximale de la zone (inférieure à minLongitude si la zone traverse l'antiméridien)
+     * @param from         Début de la période (inclus)
+     * @param to           Fin de la période (incluse)
+     * @return Les noms des utilisateurs passés dans la zone pendant la période
+     */
+    public List<String> getUsersInArea(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude,
+                                       Date from, Date to) {
+        return visitedAreaIndex.findUsersInArea(minLatitude, maxLatitude, minLongitude, maxLongitude, from, to)
+                .stream()
+                .map(User::getUserName)
+                .toList();
+    }
+
     /**
      * Obtient les offres de voyage pour un utilisateur en fonction de ses points de récompense.
+     * Les offres précalculées (voir TripDealsPrefetcher) sont servies tant qu'elles sont fraîches.
      *
      * @param user L'utilisateur pour lequel on recherche des offres
      * @return La liste des offres de voyage disponibles
      */
     public List<Provider> getTripDeals(User user) {
-        int cumulatativeRewardPoints = user.getUserRewards().stream().mapToInt(i -> i.getRewardPoints()).sum();
+        if (TripDealsPrefetcher.isFresh(user, System.currentTimeMillis())) {
+            List<Provider> tripDeals = user.getTripDeals();
+            if (tripDeals != null && !tripDeals.isEmpty()) {
+                return tripDeals;
+            }
+        }
+        return refreshTripDeals(user);
+    }
+
+    /**
+     * Calcule les offres de voyage d'un utilisateur auprès de TripPricer et les enregistre.
+     */
+    private List<Provider> refreshTripDeals(User user) {
+        int cumulatativeRewardPoints = user.getCumulativeRewardPoints();
+        ExternalCallEvent event = new ExternalCallEvent();
+        event.begin();
         List<Provider> providers = tripPricer.getPrice(tripPricerApiKey, user.getUserId(),
                 user.getUserPreferences().getNumberOfAdults(), user.getUserPreferences().getNumberOfChildren(),
                 user.getUserPreferences().getTripDuration(), cumulatativeRewardPoints);
-        user.setTripDeals(providers);
+        event.complete(ExternalCallEvent.TRIP_PRICER, "getPrice", user.getUserId(), null);
+        updateUser(user, () -> user.setTripDeals(providers));
         return providers;
     }
 
     /**
-     * Suit la localisation d'un groupe d'utilisateurs de manière asynchrone.
-     * Utilise un pool de threads pour traiter plusieurs utilisateurs en parallèle.
-     * Vérifie si un suivi est déjà en cours pour chaque utilisateur pour éviter les doublons.
+     * Modifie le rayon de proximité des récompenses d'un utilisateur.
+     * Si le rayon augmente, seules les attractions situées entre l'ancien et le nouveau rayon
+     * sont réévaluées ; s'il diminue, les récompenses déjà obtenues sont conservées.
+     *
+     * @param user   L'utilisateur concerné
+     * @param radius Nouveau rayon en miles
+     */
+    public void setAttractionProximity(User user, int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Le rayon de proximité doit être positif : " + radius);
+        }
+        double previousRadius = rewardsService.getRewardRadius(user);
+        user.getUserPreferences().setAttractionProximity(radius);
+        rewardsService.reevaluateRewards(user, gpsUtil.getAttractions(), previousRadius);
+    }
+
+    /**
+     * Renvoie les zones de proximité des attractions visitées par un utilisateur, avec le temps passé dans chacune.
+     *
+     * @param user L'utilisateur
+     * @return Les zones, celles où se trouve l'utilisateur en premier puis par temps passé décroissant
+     */
+    public List<GeofenceDTO> getGeofences(User user) {
+        return rewardsService.getGeofenceEngine().describe(user);
+    }
+
+    /**
+     * Renvoie les N utilisateurs ayant cumulé le plus de points de récompense.
+     *
+     * @param limit Nombre maximal d'utilisateurs à renvoyer
+     * @return Le classement, du meilleur au moins bon
+     */
+    public List<LeaderboardEntryDTO> getLeaderboard(int limit) {
+        List<LeaderboardEntryDTO> leaderboard = new ArrayList<>();
+        for (RewardLeaderboard.Entry entry : rewardLeaderboard.top(limit)) {
+            LeaderboardEntryDTO leaderboardEntryDTO = new LeaderboardEntryDTO();
+            leaderboardEntryDTO.setRank(leaderboard.size() + 1);
+            leaderboardEntryDTO.setUserName(entry.getUserName());
+            leaderboardEntryDTO.setRewardPoints(entry.getRewardPoints());
+            leaderboard.add(leaderboardEntryDTO);
+        }
+        return leaderboard;
+    }
+
+    /**
+     * Suit la localisation d'un groupe d'utilisateurs de manière asynchrone, sans échéance.
      *
      * @param users La liste des utilisateurs à localiser
+     * @return Le rapport du cycle : volume traité, débit et latences par utilisateur
+     * @see #trackUserLocation(List, Duration)
      */
-    public void trackUserLocation(List<User> users) {
+    public TrackingCycleReport trackUserLocation(List<User> users) {
+        return trackUserLocation(users, null);
+    }
+
+    /**
+     * Suit la localisation d'un groupe d'utilisateurs de manière asynchrone, dans un budget de temps.
+     * Les utilisateurs sont traités en parallèle par l'executor adaptatif du service,
+     * qui règle le nombre de suivis simultanés d'après le débit observé.
+     * Si un suivi est déjà en cours pour un utilisateur, son résultat est partagé au lieu d'être relancé.
+     *
+     * À l'échéance, le cycle rend la main sans attendre les suivis restants : les utilisateurs pas encore
+     * soumis ne le sont pas, et l'attente de chaque suivi est bornée par le budget restant à sa soumission.
+     * Un suivi dépassant l'échéance continue en arrière-plan : il reste partagé avec le prochain appelant.
+     * Ces utilisateurs sont reportés dans le rapport, les suivis en erreur y sont comptés comme échecs.
+     *
+     * @param users  La liste des utilisateurs à localiser, par ordre de priorité
+     * @param budget Durée maximale du cycle, ou null pour attendre tous les suivis
+     * @return Le rapport du cycle : utilisateurs terminés, reportés et en échec, débit et latences par utilisateur
+     */
+    public TrackingCycleReport trackUserLocation(List<User> users, Duration budget) {
         List<Attraction> attractions = gpsUtil.getAttractions();
         List<CompletableFuture<VisitedLocation>> futures = new ArrayList<>();
-        ExecutorService executor = Executors.newFixedThreadPool(5000);
-        try {
-            for (User user : users) {
-                CompletableFuture<VisitedLocation> completableFuture = CompletableFuture.supplyAsync(() -> {
-                    if (user.isTrackUserLocationEnCours()) return user.getLastVisitedLocation();
-                    user.startTrackUserLocation();
-                    try {
-                        return trackUserLocation(user, attractions);
-                    } finally {
-                        user.stopTrackUserLocation();
-                    }
-                },executor);
-                futures.add(completableFuture);
+        TrackingCycleRecorder recorder = new TrackingCycleRecorder(users.size());
+        long deadline = budget == null ? Long.MAX_VALUE : System.nanoTime() + budget.toNanos();
+        Executor executor = budget == null ? trackingExecutor : trackingExecutor.withDeadline(deadline);
+        for (User user : users) {
+            long remaining = deadline - System.nanoTime();
+            // échéance atteinte, service fermé ou Tracker arrêté : les utilisateurs restants sont reportés
+            if (remaining <= 0 || isStopping()) {
+                break;
+            }
+            // un suivi déjà en cours pour cet utilisateur (API ou cycle précédent) est partagé, pas relancé
+            CompletableFuture<VisitedLocation> future = trackUserLocationOnce(user, attractions, recorder, executor, false);
+            // la copie porte le délai : le future partagé n'expire pas pour les autres appelants
+            futures.add(budget == null ? future : future.copy().orTimeout(remaining, TimeUnit.NANOSECONDS));
+        }
+        // Attendre que tous les futures du lot soient terminés, normalement, en erreur ou à l'échéance
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> null).join();
+
+        int completed = 0;
+        int failed = 0;
+        List<User> carriedOver = new ArrayList<>();
+        boolean stopping = isStopping();
+        for (int i = 0; i < futures.size(); i++) {
+            Throwable error = futures.get(i).handle((visitedLocation, t) -> t).join();
+            if (error == null) {
+                completed++;
+            } else if (isDeadlineExceeded(error) || stopping && isRejected(error)) {
+                carriedOver.add(users.get(i));
+            } else {
+                failed++;
+                logger.warn("trackUserLocation - Échec du suivi de l'utilisateur {}", users.get(i).getUserName(), error);
             }
-            // Attendre que tous les futures du lot soient terminés
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-            logger.info("trackUserLocation - Lot de {} utilisateurs traité avec succès", users.size());
-        } finally {
-            // Arrêter proprement l'executor
-            executor.shutdown();
         }
+        carriedOver.addAll(users.subList(futures.size(), users.size()));
+        TrackingCycleReport report = recorder.finish(completed, carriedOver, failed);
+        logger.info("trackUserLocation - Lot de {} utilisateurs : {} terminés, {} reportés, {} en échec ({} utilisateurs/s, concurrence {})",
+                users.size(), completed, carriedOver.size(), failed, Math.round(report.getThroughputPerSecond()),
+                trackingExecutor.getLimit());
+        return report;
+    }
+
+    /**
+     * @return true si le service est fermé ou si le thread courant, celui du Tracker, a été interrompu
+     */
+    private boolean isStopping() {
+        return closed.get() || Thread.currentThread().isInterrupted();
+    }
+
+    private static boolean isRejected(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof RejectedExecutionException;
+    }
+
+    private static boolean isDeadlineExceeded(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof TimeoutException
+                || cause instanceof RejectedExecutionException && cause.getCause() instanceof TimeoutException;
     }
 
     /**
@@ -171,20 +593,227 @@ public class TourGuideService {
      */
     public VisitedLocation trackUserLocation(User user) {
         List<Attraction> attractions = gpsUtil.getAttractions();
-        return trackUserLocation(user, attractions);
+        return join(trackUserLocationOnce(user, attractions, null, null, false));
+    }
+
+    private static VisitedLocation join(CompletableFuture<VisitedLocation> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Suit la localisation d'un utilisateur en dédupliquant les appels concurrents (single-flight) :
+     * tant qu'un suivi est en cours pour cet utilisateur, tous les appelants (contrôleur, Tracker)
+     * partagent le même future au lieu d'interroger à nouveau GpsUtil et RewardCentral.
+     *
+     * @param user               L'utilisateur à localiser
+     * @param attractions        Catalogue des attractions
+     * @param recorder           Mesures du cycle en cours, ou null hors cycle
+     * @param executor           Executor du suivi, ou null pour suivre dans le thread appelant
+     * @param onlyWithoutHistory Si true, la dernière localisation connue est renvoyée sans interroger GpsUtil
+     *                           quand un suivi concurrent s'est terminé entre-temps
+     * @return Le future de la localisation, partagé avec les autres appelants concurrents
+     */
+    private CompletableFuture<VisitedLocation> trackUserLocationOnce(User user, List<Attraction> attractions,
+                                                                    TrackingCycleRecorder recorder, Executor executor,
+                                                                    boolean onlyWithoutHistory) {
+        CompletableFuture<VisitedLocation> promise = new CompletableFuture<>();
+        CompletableFuture<VisitedLocation> inFlight = inFlightLocations.putIfAbsent(user.getUserId(), promise);
+        if (inFlight != null) {
+            if (recorder != null) {
+                recorder.recordSkippedInProgress();
+            }
+            return inFlight;
+        }
+        TrackingExecutionMode mode = executionMode;
+        Runnable task = () -> {
+            try {
+                if (onlyWithoutHistory && user.getVisitedLocationCount() > 0) {
+                    // le suivi qui vient de se terminer a déjà localisé l'utilisateur
+                    promise.complete(user.getLastVisitedLocation());
+                    return;
+                }
+                promise.complete(mode == TrackingExecutionMode.SHARDED
+                        ? trackUserLocationSharded(user, attractions, recorder)
+                        : trackUserLocation(user, attractions, recorder));
+            } catch (Throwable t) {
+                promise.completeExceptionally(t);
+            } finally {
+                inFlightLocations.remove(user.getUserId(), promise);
+            }
+        };
+        if (executor == null) {
+            task.run();
+        } else {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                inFlightLocations.remove(user.getUserId(), promise);
+                promise.completeExceptionally(e);
+            }
+        }
+        return promise;
     }
 
-    private VisitedLocation trackUserLocation(User user, List<Attraction> attractions) {
+    private VisitedLocation trackUserLocation(User user, List<Attraction> attractions, TrackingCycleRecorder recorder) {
+        UserTrackingEvent event = new UserTrackingEvent();
+        event.begin();
+        int rewardCount = user.getUserRewardCount();
+        long start = System.nanoTime();
+        VisitedLocation gpsLocation = getGpsLocation(user);
+        long gpsDone = System.nanoTime();
+        VisitedLocation visitedLocation = addToVisitedLocations(user, gpsLocation);
+        long rewardCentralNanos = rewardsService.updateGeofences(user, attractions);
+        if (recorder != null) {
+            recorder.recordUser(gpsDone - start, System.nanoTime() - gpsDone - rewardCentralNanos, rewardCentralNanos);
+        }
+        commitTrackingEvent(event, user, TrackingExecutionMode.POOL, gpsDone - start, rewardCentralNanos, rewardCount);
+        return visitedLocation;
+    }
+
+    /**
+     * Suivi en mode SHARDED : les appels bloquants à GpsUtil et RewardCentral s'exécutent dans le thread courant,
+     * toutes les lectures et modifications de l'utilisateur dans le shard qui le possède.
+     */
+    private VisitedLocation trackUserLocationSharded(User user, List<Attraction> attractions, TrackingCycleRecorder recorder) {
+        UserTrackingEvent event = new UserTrackingEvent();
+        event.begin();
+        int rewardCount = user.getUserRewardCount();
+        long start = System.nanoTime();
+        VisitedLocation gpsLocation = getGpsLocation(user);
+        long gpsDone = System.nanoTime();
+        VisitedLocation[] stored = new VisitedLocation[1];
+        PendingRewards pendingRewards = userShards.submit(user.getUserId(), () -> {
+            stored[0] = addToVisitedLocations(user, gpsLocation);
+            return rewardsService.findPendingRewards(user, attractions);
+        }).join();
+        // écrit par le shard avant la fin de la tâche : join() en garantit la visibilité
+        VisitedLocation visitedLocation = stored[0];
+        long rewardCentralNanos = 0;
+        if (!pendingRewards.isEmpty()) {
+            rewardCentralNanos = rewardsService.fetchRewardPoints(user, pendingRewards);
+            userShards.run(user.getUserId(), () -> rewardsService.grantPendingRewards(user, pendingRewards));
+        }
+        if (recorder != null) {
+            recorder.recordUser(gpsDone - start, System.nanoTime() - gpsDone - rewardCentralNanos, rewardCentralNanos);
+        }
+        commitTrackingEvent(event, user, TrackingExecutionMode.SHARDED, gpsDone - start, rewardCentralNanos, rewardCount);
+        return visitedLocation;
+    }
+
+    private VisitedLocation getGpsLocation(User user) {
+        ExternalCallEvent event = new ExternalCallEvent();
+        event.begin();
         VisitedLocation visitedLocation = gpsUtil.getUserLocation(user.getUserId());
-        user.addToVisitedLocations(visitedLocation);
-        rewardsService.calculateRewards(user, attractions);
+        event.complete(ExternalCallEvent.GPS_UTIL, "getUserLocation", user.getUserId(), null);
         return visitedLocation;
     }
 
+    private static void commitTrackingEvent(UserTrackingEvent event, User user, TrackingExecutionMode mode,
+                                            long gpsNanos, long rewardCentralNanos, int previousRewardCount) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.userId = user.getUserId().toString();
+            event.executionMode = mode.name();
+            event.gpsDuration = gpsNanos;
+            event.rewardCentralDuration = rewardCentralNanos;
+            event.rewardsGranted = user.getUserRewardCount() - previousRewardCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Enregistre une localisation reçue de l'extérieur (appareil, passerelle) sans interroger GpsUtil.
+     * Les récompenses ne sont pas calculées ici (voir LocationIngestionService).
+     *
+     * @param user            L'utilisateur localisé
+     * @param visitedLocation La localisation reçue
+     */
+    public void recordLocation(User user, VisitedLocation visitedLocation) {
+        updateUser(user, () -> addToVisitedLocations(user, visitedLocation));
+    }
+
+    /**
+     * Applique une modification à un utilisateur, par son shard propriétaire en mode SHARDED.
+     */
+    private void updateUser(User user, Runnable update) {
+        if (executionMode == TrackingExecutionMode.SHARDED) {
+            userShards.run(user.getUserId(), update);
+        } else {
+            update.run();
+        }
+    }
+
+    /**
+     * Ajoute une localisation à l'historique d'un utilisateur et l'indexe pour les recherches par zone.
+     *
+     * @return La localisation telle qu'enregistrée dans l'historique
+     */
+    private VisitedLocation addToVisitedLocations(User user, VisitedLocation visitedLocation) {
+        VisitedLocation stored = user.addToVisitedLocations(visitedLocation);
+        visitedAreaIndex.index(user, stored);
+        attractionPopularity.onUserLocated(user, stored);
+        userUpdates.onUserLocated(user, stored);
+        return stored;
+    }
+
+    /**
+     * Renvoie la popularité en temps réel de chaque attraction, la plus fréquentée en premier.
+     *
+     * @return Pour chaque attraction, le nombre d'utilisateurs à proximité et de récompenses attribuées
+     */
+    public List<AttractionPopularityDTO> getAttractionPopularity() {
+        List<AttractionPopularityDTO> popularity = new ArrayList<>();
+        for (int ordinal = 0; ordinal < attractionCatalog.size(); ordinal++) {
+            Attraction attraction = attractionCatalog.get(ordinal);
+            AttractionPopularityDTO attractionPopularityDTO = new AttractionPopularityDTO();
+            attractionPopularityDTO.setAttractionName(attraction.attractionName);
+            attractionPopularityDTO.setLatitude(attraction.latitude);
+            attractionPopularityDTO.setLongitude(attraction.longitude);
+            attractionPopularityDTO.setUsersNearby(attractionPopularity.getUsersNearby(ordinal));
+            attractionPopularityDTO.setRewardsGranted(attractionPopularity.getRewardsGranted(ordinal));
+            popularity.add(attractionPopularityDTO);
+        }
+        popularity.sort(Comparator.comparingLong(AttractionPopularityDTO::getUsersNearby).reversed());
+        return popularity;
+    }
+
+    /**
+     * Renvoie la carte de chaleur des dernières positions connues des utilisateurs.
+     * Seules les cellules occupées sont renvoyées.
+     *
+     * @return La carte de chaleur
+     */
+    public HeatMapDTO getHeatMap() {
+        long[] counts = attractionPopularity.getHeatMap();
+        int columns = AttractionPopularity.getHeatMapColumns();
+        int cellDegrees = AttractionPopularity.HEAT_MAP_CELL_DEGREES;
+        List<HeatMapCellDTO> cells = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                HeatMapCellDTO heatMapCellDTO = new HeatMapCellDTO();
+                heatMapCellDTO.setMinLatitude(-90 + (i / columns) * cellDegrees);
+                heatMapCellDTO.setMinLongitude(-180 + (i % columns) * cellDegrees);
+                heatMapCellDTO.setUsers(counts[i]);
+                cells.add(heatMapCellDTO);
+            }
+        }
+        HeatMapDTO heatMapDTO = new HeatMapDTO();
+        heatMapDTO.setCellSizeDegrees(cellDegrees);
+        heatMapDTO.setCells(cells);
+        return heatMapDTO;
+    }
 
     /**
      * Trouve et renvoie les 5 attractions les plus proches d'une localisation donnée.
      * Pour chaque attraction, calcule la distance et les points de récompense associés.
+     * Seules les attractions candidates de la cellule de la localisation (voir NearbyAttractionCache) sont classées.
      *
      * @param visitedLocation La localisation à partir de laquelle chercher les attractions
      * @param user            L'utilisateur pour lequel calculer les points de récompense
@@ -195,9 +824,10 @@ public class TourGuideService {
         Location loc1 = new Location(visitedLocation.location.latitude, visitedLocation.location.longitude);
         List<AttractionDistance> attractionDistances = new ArrayList<>();
 
-        // Pour chaque attraction, on calcule la distance entre l’utilisateur et l’attraction grâce à rewardsService.getDistance
+        // Pour chaque attraction candidate, on calcule la distance entre l’utilisateur et l’attraction grâce à rewardsService.getDistance
         // on stocke le resultat dans une liste: AttractionDistance
-        for (Attraction attraction : gpsUtil.getAttractions()) {
+        for (int ordinal : nearbyAttractionCache.candidates(loc1)) {
+            Attraction attraction = attractionCatalog.get(ordinal);
             AttractionDistance attractionDistance = new AttractionDistance(attraction.attractionName,
                     attraction.city, attraction.state, attraction.latitude, attraction.longitude);
             Location loc2 = new Location(attraction.latitude, attraction.longitude);
@@ -208,7 +838,7 @@ public class TourGuideService {
         // on trie par distance et on limite aux 5 plus proches
         List<AttractionDistance> nearestFiveAttractions = attractionDistances.stream()
                 .sorted(Comparator.comparingDouble(AttractionDistance::getDistance))
-                .limit(5)
+                .limit(NEARBY_ATTRACTIONS)
                 .toList();
 
         // Création de la réponse avec enrichissement de l'objet.
@@ -231,6 +861,41 @@ public class TourGuideService {
         return nearbyAttractionsDTO;
     }
 
+    /**
+     * Calcule un itinéraire passant par les meilleures attractions autour d'une localisation,
+     * hors attractions pour lesquelles l'utilisateur a déjà été récompensé (voir ItineraryPlanner).
+     *
+     * @param visitedLocation La localisation de départ
+     * @param user            L'utilisateur
+     * @param maxAttractions  Nombre d'attractions souhaité, au plus ItineraryPlanner.MAX_STOPS
+     * @return Les attractions dans l'ordre de visite, avec la distance de chaque étape
+     */
+    public ItineraryDTO getItinerary(VisitedLocation visitedLocation, User user, int maxAttractions) {
+        int[] ordinals = itineraryPlanner.plan(visitedLocation.location, maxAttractions, user::hasRewardFor);
+
+        List<ItineraryStopDTO> stops = new ArrayList<>(ordinals.length);
+        Location previous = visitedLocation.location;
+        double totalDistance = 0;
+        for (int ordinal : ordinals) {
+            Attraction attraction = attractionCatalog.get(ordinal);
+            ItineraryStopDTO itineraryStopDTO = new ItineraryStopDTO();
+            itineraryStopDTO.setAttractionName(attraction.attractionName);
+            itineraryStopDTO.setLatitude(attraction.latitude);
+            itineraryStopDTO.setLongitude(attraction.longitude);
+            itineraryStopDTO.setLegDistance(rewardsService.getDistance(previous, attraction));
+            itineraryStopDTO.setExpectedRewardPoints(itineraryPlanner.getExpectedRewardPoints(ordinal));
+            stops.add(itineraryStopDTO);
+            totalDistance += itineraryStopDTO.getLegDistance();
+            previous = attraction;
+        }
+        ItineraryDTO itineraryDTO = new ItineraryDTO();
+        itineraryDTO.setLatitudeUser(visitedLocation.location.latitude);
+        itineraryDTO.setLongitudeUser(visitedLocation.location.longitude);
+        itineraryDTO.setTotalDistance(totalDistance);
+        itineraryDTO.setStops(stops);
+        return itineraryDTO;
+    }
+
     @Getter
     public static class AttractionDistance extends Attraction {
         private double distance;
@@ -241,15 +906,56 @@ public class TourGuideService {
     }
 
 
+    /**
+     * Ferme le service : arrête le Tracker et attend la fin de son cycle en cours, retire ses écouteurs
+     * du RewardsService, arrête les executors du service (suivi en lot, shards, précalcul des offres, diffusion SSE)
+     * en laissant les suivis déjà lancés se terminer, puis ferme le fichier des historiques déportés.
+     * Le RewardsService peut lui survivre : plusieurs services créés sur le même RewardsService
+     * ne s'accumulent pas, et il est fermé séparément (voir RewardsService.close).
+     * Sans effet s'il a déjà été appelé.
+     */
+    @PreDestroy
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        tracker.stopTracking();
+        try {
+            if (!tracker.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("close - Le Tracker ne s'est pas arrêté en {} secondes", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (RewardGrantListener listener : rewardGrantListeners) {
+            rewardsService.removeRewardGrantListener(listener);
+        }
+        trackingExecutor.shutdown();
+        userShards.shutdown();
+        tripDealsPrefetcher.shutdown();
+        userUpdates.shutdown();
+        // un suivi en cours peut encore lire l'historique déporté : le magasin n'est fermé qu'après les suivis
+        try {
+            if (!trackingExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    || !userShards.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("close - Des suivis ne se sont pas terminés en {} secondes", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        userTiering.close();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // fermeture appelée par le hook lui-même, pendant l'arrêt de la JVM
+        }
+    }
+
     /**
      * Ajoute un hook d'arrêt pour stopper le suivi lors de la fermeture de l'application.
      */
     private void addShutDownHook() {
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            public void run() {
-                tracker.stopTracking();
-            }
-        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
     }
 
     /**********************************************************************************
@@ -260,7 +966,12 @@ public class TourGuideService {
     private static final String tripPricerApiKey = "test-server-api-key";
     // Database connection will be used for external users, but for testing purposes
     // internal users are provided and stored in memory
-    private final Map<String, User> internalUserMap = new HashMap<>();
+    // (concurrente : servie pendant que le démarrage la remplit en arrière-plan)
+    private final Map<String, User> internalUserMap = new ConcurrentHashMap<>();
+    /**
+     * Mêmes utilisateurs, par identifiant, pour les localisations poussées par les appareils
+     */
+    private final Map<UUID, User> usersById = new ConcurrentHashMap<>();
 
     /**
      * Initialise les utilisateurs internes pour les tests.
@@ -274,6 +985,8 @@ public class TourGuideService {
             generateUserLocationHistory(user);
 
             internalUserMap.put(userName, user);
+            usersById.put(user.getUserId(), user);
+            warmUpProgress.userCreated();
         });
         logger.debug("Created " + InternalTestHelper.getInternalUserNumber() + " internal test users.");
     }
@@ -285,7 +998,7 @@ public class TourGuideService {
      */
     private void generateUserLocationHistory(User user) {
         IntStream.range(0, 3).forEach(i -> {
-            user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
+            addToVisitedLocations(user, new VisitedLocation(user.getUserId(),
                     new Location(generateRandomLatitude(), generateRandomLongitude()), getRandomTime()));
         });
     }
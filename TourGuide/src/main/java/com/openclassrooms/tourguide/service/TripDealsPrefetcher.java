@@ -0,0 +1,150 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Précalcul en arrière-plan des offres de voyage, pour que /getTripDeals ne paie pas la latence de TripPricer.
+ * Sont mis en file les utilisateurs qui viennent de consulter l'API et ceux dont le total de points
+ * vient de franchir un palier de REWARD_POINTS_STEP points (leurs offres en dépendent, elles sont alors périmées).
+ *
+ * Un seul thread de basse priorité traite la file, au plus PREFETCH_RATE_PER_SECOND utilisateurs par seconde :
+ * le précalcul ne concurrence jamais le suivi. La file est bornée, les demandes au-delà sont ignorées
+ * (l'utilisateur paiera la latence au prochain appel). Les offres sont fraîches pendant TRIP_DEALS_TTL_MILLIS.
+ */
+public class TripDealsPrefetcher implements RewardGrantListener {
+
+    /**
+     * Durée pendant laquelle des offres calculées sont servies sans être recalculées
+     */
+    public static final long TRIP_DEALS_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    /**
+     * Écart de points de récompense au-delà duquel les offres sont recalculées
+     */
+    static final int REWARD_POINTS_STEP = 500;
+    /**
+     * Nombre maximal de précalculs par seconde
+     */
+    static final int PREFETCH_RATE_PER_SECOND = 10;
+    /**
+     * Nombre maximal d'utilisateurs en attente de précalcul
+     */
+    static final int MAX_QUEUED_USERS = 10_000;
+
+    private final Logger logger = LoggerFactory.getLogger(TripDealsPrefetcher.class);
+    private final Consumer<User> refresher;
+    private final Set<User> queuedUsers = ConcurrentHashMap.newKeySet();
+    private final Queue<User> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final LongAdder prefetched = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "trip-deals-prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * @param refresher Calcule et enregistre les offres d'un utilisateur
+     */
+    public TripDealsPrefetcher(Consumer<User> refresher) {
+        this.refresher = refresher;
+    }
+
+    /**
+     * @return true si les offres de l'utilisateur ont été calculées il y a moins de TRIP_DEALS_TTL_MILLIS
+     */
+    public static boolean isFresh(User user, long nowMillis) {
+        return nowMillis - user.getTripDealsRefreshedMillis() < TRIP_DEALS_TTL_MILLIS;
+    }
+
+    /**
+     * Met un utilisateur en file de précalcul si ses offres ne sont plus fraîches.
+     *
+     * @param user L'utilisateur
+     */
+    public void enqueue(User user) {
+        if (scheduler.isShutdown() || isFresh(user, System.currentTimeMillis()) || !queuedUsers.add(user)) {
+            return;
+        }
+        if (queueSize.incrementAndGet() > MAX_QUEUED_USERS) {
+            queueSize.decrementAndGet();
+            queuedUsers.remove(user);
+            dropped.increment();
+            return;
+        }
+        queue.add(user);
+        if (started.compareAndSet(false, true)) {
+            scheduler.scheduleWithFixedDelay(this::prefetchNext, 0, 1000 / PREFETCH_RATE_PER_SECOND, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void onRewardGranted(User user, int attractionOrdinal, int rewardPoints) {
+        int after = user.getCumulativeRewardPoints();
+        int before = after - rewardPoints;
+        if (after / REWARD_POINTS_STEP > before / REWARD_POINTS_STEP) {
+            user.expireTripDeals();
+            enqueue(user);
+        }
+    }
+
+    /**
+     * Arrête le précalcul : les utilisateurs encore en file ne sont pas traités.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void prefetchNext() {
+        User user = queue.poll();
+        if (user == null) {
+            return;
+        }
+        queueSize.decrementAndGet();
+        queuedUsers.remove(user);
+        // les offres ont pu être recalculées par l'API pendant l'attente
+        if (isFresh(user, System.currentTimeMillis())) {
+            return;
+        }
+        try {
+            refresher.accept(user);
+            prefetched.increment();
+        } catch (RuntimeException e) {
+            logger.warn("prefetchNext - Échec du précalcul des offres de l'utilisateur {}", user.getUserName(), e);
+        }
+    }
+
+    /**
+     * @return Le nombre d'utilisateurs en attente de précalcul
+     */
+    public int getQueuedUsers() {
+        return queueSize.get();
+    }
+
+    public long getPrefetchedCount() {
+        return prefetched.sum();
+    }
+
+    /**
+     * @return Le nombre de demandes ignorées parce que la file était pleine
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,164 @@
+package com.openclassrooms.tourguide.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.openclassrooms.tourguide.model.LocationCursor;
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.model.UserReward;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Service d'export en flux (NDJSON) des récompenses et de l'historique de localisation.
+ * Chaque élément est sérialisé directement dans le flux de la réponse, un par ligne,
+ * sans construire la réponse complète en mémoire : la consommation mémoire reste
+ * constante quelle que soit la taille de l'historique.
+ *
+ * La pagination se fait par curseur : le curseur est l'index du premier élément à lire
+ * dans la liste (les listes de l'utilisateur ne font que croître, un curseur reste donc valide).
+ * Une page est délimitée avant d'être écrite (voir Page) : l'en-tête portant le curseur suivant part avant le corps.
+ */
+@Service
+public class UserHistoryStreamService {
+    /**
+     * Nombre maximal d'éléments renvoyés par page
+     */
+    public static final int MAX_PAGE_SIZE = 10_000;
+    /**
+     * Nombre d'éléments écrits entre deux vidages du tampon vers le client
+     */
+    private static final int FLUSH_INTERVAL = 256;
+
+    private static final SerializedString LINE_SEPARATOR = new SerializedString("\n");
+
+    private final ObjectMapper objectMapper;
+    /**
+     * Writer partagé par toutes les réponses, sans vidage du flux après chaque valeur
+     */
+    private final ObjectWriter lineWriter;
+
+    public UserHistoryStreamService(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.lineWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Délimite une page des récompenses d'un utilisateur.
+     *
+     * @param user   L'utilisateur concerné
+     * @param cursor Index de la première récompense de la page
+     * @param limit  Nombre maximal de récompenses de la page
+     * @return La page, à écrire avec Page.writeTo
+     */
+    public Page rewardsPage(User user, int cursor, int limit) {
+        // les récompenses sont recréées depuis leur forme compacte par tranches, une prise du verrou de l'utilisateur
+        // par tranche : la mémoire reste bornée et les écritures ne se font pas sous le verrou
+        return new Page(user.getUserRewardCount(), cursor, limit, (start, end, generator) -> {
+            for (int chunkStart = start; chunkStart < end; chunkStart += FLUSH_INTERVAL) {
+                List<UserReward> rewards = user.getUserRewards(chunkStart, Math.min(end, chunkStart + FLUSH_INTERVAL));
+                for (int i = 0; i < rewards.size(); i++) {
+                    writeLine(generator, rewards.get(i), chunkStart + i);
+                }
+            }
+            return end - start;
+        });
+    }
+
+    /**
+     * Délimite une page de l'historique de localisation d'un utilisateur.
+     * Seule l'écriture de localisations déportées recharge l'historique.
+     *
+     * @param user   L'utilisateur concerné
+     * @param cursor Index de la première localisation de la page
+     * @param limit  Nombre maximal de localisations de la page
+     * @return La page, à écrire avec Page.writeTo
+     */
+    public Page visitedLocationsPage(User user, int cursor, int limit) {
+        return new Page(user.getVisitedLocationCount(), cursor, limit, (start, end, generator) -> {
+            // lecture séquentielle : une seule différence décodée par localisation ;
+            // le parcours s'arrête plus tôt si l'historique a été vidé depuis la délimitation de la page
+            LocationCursor locationCursor = user.locationCursor(start);
+            int written = 0;
+            while (locationCursor.next() && locationCursor.getIndex() < end) {
+                writeLine(generator, new VisitedLocation(user.getUserId(),
+                        new Location(locationCursor.getLatitude(), locationCursor.getLongitude()),
+                        new Date(locationCursor.getTimeMillis())), locationCursor.getIndex());
+                written++;
+            }
+            return written;
+        });
+    }
+
+    private void writeLine(JsonGenerator generator, Object element, int index) throws IOException {
+        lineWriter.writeValue(generator, element);
+        if ((index + 1) % FLUSH_INTERVAL == 0) {
+            generator.flush();
+        }
+    }
+
+    private int pageEnd(int size, int cursor, int limit) {
+        int start = Math.min(Math.max(0, cursor), size);
+        int pageSize = Math.min(Math.max(1, limit), MAX_PAGE_SIZE);
+        return (int) Math.min((long) start + pageSize, size);
+    }
+
+    /**
+     * Page d'une liste de l'utilisateur. La taille de la liste est lue une seule fois, à la délimitation de la page :
+     * le curseur de la page suivante et le contenu écrit correspondent toujours, les éléments ajoutés ensuite
+     * iront dans la page suivante.
+     */
+    public final class Page {
+        private final int start;
+        private final int end;
+        private final int nextCursor;
+        private final PageWriter writer;
+
+        private Page(int size, int cursor, int limit, PageWriter writer) {
+            this.start = Math.min(Math.max(0, cursor), size);
+            this.end = pageEnd(size, cursor, limit);
+            this.nextCursor = end < size ? end : -1;
+            this.writer = writer;
+        }
+
+        /**
+         * @return Le curseur de la page suivante, ou -1 s'il n'y a plus d'éléments après cette page
+         */
+        public int getNextCursor() {
+            return nextCursor;
+        }
+
+        /**
+         * Écrit la page au format NDJSON, un élément par ligne.
+         *
+         * @param out Flux de sortie de la réponse
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+                // le flux appartient au conteneur de servlets, on ne le ferme pas
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(LINE_SEPARATOR);
+                if (writer.write(start, end, generator) > 0) {
+                    generator.writeRaw('\n');
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface PageWriter {
+        /**
+         * @return Le nombre d'éléments écrits
+         */
+        int write(int start, int end, JsonGenerator generator) throws IOException;
+    }
+}
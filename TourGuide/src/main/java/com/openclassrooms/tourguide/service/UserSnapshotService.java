@@ -0,0 +1,323 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.AttractionCatalog;
+import com.openclassrooms.tourguide.model.HistoryMark;
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.model.UserHistorySnapshot;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Export instantané de l'historique et des récompenses de tous les utilisateurs, sans interrompre le suivi.
+ *
+ * La capture marque, pour chaque utilisateur, la taille de son historique et de ses récompenses (voir User.markHistory) :
+ * un seul passage rapide, qui ne copie rien. Les historiques ne faisant que croître, chaque préfixe marqué reste ensuite
+ * identique pendant que le Tracker continue d'y ajouter des localisations ; l'écriture, en arrière-plan, ne copie que
+ * ces préfixes, utilisateur par utilisateur, sans recharger les historiques déportés sur disque.
+ *
+ * Le fichier est écrit en colonnes, par groupes de GROUP_SIZE utilisateurs, via un FileChannel et un tampon direct :
+ * - en-tête : MAGIC, FORMAT_VERSION, instant de capture (long), nombre d'utilisateurs, nombre d'attractions
+ *   puis le nom de chaque attraction (longueur et octets UTF-8), dans l'ordre des ordinaux ;
+ * - pour chaque groupe : nombre d'utilisateurs, de localisations et de récompenses du groupe, puis les colonnes
+ *   userId (2 long), nom (longueur et octets UTF-8), nombre de localisations, nombre de récompenses (int),
+ *   latitude, longitude (double), instant (long), ordinal de l'attraction, index de la localisation,
+ *   points de la récompense (int).
+ * Toutes les valeurs sont big-endian. Le fichier n'apparaît sous son nom définitif qu'une fois complet.
+ */
+@Service
+public class UserSnapshotService {
+
+    public static final int MAGIC = 0x54475331;
+    public static final int FORMAT_VERSION = 1;
+    /**
+     * Nombre d'utilisateurs par groupe de colonnes
+     */
+    public static final int GROUP_SIZE = 4096;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final Logger logger = LoggerFactory.getLogger(UserSnapshotService.class);
+    private final TourGuideService tourGuideService;
+    private final Path directory;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Export lastExport;
+
+    public UserSnapshotService(TourGuideService tourGuideService,
+                               @Value("${tourguide.snapshot.directory:${java.io.tmpdir}}") Path directory) {
+        this.tourGuideService = tourGuideService;
+        this.directory = directory;
+    }
+
+    /**
+     * Capture l'état de tous les utilisateurs et lance l'écriture du fichier en arrière-plan.
+     * Si un export est déjà en cours, il est renvoyé au lieu d'en lancer un autre.
+     *
+     * @return L'export lancé ou en cours
+     */
+    public synchronized Export startSnapshot() {
+        Export running = lastExport;
+        if (running != null && !running.completion.isDone()) {
+            return running;
+        }
+        List<User> users = tourGuideService.getAllUsers();
+        long capturedAtMillis = System.currentTimeMillis();
+        HistoryMark[] marks = new HistoryMark[users.size()];
+        for (int i = 0; i < marks.length; i++) {
+            marks[i] = users.get(i).markHistory();
+        }
+        Export export = new Export(directory.resolve("users-" + capturedAtMillis + ".tgsnap"), capturedAtMillis, users.size());
+        lastExport = export;
+        writer.execute(() -> write(export, users, marks));
+        return export;
+    }
+
+    /**
+     * @return Le dernier export lancé, ou null
+     */
+    public Export getLastExport() {
+        return lastExport;
+    }
+
+    /**
+     * Arrête l'écriture en arrière-plan : un export en cours se termine, aucun autre n'est lancé.
+     */
+    @PreDestroy
+    public void close() {
+        writer.shutdown();
+    }
+
+    private void write(Export export, List<User> users, HistoryMark[] marks) {
+        long start = System.nanoTime();
+        Path partial = export.path.resolveSibling(export.path.getFileName() + ".part");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ColumnWriter out = new ColumnWriter(channel);
+            out.putInt(MAGIC);
+            out.putInt(FORMAT_VERSION);
+            out.putLong(export.capturedAtMillis);
+            out.putInt(users.size());
+            AttractionCatalog attractionCatalog = tourGuideService.getAttractionCatalog();
+            int attractionCount = attractionCatalog.size();
+            out.putInt(attractionCount);
+            for (int ordinal = 0; ordinal < attractionCount; ordinal++) {
+                out.putString(attractionCatalog.get(ordinal).attractionName);
+            }
+            for (int from = 0; from < users.size(); from += GROUP_SIZE) {
+                int to = Math.min(users.size(), from + GROUP_SIZE);
+                List<UserHistorySnapshot> group = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    UserHistorySnapshot snapshot = users.get(i).readHistory(marks[i]);
+                    if (!snapshot.isConsistent()) {
+                        export.inconsistentUsers++;
+                    }
+                    group.add(snapshot);
+                }
+                writeGroup(out, group);
+                export.usersWritten = to;
+            }
+            out.flush();
+            export.bytes = channel.position();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("write - Échec de l'export {}", export.path, e);
+            export.completion.completeExceptionally(e);
+            return;
+        }
+        try {
+            Files.move(partial, export.path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            export.completion.completeExceptionally(e);
+            return;
+        }
+        export.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("write - Export de {} utilisateurs écrit dans {} ({} octets, {} ms)",
+                users.size(), export.path, export.bytes, export.elapsedMillis);
+        export.completion.complete(export.path);
+    }
+
+    private static void writeGroup(ColumnWriter out, List<UserHistorySnapshot> group) throws IOException {
+        int locations = 0;
+        int rewards = 0;
+        for (UserHistorySnapshot snapshot : group) {
+            locations += snapshot.getLocationCount();
+            rewards += snapshot.getRewardCount();
+        }
+        out.putInt(group.size());
+        out.putInt(locations);
+        out.putInt(rewards);
+        for (UserHistorySnapshot snapshot : group) {
+            out.putLong(snapshot.getUserId().getMostSignificantBits());
+            out.putLong(snapshot.getUserId().getLeastSignificantBits());
+        }
+        for (UserHistorySnapshot snapshot : group) {
+            out.putString(snapshot.getUserName());
+        }
+        for (UserHistorySnapshot snapshot : group) {
+            out.putInt(snapshot.getLocationCount());
+        }
+        for (UserHistorySnapshot snapshot : group) {
+            out.putInt(snapshot.getRewardCount());
+        }
+        for (UserHistorySnapshot snapshot : group) {
+            out.putDoubles(snapshot.getLatitudes());
+        }
+        for (UserHistorySnapshot snapshot : group) {
+            out.putDoubles(snapshot.getLongitudes());
+        }
+        for (UserHistorySnapshot snapshot : group) {
+            out.putLongs(snapshot.getTimestamps());
+        }
+        for (UserHistorySnapshot snapshot : group) {
+            out.putInts(snapshot.getRewardAttractionOrdinals());
+        }
+        for (UserHistorySnapshot snapshot : group) {
+            out.putInts(snapshot.getRewardLocationIndexes());
+        }
+        for (UserHistorySnapshot snapshot : group) {
+            out.putInts(snapshot.getRewardPoints());
+        }
+    }
+
+    /**
+     * Écriture des colonnes dans un tampon direct, vidé dans le canal quand il est plein.
+     */
+    private static final class ColumnWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        private ColumnWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putInts(int[] values) throws IOException {
+            for (int value : values) {
+                putInt(value);
+            }
+        }
+
+        void putLongs(long[] values) throws IOException {
+            for (long value : values) {
+                putLong(value);
+            }
+        }
+
+        void putDoubles(double[] values) throws IOException {
+            for (double value : values) {
+                ensure(Double.BYTES);
+                buffer.putDouble(value);
+            }
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            for (int written = 0; written < bytes.length; ) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, chunk);
+                written += chunk;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Un export : fichier cible, instant de capture et avancement de l'écriture.
+     */
+    public static final class Export {
+        private final Path path;
+        private final long capturedAtMillis;
+        private final int users;
+        private final CompletableFuture<Path> completion = new CompletableFuture<>();
+        private volatile int usersWritten;
+        private volatile int inconsistentUsers;
+        private volatile long bytes;
+        private volatile long elapsedMillis;
+
+        private Export(Path path, long capturedAtMillis, int users) {
+            this.path = path;
+            this.capturedAtMillis = capturedAtMillis;
+            this.users = users;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getCapturedAtMillis() {
+            return capturedAtMillis;
+        }
+
+        public int getUsers() {
+            return users;
+        }
+
+        public int getUsersWritten() {
+            return usersWritten;
+        }
+
+        /**
+         * @return Le nombre d'utilisateurs dont l'historique a été vidé entre la capture et l'écriture
+         */
+        public int getInconsistentUsers() {
+            return inconsistentUsers;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return Le future complété par le chemin du fichier une fois écrit, ou par l'erreur d'écriture
+         */
+        public CompletableFuture<Path> getCompletion() {
+            return completion;
+        }
+    }
+}
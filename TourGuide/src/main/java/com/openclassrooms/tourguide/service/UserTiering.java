@@ -0,0 +1,171 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.HistorySegmentStore;
+import com.openclassrooms.tourguide.model.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Répartition des utilisateurs entre mémoire (chauds) et disque (froids).
+ * Un utilisateur sans activité depuis INACTIVITY_THRESHOLD_MILLIS voit son historique, ses récompenses
+ * et ses offres de voyage déportés dans un segment sur disque ; il ne garde en mémoire qu'un résumé.
+ * Le suivi périodique continue sans recharger l'historique : les nouvelles localisations et récompenses
+ * s'accumulent en mémoire, et sont regroupées avec le segment quand elles dépassent COMPACTION_THRESHOLD.
+ * Tout accès à l'historique complet (API, export) le recharge de façon transparente.
+ * Le fichier des segments est compacté quand les segments remplacés ou rechargés en occupent plus de la moitié.
+ */
+public class UserTiering implements Closeable {
+
+    /**
+     * Inactivité (ni appel à l'API, ni rechargement) au-delà de laquelle un utilisateur est déporté
+     */
+    public static final long INACTIVITY_THRESHOLD_MILLIS = TimeUnit.HOURS.toMillis(1);
+    /**
+     * Nombre de localisations accumulées en mémoire par un utilisateur froid au-delà duquel son segment est réécrit
+     */
+    static final int COMPACTION_THRESHOLD = 64;
+    /**
+     * Estimation de l'empreinte mémoire d'une localisation (VisitedLocation, Location, Date et référence)
+     */
+    static final int ESTIMATED_BYTES_PER_LOCATION = 80;
+    /**
+     * Place perdue dans le fichier des segments en deçà de laquelle il n'est pas compacté
+     */
+    static final long SEGMENT_COMPACTION_MIN_DEAD_BYTES = 64L * 1024 * 1024;
+
+    private volatile HistorySegmentStore store;
+    private volatile int residentUsers;
+    private volatile int coldUsers;
+    private volatile long residentLocations;
+
+    /**
+     * Déporte les utilisateurs inactifs et réécrit le segment des utilisateurs froids dont la partie en mémoire a trop grossi,
+     * puis compacte le fichier des segments si nécessaire. Met à jour les statistiques de répartition.
+     *
+     * @param users     Les utilisateurs à examiner, tous ceux dont l'historique a pu être déporté
+     * @param nowMillis Instant courant, en millisecondes epoch
+     * @return Le nombre de segments écrits
+     */
+    public int spillInactiveUsers(Collection<User> users, long nowMillis) {
+        int spilled = 0;
+        int resident = 0;
+        int cold = 0;
+        long locations = 0;
+        for (User user : users) {
+            boolean inactive = nowMillis - Math.max(user.getLastApiActivityMillis(), user.getResidentSinceMillis())
+                    >= INACTIVITY_THRESHOLD_MILLIS;
+            if (user.isResident() ? inactive : user.getResidentLocationCount() >= COMPACTION_THRESHOLD) {
+                if (user.spill(store())) {
+                    spilled++;
+                }
+            }
+            if (user.isResident()) {
+                resident++;
+            } else {
+                cold++;
+            }
+            locations += user.getResidentLocationCount();
+        }
+        residentUsers = resident;
+        coldUsers = cold;
+        residentLocations = locations;
+        HistorySegmentStore segmentStore = store;
+        if (segmentStore != null && segmentStore.needsCompaction(SEGMENT_COMPACTION_MIN_DEAD_BYTES)) {
+            segmentStore.compact(users);
+        }
+        return spilled;
+    }
+
+    /**
+     * Le fichier des segments n'est créé qu'au premier déport.
+     */
+    private HistorySegmentStore store() {
+        HistorySegmentStore segmentStore = store;
+        if (segmentStore == null) {
+            synchronized (this) {
+                segmentStore = store;
+                if (segmentStore == null) {
+                    segmentStore = HistorySegmentStore.createTemporary();
+                    store = segmentStore;
+                }
+            }
+        }
+        return segmentStore;
+    }
+
+    public int getResidentUsers() {
+        return residentUsers;
+    }
+
+    public int getColdUsers() {
+        return coldUsers;
+    }
+
+    /**
+     * @return Le nombre de localisations en mémoire au dernier passage
+     */
+    public long getResidentLocations() {
+        return residentLocations;
+    }
+
+    /**
+     * @return L'empreinte mémoire estimée des historiques en mémoire, en octets
+     */
+    public long getEstimatedResidentBytes() {
+        return residentLocations * ESTIMATED_BYTES_PER_LOCATION;
+    }
+
+    public long getSegmentBytes() {
+        HistorySegmentStore segmentStore = store;
+        return segmentStore == null ? 0 : segmentStore.getSizeBytes();
+    }
+
+    public long getDeadSegmentBytes() {
+        HistorySegmentStore segmentStore = store;
+        return segmentStore == null ? 0 : segmentStore.getDeadBytes();
+    }
+
+    public long getSpillCount() {
+        HistorySegmentStore segmentStore = store;
+        return segmentStore == null ? 0 : segmentStore.getSpillCount();
+    }
+
+    public long getSegmentCompactionCount() {
+        HistorySegmentStore segmentStore = store;
+        return segmentStore == null ? 0 : segmentStore.getCompactionCount();
+    }
+
+    public long getFaultCount() {
+        HistorySegmentStore segmentStore = store;
+        return segmentStore == null ? 0 : segmentStore.getFaultCount();
+    }
+
+    public double getMeanFaultMillis() {
+        HistorySegmentStore segmentStore = store;
+        return segmentStore == null ? 0 : segmentStore.getMeanFaultMillis();
+    }
+
+    public double getMaxFaultMillis() {
+        HistorySegmentStore segmentStore = store;
+        return segmentStore == null ? 0 : segmentStore.getMaxFaultMillis();
+    }
+
+    /**
+     * Ferme et supprime le fichier des segments. Les historiques déportés ne sont plus lisibles ensuite.
+     */
+    @Override
+    public void close() {
+        HistorySegmentStore segmentStore = store;
+        if (segmentStore != null) {
+            try {
+                segmentStore.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.dto.LocationUpdateDTO;
+import com.openclassrooms.tourguide.dto.RewardUpdateDTO;
+import com.openclassrooms.tourguide.model.AttractionCatalog;
+import com.openclassrooms.tourguide.model.User;
+import gpsUtil.location.VisitedLocation;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Diffusion en Server-Sent Events des nouvelles localisations et récompenses d'un utilisateur,
+ * à la place de l'interrogation périodique de /getLocation et /getRewards.
+ *
+ * Deux types d'événements sont envoyés : "location" (dernière localisation) et "reward" (dernière récompense
+ * et nombre total de récompenses, pour reprendre la lecture avec /getRewardsStream). À l'abonnement,
+ * l'état courant est envoyé immédiatement.
+ *
+ * Chaque abonnement ne retient que le dernier événement de chaque type en attente d'envoi : un client lent
+ * reçoit l'état le plus récent au lieu d'accumuler un retard, les événements intermédiaires sont fusionnés.
+ * Les envois sont faits par un petit pool de threads, jamais par les threads de suivi ou de calcul.
+ * Le nombre d'abonnements ouverts est borné.
+ * Seul l'abonnement compte comme une activité du client (voir TourGuideService.subscribeUpdates) : les envois
+ * ne le font pas, un flux resté ouvert par un client inactif ne garde pas l'utilisateur dans la voie prioritaire.
+ */
+public class UserUpdateBroadcaster implements RewardGrantListener {
+
+    /**
+     * Durée de vie d'un abonnement, au-delà de laquelle le client se réabonne
+     */
+    public static final long SUBSCRIPTION_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final AttractionCatalog attractionCatalog;
+    private final int maxSubscriptions;
+    private final Map<UUID, Set<Subscription>> subscriptionsByUser = new ConcurrentHashMap<>();
+    private final AtomicInteger openSubscriptions = new AtomicInteger();
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder eventsCoalesced = new LongAdder();
+    private final ExecutorService dispatcher = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "sse-dispatch");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * @param attractionCatalog Le catalogue des attractions, qui attribue les ordinaux des récompenses
+     * @param maxSubscriptions  Nombre maximal d'abonnements ouverts simultanément
+     */
+    public UserUpdateBroadcaster(AttractionCatalog attractionCatalog, int maxSubscriptions) {
+        this.attractionCatalog = attractionCatalog;
+        this.maxSubscriptions = maxSubscriptions;
+    }
+
+    /**
+     * Abonne un client aux mises à jour d'un utilisateur. L'état courant lui est envoyé immédiatement.
+     *
+     * @param user    L'utilisateur suivi
+     * @param emitter Le flux SSE du client
+     * @throws IllegalStateException si le nombre maximal d'abonnements est atteint
+     */
+    public void subscribe(User user, SseEmitter emitter) {
+        if (openSubscriptions.incrementAndGet() > maxSubscriptions) {
+            openSubscriptions.decrementAndGet();
+            throw new IllegalStateException("Nombre maximal d'abonnements atteint : " + maxSubscriptions);
+        }
+        Subscription subscription = new Subscription(user, emitter);
+        // ajout dans compute : un désabonnement concurrent ne peut pas retirer l'ensemble vide entre sa lecture et l'ajout
+        subscriptionsByUser.compute(user.getUserId(), (userId, subscriptions) -> {
+            Set<Subscription> updated = subscriptions == null ? ConcurrentHashMap.newKeySet() : subscriptions;
+            updated.add(subscription);
+            return updated;
+        });
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(error -> unsubscribe(subscription));
+        if (user.getVisitedLocationCount() > 0) {
+            subscription.pendingLocation.set(user.getLastVisitedLocation());
+        }
+        subscription.pendingReward.set(PendingReward.NONE);
+        schedule(subscription);
+    }
+
+    /**
+     * Désabonne un client et termine son flux.
+     * Spring n'appelle les callbacks d'un SseEmitter (onCompletion, onTimeout, onError) qu'une fois le flux
+     * attaché à la réponse : un flux terminé par emitter.complete() avant cela ne libérerait pas sa place.
+     *
+     * @param user    L'utilisateur suivi
+     * @param emitter Le flux SSE du client
+     */
+    public void unsubscribe(User user, SseEmitter emitter) {
+        Set<Subscription> subscriptions = subscriptionsByUser.get(user.getUserId());
+        if (subscriptions != null) {
+            for (Subscription subscription : subscriptions) {
+                if (subscription.emitter == emitter) {
+                    unsubscribe(subscription);
+                }
+            }
+        }
+        emitter.complete();
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        AtomicBoolean removed = new AtomicBoolean();
+        // retrait et suppression de l'ensemble vide dans le même remapping, atomique vis-à-vis de subscribe
+        subscriptionsByUser.computeIfPresent(subscription.user.getUserId(), (userId, subscriptions) -> {
+            removed.set(subscriptions.remove(subscription));
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+        if (removed.get()) {
+            openSubscriptions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Signale une nouvelle localisation d'un utilisateur à ses abonnés.
+     *
+     * @param user            L'utilisateur localisé
+     * @param visitedLocation Sa nouvelle localisation
+     */
+    public void onUserLocated(User user, VisitedLocation visitedLocation) {
+        if (openSubscriptions.get() == 0) {
+            return;
+        }
+        Set<Subscription> subscriptions = subscriptionsByUser.get(user.getUserId());
+        if (subscriptions == null) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            if (subscription.pendingLocation.getAndSet(visitedLocation) != null) {
+                eventsCoalesced.increment();
+            }
+            schedule(subscription);
+        }
+    }
+
+    @Override
+    public void onRewardGranted(User user, int attractionOrdinal, int rewardPoints) {
+        if (openSubscriptions.get() == 0) {
+            return;
+        }
+        Set<Subscription> subscriptions = subscriptionsByUser.get(user.getUserId());
+        if (subscriptions == null) {
+            return;
+        }
+        PendingReward reward = new PendingReward(attractionOrdinal, rewardPoints);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.pendingReward.getAndSet(reward) != null) {
+                eventsCoalesced.increment();
+            }
+            schedule(subscription);
+        }
+    }
+
+    /**
+     * Arrête la diffusion : les flux ouverts sont terminés et les événements en attente abandonnés.
+     */
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        for (Set<Subscription> subscriptions : subscriptionsByUser.values()) {
+            for (Subscription subscription : subscriptions) {
+                unsubscribe(subscription);
+                subscription.emitter.complete();
+            }
+        }
+    }
+
+    private void schedule(Subscription subscription) {
+        if (subscription.scheduled.compareAndSet(false, true)) {
+            try {
+                dispatcher.execute(() -> flush(subscription));
+            } catch (RejectedExecutionException e) {
+                // diffusion arrêtée (voir shutdown)
+                subscription.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Envoie les événements en attente d'un abonnement. Les événements arrivés pendant un envoi lent
+     * remplacent ceux en attente et partent à l'itération suivante.
+     */
+    private void flush(Subscription subscription) {
+        try {
+            do {
+                VisitedLocation visitedLocation = subscription.pendingLocation.getAndSet(null);
+                if (visitedLocation != null) {
+                    send(subscription, "location", toLocationUpdate(visitedLocation));
+                }
+                PendingReward reward = subscription.pendingReward.getAndSet(null);
+                if (reward != null) {
+                    send(subscription, "reward", toRewardUpdate(subscription.user, reward));
+                }
+                subscription.scheduled.set(false);
+            } while (subscription.hasPending() && subscription.scheduled.compareAndSet(false, true));
+        } catch (IOException | IllegalStateException e) {
+            // client déconnecté ou flux déjà terminé
+            subscription.scheduled.set(false);
+            unsubscribe(subscription);
+            subscription.emitter.completeWithError(e);
+        }
+    }
+
+    private void send(Subscription subscription, String name, Object data) throws IOException {
+        subscription.emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        eventsSent.increment();
+    }
+
+    private static LocationUpdateDTO toLocationUpdate(VisitedLocation visitedLocation) {
+        LocationUpdateDTO locationUpdateDTO = new LocationUpdateDTO();
+        locationUpdateDTO.setLatitude(visitedLocation.location.latitude);
+        locationUpdateDTO.setLongitude(visitedLocation.location.longitude);
+        locationUpdateDTO.setTimeVisited(visitedLocation.timeVisited.getTime());
+        return locationUpdateDTO;
+    }
+
+    private RewardUpdateDTO toRewardUpdate(User user, PendingReward reward) {
+        RewardUpdateDTO rewardUpdateDTO = new RewardUpdateDTO();
+        if (reward.attractionOrdinal >= 0) {
+            rewardUpdateDTO.setAttractionName(attractionCatalog.get(reward.attractionOrdinal).attractionName);
+            rewardUpdateDTO.setRewardPoints(reward.rewardPoints);
+        }
+        // le nombre est lu à l'envoi : il tient compte des récompenses fusionnées
+        rewardUpdateDTO.setRewardCount(user.getUserRewardCount());
+        return rewardUpdateDTO;
+    }
+
+    /**
+     * @return Le nombre d'abonnements ouverts
+     */
+    public int getOpenSubscriptions() {
+        return openSubscriptions.get();
+    }
+
+    public int getMaxSubscriptions() {
+        return maxSubscriptions;
+    }
+
+    public long getEventsSent() {
+        return eventsSent.sum();
+    }
+
+    /**
+     * @return Le nombre d'événements remplacés par un plus récent avant d'avoir été envoyés
+     */
+    public long getEventsCoalesced() {
+        return eventsCoalesced.sum();
+    }
+
+    private static final class Subscription {
+        private final User user;
+        private final SseEmitter emitter;
+        private final AtomicReference<VisitedLocation> pendingLocation = new AtomicReference<>();
+        private final AtomicReference<PendingReward> pendingReward = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Subscription(User user, SseEmitter emitter) {
+            this.user = user;
+            this.emitter = emitter;
+        }
+
+        private boolean hasPending() {
+            return pendingLocation.get() != null || pendingReward.get() != null;
+        }
+    }
+
+    /**
+     * Dernière récompense en attente d'envoi ; NONE pour n'envoyer que le nombre de récompenses.
+     */
+    private static final class PendingReward {
+        private static final PendingReward NONE = new PendingReward(-1, 0);
+
+        private final int attractionOrdinal;
+        private final int rewardPoints;
+
+        private PendingReward(int attractionOrdinal, int rewardPoints) {
+            this.attractionOrdinal = attractionOrdinal;
+            this.rewardPoints = rewardPoints;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.model.User;
+import gpsUtil.location.VisitedLocation;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index spatio-temporel des localisations visitées : pour chaque tranche d'une heure et chaque cellule
+ * d'un degré de côté, l'ensemble des utilisateurs qui y sont passés.
+ * Une requête "qui était dans cette zone pendant cette période" ne consulte que les cellules
+ * couvertes par la zone et la période, puis vérifie précisément les seuls candidats trouvés,
+ * via l'index temporel de leur historique.
+ * Les tranches plus anciennes que la durée de rétention sont purgées.
+ */
+public class VisitedAreaIndex {
+
+    private static final long BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long RETENTION_BUCKETS = TimeUnit.DAYS.toHours(31);
+    private static final int LATITUDE_CELLS = 180;
+    private static final int LONGITUDE_CELLS = 360;
+    private static final int CELLS_PER_BUCKET = LATITUDE_CELLS * LONGITUDE_CELLS;
+
+    private final Map<Long, Set<User>> usersByCell = new ConcurrentHashMap<>();
+    private volatile long newestBucket = Long.MIN_VALUE;
+
+    /**
+     * Indexe une localisation visitée par un utilisateur.
+     *
+     * @param user            L'utilisateur
+     * @param visitedLocation La localisation visitée
+     */
+    public void index(User user, VisitedLocation visitedLocation) {
+        long bucket = bucketOf(visitedLocation.timeVisited.getTime());
+        long key = bucket * CELLS_PER_BUCKET + cellOf(visitedLocation.location.latitude, visitedLocation.location.longitude);
+        usersByCell.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(user);
+        if (bucket > newestBucket) {
+            advanceNewestBucket(bucket);
+        }
+    }
+
+    /**
+     * Recherche les utilisateurs passés dans une zone pendant une période.
+     * Si minLongitude est supérieure à maxLongitude, la zone traverse l'antiméridien.
+     *
+     * @param minLatitude  Latitude minimale de la zone
+     * @param maxLatitude  Latitude maximale de la zone
+     * @param minLongitude Longitude minimale de la zone
+     * @param maxLongitude Longitude maximale de la zone
+     * @param from         Début de la période (inclus)
+     * @param to           Fin de la période (incluse)
+     * @return Les utilisateurs ayant au moins une localisation dans la zone pendant la période
+     */
+    public List<User> findUsersInArea(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude,
+                                      Date from, Date to) {
+        Set<User> candidates = new HashSet<>();
+        long firstBucket = bucketOf(from.getTime());
+        long lastBucket = bucketOf(to.getTime());
+        int firstLatCell = latitudeCell(minLatitude);
+        int lastLatCell = latitudeCell(maxLatitude);
+        int firstLonCell = longitudeCell(minLongitude);
+        int lonCells = longitudeCellSpan(minLongitude, maxLongitude);
+        long cellsToVisit = (lastBucket - firstBucket + 1) * (long) Math.max(0, lastLatCell - firstLatCell + 1) * lonCells;
+
+        if (cellsToVisit <= usersByCell.size()) {
+            for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+                for (int latCell = firstLatCell; latCell <= lastLatCell; latCell++) {
+                    for (int i = 0; i < lonCells; i++) {
+                        int lonCell = (firstLonCell + i) % LONGITUDE_CELLS;
+                        Set<User> users = usersByCell.get(bucket * CELLS_PER_BUCKET + latCell * LONGITUDE_CELLS + lonCell);
+                        if (users != null) {
+                            candidates.addAll(users);
+                        }
+                    }
+                }
+            }
+        } else {
+            // la zone couvre plus de cellules qu'il n'y en a d'occupées : on parcourt les cellules occupées
+            for (Map.Entry<Long, Set<User>> entry : usersByCell.entrySet()) {
+                long key = entry.getKey();
+                long bucket = Math.floorDiv(key, CELLS_PER_BUCKET);
+                int cell = Math.floorMod(key, CELLS_PER_BUCKET);
+                int latCell = cell / LONGITUDE_CELLS;
+                int lonOffset = Math.floorMod(cell % LONGITUDE_CELLS - firstLonCell, LONGITUDE_CELLS);
+                if (bucket >= firstBucket && bucket <= lastBucket && latCell >= firstLatCell && latCell <= lastLatCell
+                        && lonOffset < lonCells) {
+                    candidates.addAll(entry.getValue());
+                }
+            }
+        }
+
+        List<User> usersInArea = new ArrayList<>();
+        for (User user : candidates) {
+            for (VisitedLocation visitedLocation : user.getVisitedLocationsBetween(from, to)) {
+                if (isInArea(visitedLocation, minLatitude, maxLatitude, minLongitude, maxLongitude)) {
+                    usersInArea.add(user);
+                    break;
+                }
+            }
+        }
+        return usersInArea;
+    }
+
+    private static boolean isInArea(VisitedLocation visitedLocation, double minLatitude, double maxLatitude,
+                                    double minLongitude, double maxLongitude) {
+        double latitude = visitedLocation.location.latitude;
+        double longitude = visitedLocation.location.longitude;
+        if (latitude < minLatitude || latitude > maxLatitude) {
+            return false;
+        }
+        return minLongitude <= maxLongitude
+                ? longitude >= minLongitude && longitude <= maxLongitude
+                : longitude >= minLongitude || longitude <= maxLongitude;
+    }
+
+    private synchronized void advanceNewestBucket(long bucket) {
+        if (bucket <= newestBucket) {
+            return;
+        }
+        newestBucket = bucket;
+        long oldestRetained = bucket - RETENTION_BUCKETS;
+        usersByCell.keySet().removeIf(key -> Math.floorDiv(key, CELLS_PER_BUCKET) < oldestRetained);
+    }
+
+    private static long bucketOf(long timeMillis) {
+        return Math.floorDiv(timeMillis, BUCKET_MILLIS);
+    }
+
+    private static int cellOf(double latitude, double longitude) {
+        return latitudeCell(latitude) * LONGITUDE_CELLS + longitudeCell(longitude);
+    }
+
+    private static int latitudeCell(double latitude) {
+        return Math.min(LATITUDE_CELLS - 1, Math.max(0, (int) Math.floor(latitude + 90)));
+    }
+
+    /**
+     * @return Le nombre de cellules de longitude couvertes, de minLongitude vers l'est jusqu'à maxLongitude
+     */
+    private static int longitudeCellSpan(double minLongitude, double maxLongitude) {
+        int first = (int) Math.floor(minLongitude + 180);
+        int last = (int) Math.floor(maxLongitude + 180);
+        if (minLongitude > maxLongitude) {
+            last += LONGITUDE_CELLS;
+        }
+        return Math.max(1, Math.min(LONGITUDE_CELLS, last - first + 1));
+    }
+
+    private static int longitudeCell(double longitude) {
+        return Math.floorMod((int) Math.floor(longitude + 180), LONGITUDE_CELLS);
+    }
+}
@@ -0,0 +1,103 @@
+package com.openclassrooms.tourguide.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Avancement de la phase de démarrage de TourGuideService : création des utilisateurs internes puis démarrage du Tracker.
+ * Les requêtes peuvent être servies dès que les utilisateurs sont créés (voir isUsersReady),
+ * sans attendre le démarrage du Tracker.
+ */
+public class WarmUpProgress {
+
+    public enum Phase {
+        /**
+         * Démarrage pas encore lancé (en attente de ApplicationReadyEvent)
+         */
+        PENDING,
+        POPULATING_USERS,
+        STARTING_TRACKER,
+        READY,
+        FAILED
+    }
+
+    private volatile Phase phase = Phase.PENDING;
+    private volatile int usersExpected;
+    private final AtomicInteger usersCreated = new AtomicInteger();
+    private volatile long startedAtMillis;
+    private volatile long finishedAtMillis;
+    private volatile Throwable failure;
+
+    void populating(int usersExpected) {
+        this.usersExpected = usersExpected;
+        this.startedAtMillis = System.currentTimeMillis();
+        this.phase = Phase.POPULATING_USERS;
+    }
+
+    void userCreated() {
+        usersCreated.incrementAndGet();
+    }
+
+    void startingTracker() {
+        this.phase = Phase.STARTING_TRACKER;
+    }
+
+    void ready() {
+        this.finishedAtMillis = System.currentTimeMillis();
+        this.phase = Phase.READY;
+    }
+
+    void failed(Throwable failure) {
+        this.failure = failure;
+        this.finishedAtMillis = System.currentTimeMillis();
+        this.phase = Phase.FAILED;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return true quand tous les utilisateurs internes sont créés : les requêtes peuvent être servies
+     */
+    public boolean isUsersReady() {
+        Phase current = phase;
+        return current == Phase.STARTING_TRACKER || current == Phase.READY;
+    }
+
+    public int getUsersExpected() {
+        return usersExpected;
+    }
+
+    public int getUsersCreated() {
+        return usersCreated.get();
+    }
+
+    /**
+     * @return La part des utilisateurs créés, entre 0 et 100
+     */
+    public double getPercentComplete() {
+        int expected = usersExpected;
+        if (isUsersReady() || expected == 0) {
+            return phase == Phase.PENDING ? 0 : 100;
+        }
+        return Math.min(100, 100.0 * usersCreated.get() / expected);
+    }
+
+    /**
+     * @return La durée du démarrage, en cours ou terminé, en millisecondes (0 s'il n'est pas lancé)
+     */
+    public long getElapsedMillis() {
+        if (startedAtMillis == 0) {
+            return 0;
+        }
+        long end = finishedAtMillis == 0 ? System.currentTimeMillis() : finishedAtMillis;
+        return end - startedAtMillis;
+    }
+
+    /**
+     * @return L'erreur qui a interrompu le démarrage, ou null
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+}
@@ -1,6 +1,13 @@
 package com.openclassrooms.tourguide.tracker;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -9,6 +16,7 @@ import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.openclassrooms.tourguide.jfr.TrackingCycleEvent;
 import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.model.User;
 
@@ -24,16 +32,55 @@ public class Tracker extends Thread {
 	 * Intervalle de temps entre chaque mise à jour des positions (5 minutes)
 	 */
 	private static final long trackingPollingInterval = TimeUnit.MINUTES.toSeconds(5);
+	/**
+	 * Nombre de cycles conservés dans l'historique glissant (2 heures au rythme nominal)
+	 */
+	private static final int CYCLE_HISTORY_SIZE = 24;
+
+	/**
+	 * Intervalle de la voie prioritaire entre deux cycles complets
+	 */
+	private static final long PRIORITY_LANE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+	private final TrackingPriorityPolicy priorityPolicy = new TrackingPriorityPolicy();
+
+	/**
+	 * Utilisateurs non traités à l'échéance du dernier cycle complet, suivis en premier au cycle suivant
+	 */
+	private List<User> carriedOverUsers = List.of();
+
+	private final Deque<TrackingCycleReport> cycleHistory = new ArrayDeque<>(CYCLE_HISTORY_SIZE);
 
 	private final ExecutorService executorService = Executors.newSingleThreadExecutor();
 
 	private final TourGuideService tourGuideService;
 
-	private boolean stop = false;
+	private volatile boolean stop = false;
 
+	private boolean started = false;
+
+	/**
+	 * Crée le Tracker sans le démarrer (voir startTracking).
+	 */
 	public Tracker(TourGuideService tourGuideService) {
 		this.tourGuideService = tourGuideService;
-		executorService.submit(this);
+	}
+
+	/**
+	 * Démarre le thread Tracker. Sans effet s'il est déjà démarré ou arrêté.
+	 */
+	public synchronized void startTracking() {
+		if (!started && !stop) {
+			started = true;
+			executorService.submit(this);
+		}
+	}
+
+	/**
+	 * @return true si le thread Tracker a été démarré
+	 */
+	public synchronized boolean isStarted() {
+		return started;
 	}
 
 	/**
@@ -44,32 +91,136 @@ public class Tracker extends Thread {
 		executorService.shutdownNow();
 	}
 
+	/**
+	 * Attend la fin du thread Tracker après stopTracking. Le cycle en cours cesse de soumettre des utilisateurs
+	 * dès l'arrêt demandé et ne fait qu'attendre les suivis déjà lancés.
+	 *
+	 * @return true si le thread s'est terminé dans le délai
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executorService.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * Intervalle nominal entre deux cycles de suivi.
+	 *
+	 * @return L'intervalle en secondes
+	 */
+	public static long getTrackingPollingInterval() {
+		return trackingPollingInterval;
+	}
+
+	/**
+	 * Renvoie les rapports des derniers cycles, du plus ancien au plus récent.
+	 *
+	 * @return L'historique glissant des cycles de suivi
+	 */
+	public List<TrackingCycleReport> getCycleHistory() {
+		synchronized (cycleHistory) {
+			return new ArrayList<>(cycleHistory);
+		}
+	}
+
+	private void addToCycleHistory(TrackingCycleReport report) {
+		synchronized (cycleHistory) {
+			if (cycleHistory.size() == CYCLE_HISTORY_SIZE) {
+				cycleHistory.removeFirst();
+			}
+			cycleHistory.addLast(report);
+		}
+	}
+
+	/**
+	 * Place en tête les utilisateurs reportés par le cycle précédent, puis les autres dans l'ordre donné.
+	 *
+	 * @param ordered Les utilisateurs triés par priorité
+	 * @return Les utilisateurs dans l'ordre de suivi du cycle
+	 */
+	private List<User> carriedOverFirst(List<User> ordered) {
+		if (carriedOverUsers.isEmpty()) {
+			return ordered;
+		}
+		Set<User> carriedOver = Collections.newSetFromMap(new IdentityHashMap<>());
+		carriedOver.addAll(carriedOverUsers);
+		List<User> users = new ArrayList<>(ordered.size());
+		users.addAll(carriedOverUsers);
+		for (User user : ordered) {
+			if (!carriedOver.contains(user)) {
+				users.add(user);
+			}
+		}
+		return users;
+	}
+
+	private static void commitCycleEvent(TrackingCycleEvent event, boolean priorityLane, TrackingCycleReport report,
+			int spilled) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.priorityLane = priorityLane;
+			event.usersRequested = report.getUsersRequested();
+			event.usersCompleted = report.getUsersCompleted();
+			event.usersCarriedOver = report.getUsersCarriedOver();
+			event.usersFailed = report.getUsersFailed();
+			event.usersSkippedInProgress = report.getUsersSkippedInProgress();
+			event.usersSpilled = spilled;
+			event.commit();
+		}
+	}
+
 	/**
 	 * Méthode principale du thread.
 	 * Exécute une boucle continue qui :
-	 * 1. Récupère tous les utilisateurs
-	 * 2. Met à jour leurs positions
-	 * 3. Attend l'intervalle défini avant la prochaine mise à jour
+	 * 1. Récupère tous les utilisateurs et les trie par priorité, les utilisateurs reportés en tête
+	 * 2. Met à jour leurs positions dans le budget d'un intervalle de suivi
+	 * 3. Déporte sur disque l'historique des utilisateurs inactifs
+	 * 4. Jusqu'au cycle suivant, rafraîchit régulièrement les utilisateurs actifs (voie prioritaire)
 	 */
 	@Override
 	public void run() {
 		StopWatch stopWatch = new StopWatch();
+		long nextFullCycleMillis = System.currentTimeMillis();
 		while (true) {
 			if (Thread.currentThread().isInterrupted() || stop) {
 				logger.debug("Tracker stopping");
 				break;
 			}
 
-			List<User> users = tourGuideService.getAllUsers();
-			logger.debug("Begin Tracker. Tracking " + users.size() + " users.");
-			stopWatch.start();
-			tourGuideService.trackUserLocation(users);
-			stopWatch.stop();
-			logger.debug("Tracker Time Elapsed: " + TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()) + " seconds.");
-			stopWatch.reset();
+			long now = System.currentTimeMillis();
+			if (now >= nextFullCycleMillis) {
+				List<User> users = carriedOverFirst(priorityPolicy.order(tourGuideService.getAllUsers(), now));
+				logger.debug("Begin Tracker. Tracking " + users.size() + " users.");
+				TrackingCycleEvent event = new TrackingCycleEvent();
+				event.begin();
+				stopWatch.start();
+				// le cycle doit rendre la main à temps pour le suivant, même si des appels restent bloqués
+				TrackingCycleReport report = tourGuideService.trackUserLocation(users,
+						Duration.ofSeconds(trackingPollingInterval));
+				stopWatch.stop();
+				carriedOverUsers = report.getCarriedOverUsers();
+				addToCycleHistory(report);
+				int spilled = tourGuideService.spillInactiveUsers();
+				commitCycleEvent(event, false, report, spilled);
+				logger.debug("Tracker spilled " + spilled + " inactive users' history to disk.");
+				logger.debug("Tracker Time Elapsed: " + TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()) + " seconds.");
+				stopWatch.reset();
+				nextFullCycleMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(trackingPollingInterval);
+			} else {
+				List<User> activeUsers = priorityPolicy.activeUsersToRefresh(tourGuideService.getAllUsers(), now);
+				if (!activeUsers.isEmpty()) {
+					logger.debug("Priority lane. Tracking " + activeUsers.size() + " active users.");
+					TrackingCycleEvent event = new TrackingCycleEvent();
+					event.begin();
+					TrackingCycleReport report = tourGuideService.trackUserLocation(activeUsers,
+							Duration.ofMillis(PRIORITY_LANE_INTERVAL_MILLIS));
+					commitCycleEvent(event, true, report, 0);
+				}
+			}
 			try {
-				logger.debug("Tracker sleeping");
-				TimeUnit.SECONDS.sleep(trackingPollingInterval);
+				long sleepMillis = Math.min(PRIORITY_LANE_INTERVAL_MILLIS, nextFullCycleMillis - System.currentTimeMillis());
+				if (sleepMillis > 0) {
+					logger.debug("Tracker sleeping");
+					TimeUnit.MILLISECONDS.sleep(sleepMillis);
+				}
 			} catch (InterruptedException e) {
 				break;
 			}
@@ -0,0 +1,93 @@
+package com.openclassrooms.tourguide.tracker;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.openclassrooms.tourguide.model.User;
+
+/**
+ * Collecte les mesures d'un cycle de suivi : temps passé par utilisateur dans GpsUtil,
+ * dans le calcul des récompenses et dans RewardCentral, et nombre d'utilisateurs ignorés
+ * parce qu'un suivi était déjà en cours.
+ * Les mesures sont écrites dans des tableaux préalloués : l'enregistrement ne crée aucun objet.
+ */
+public class TrackingCycleRecorder {
+
+	private final Instant startedAt = Instant.now();
+	private final long startNanos = System.nanoTime();
+	private final int usersRequested;
+	private final long[] gpsNanos;
+	private final long[] rewardNanos;
+	private final long[] rewardCentralNanos;
+	private final AtomicInteger recorded = new AtomicInteger();
+	private final AtomicInteger skippedInProgress = new AtomicInteger();
+
+	public TrackingCycleRecorder(int usersRequested) {
+		this.usersRequested = usersRequested;
+		this.gpsNanos = new long[usersRequested];
+		this.rewardNanos = new long[usersRequested];
+		this.rewardCentralNanos = new long[usersRequested];
+	}
+
+	/**
+	 * Enregistre les temps de suivi d'un utilisateur.
+	 *
+	 * @param gps           Temps passé dans GpsUtil, en nanosecondes
+	 * @param reward        Temps de calcul des récompenses hors RewardCentral, en nanosecondes
+	 * @param rewardCentral Temps passé dans RewardCentral, en nanosecondes
+	 */
+	public void recordUser(long gps, long reward, long rewardCentral) {
+		int index = recorded.getAndIncrement();
+		if (index < usersRequested) {
+			gpsNanos[index] = gps;
+			rewardNanos[index] = reward;
+			rewardCentralNanos[index] = rewardCentral;
+		}
+	}
+
+	/**
+	 * Signale un utilisateur ignoré car son suivi était déjà en cours.
+	 */
+	public void recordSkippedInProgress() {
+		skippedInProgress.incrementAndGet();
+	}
+
+	/**
+	 * Termine le cycle et calcule son rapport.
+	 * Les mesures visibles sont celles des tâches terminées avant l'échéance du cycle :
+	 * la jointure de leurs futures garantit leur visibilité.
+	 *
+	 * @param usersCompleted   Nombre d'utilisateurs dont la localisation a été obtenue dans le cycle
+	 * @param carriedOverUsers Utilisateurs non traités à l'échéance du cycle, à reprendre au cycle suivant
+	 * @param usersFailed      Nombre d'utilisateurs dont le suivi a échoué
+	 * @return Le rapport du cycle
+	 */
+	public TrackingCycleReport finish(int usersCompleted, List<User> carriedOverUsers, int usersFailed) {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		int processed = Math.min(recorded.get(), usersRequested);
+		long[] total = new long[processed];
+		for (int i = 0; i < processed; i++) {
+			total[i] = gpsNanos[i] + rewardNanos[i] + rewardCentralNanos[i];
+		}
+		return new TrackingCycleReport(startedAt, usersRequested, processed, skippedInProgress.get(),
+				usersCompleted, carriedOverUsers, usersFailed, elapsedNanos,
+				percentiles(gpsNanos, processed), percentiles(rewardNanos, processed),
+				percentiles(rewardCentralNanos, processed), percentiles(total, processed));
+	}
+
+	private static TrackingCycleReport.Latency percentiles(long[] samples, int count) {
+		long[] sorted = Arrays.copyOf(samples, count);
+		Arrays.sort(sorted);
+		return new TrackingCycleReport.Latency(percentile(sorted, 0.50), percentile(sorted, 0.99));
+	}
+
+	private static double percentile(long[] sorted, double quantile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(quantile * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1_000_000.0;
+	}
+}
@@ -0,0 +1,134 @@
+package com.openclassrooms.tourguide.tracker;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.openclassrooms.tourguide.model.User;
+
+/**
+ * Rapport d'un cycle de suivi des utilisateurs : volume traité, bilan à l'échéance (terminés, reportés, en échec), débit,
+ * et latences par utilisateur (p50/p99) réparties entre GpsUtil, le calcul des récompenses et RewardCentral.
+ */
+public class TrackingCycleReport {
+
+	private final Instant startedAt;
+	private final int usersRequested;
+	private final int usersProcessed;
+	private final int usersSkippedInProgress;
+	private final int usersCompleted;
+	private final List<User> carriedOverUsers;
+	private final int usersFailed;
+	private final long elapsedNanos;
+	private final Latency gpsLatency;
+	private final Latency rewardLatency;
+	private final Latency rewardCentralLatency;
+	private final Latency totalLatency;
+
+	public TrackingCycleReport(Instant startedAt, int usersRequested, int usersProcessed, int usersSkippedInProgress,
+			int usersCompleted, List<User> carriedOverUsers, int usersFailed,
+			long elapsedNanos, Latency gpsLatency, Latency rewardLatency, Latency rewardCentralLatency,
+			Latency totalLatency) {
+		this.startedAt = startedAt;
+		this.usersRequested = usersRequested;
+		this.usersProcessed = usersProcessed;
+		this.usersSkippedInProgress = usersSkippedInProgress;
+		this.usersCompleted = usersCompleted;
+		this.carriedOverUsers = List.copyOf(carriedOverUsers);
+		this.usersFailed = usersFailed;
+		this.elapsedNanos = elapsedNanos;
+		this.gpsLatency = gpsLatency;
+		this.rewardLatency = rewardLatency;
+		this.rewardCentralLatency = rewardCentralLatency;
+		this.totalLatency = totalLatency;
+	}
+
+	public Instant getStartedAt() {
+		return startedAt;
+	}
+
+	public int getUsersRequested() {
+		return usersRequested;
+	}
+
+	public int getUsersProcessed() {
+		return usersProcessed;
+	}
+
+	public int getUsersSkippedInProgress() {
+		return usersSkippedInProgress;
+	}
+
+	/**
+	 * @return Le nombre d'utilisateurs dont la localisation a été obtenue avant l'échéance du cycle,
+	 * y compris par un suivi partagé déjà en cours
+	 */
+	public int getUsersCompleted() {
+		return usersCompleted;
+	}
+
+	/**
+	 * @return Le nombre d'utilisateurs non traités à l'échéance du cycle
+	 */
+	public int getUsersCarriedOver() {
+		return carriedOverUsers.size();
+	}
+
+	/**
+	 * @return Les utilisateurs non traités à l'échéance du cycle, à suivre en premier au cycle suivant
+	 */
+	public List<User> getCarriedOverUsers() {
+		return carriedOverUsers;
+	}
+
+	public int getUsersFailed() {
+		return usersFailed;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1_000_000;
+	}
+
+	/**
+	 * @return Le nombre d'utilisateurs suivis par seconde sur ce cycle
+	 */
+	public double getThroughputPerSecond() {
+		return elapsedNanos == 0 ? 0 : usersProcessed * 1_000_000_000.0 / elapsedNanos;
+	}
+
+	public Latency getGpsLatency() {
+		return gpsLatency;
+	}
+
+	public Latency getRewardLatency() {
+		return rewardLatency;
+	}
+
+	public Latency getRewardCentralLatency() {
+		return rewardCentralLatency;
+	}
+
+	public Latency getTotalLatency() {
+		return totalLatency;
+	}
+
+	/**
+	 * Percentiles de latence par utilisateur, en millisecondes.
+	 */
+	public static class Latency {
+		private final double p50Millis;
+		private final double p99Millis;
+
+		public Latency(double p50Millis, double p99Millis) {
+			this.p50Millis = p50Millis;
+			this.p99Millis = p99Millis;
+		}
+
+		public double getP50Millis() {
+			return p50Millis;
+		}
+
+		public double getP99Millis() {
+			return p99Millis;
+		}
+	}
+}
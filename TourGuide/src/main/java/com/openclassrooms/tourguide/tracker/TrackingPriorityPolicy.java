@@ -0,0 +1,106 @@
+package com.openclassrooms.tourguide.tracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.openclassrooms.tourguide.model.User;
+
+/**
+ * Politique de priorité du suivi des utilisateurs.
+ * Les utilisateurs ayant consulté l'API récemment sont suivis en premier à chaque cycle,
+ * et rafraîchis entre deux cycles complets par une voie prioritaire.
+ * Le score de priorité est l'ancienneté de la dernière position connue, augmentée d'un bonus
+ * pour les utilisateurs actifs : un utilisateur inactif dont la position vieillit finit
+ * par passer devant (vieillissement), il n'est donc jamais affamé.
+ */
+public class TrackingPriorityPolicy {
+
+	/**
+	 * Durée pendant laquelle un utilisateur est considéré actif après un appel à l'API
+	 */
+	static final long ACTIVE_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	/**
+	 * Ancienneté maximale visée pour la position d'un utilisateur actif
+	 */
+	static final long ACTIVE_FRESHNESS_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	/**
+	 * Bonus de priorité d'un utilisateur actif, exprimé en ancienneté équivalente
+	 */
+	static final long ACTIVE_BOOST_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	/**
+	 * @return true si l'utilisateur a consulté l'API récemment
+	 */
+	public boolean isActive(User user, long nowMillis) {
+		return nowMillis - user.getLastApiActivityMillis() <= ACTIVE_WINDOW_MILLIS;
+	}
+
+	/**
+	 * Trie les utilisateurs par priorité décroissante pour un cycle complet.
+	 *
+	 * @param users     Les utilisateurs à suivre
+	 * @param nowMillis L'instant courant
+	 * @return Les utilisateurs, du plus prioritaire au moins prioritaire
+	 */
+	public List<User> order(List<User> users, long nowMillis) {
+		Scored[] scored = new Scored[users.size()];
+		for (int i = 0; i < scored.length; i++) {
+			User user = users.get(i);
+			scored[i] = new Scored(user, score(user, nowMillis));
+		}
+		Arrays.sort(scored, Comparator.comparingLong((Scored s) -> s.score).reversed());
+		List<User> ordered = new ArrayList<>(scored.length);
+		for (Scored s : scored) {
+			ordered.add(s.user);
+		}
+		return ordered;
+	}
+
+	/**
+	 * Sélectionne les utilisateurs actifs dont la position est trop ancienne, pour la voie prioritaire.
+	 *
+	 * @param users     Tous les utilisateurs
+	 * @param nowMillis L'instant courant
+	 * @return Les utilisateurs actifs à rafraîchir
+	 */
+	public List<User> activeUsersToRefresh(List<User> users, long nowMillis) {
+		List<User> toRefresh = new ArrayList<>();
+		for (User user : users) {
+			if (isActive(user, nowMillis) && locationAgeMillis(user, nowMillis) > ACTIVE_FRESHNESS_MILLIS) {
+				toRefresh.add(user);
+			}
+		}
+		return toRefresh;
+	}
+
+	long score(User user, long nowMillis) {
+		long score = locationAgeMillis(user, nowMillis);
+		if (isActive(user, nowMillis)) {
+			score += ACTIVE_BOOST_MILLIS;
+		}
+		return score;
+	}
+
+	/**
+	 * @return L'ancienneté de la dernière position connue, ou une valeur très grande si aucune position
+	 */
+	static long locationAgeMillis(User user, long nowMillis) {
+		if (user.getVisitedLocationCount() == 0) {
+			return Long.MAX_VALUE / 2;
+		}
+		return Math.max(0, nowMillis - user.getLastVisitedLocation().timeVisited.getTime());
+	}
+
+	private static final class Scored {
+		private final User user;
+		private final long score;
+
+		private Scored(User user, long score) {
+			this.user = user;
+			this.score = score;
+		}
+	}
+}
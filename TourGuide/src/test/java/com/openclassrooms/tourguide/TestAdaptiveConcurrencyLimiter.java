@@ -0,0 +1,200 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.openclassrooms.tourguide.concurrency.AdaptiveConcurrencyLimiter;
+import com.openclassrooms.tourguide.concurrency.AdaptiveConcurrencyLimiter.Decision;
+
+/**
+ * Classe de tests pour l'executor à limite adaptative.
+ * La latence est contrôlée par un service externe simulé : un nombre de serveurs et un temps de service fixes,
+ * les appels en surnombre attendent un serveur libre.
+ */
+public class TestAdaptiveConcurrencyLimiter {
+
+	/**
+	 * Service externe simulé dont la capacité peut être changée en cours de test
+	 */
+	private static class SimulatedService {
+		private final long serviceMillis;
+		private volatile Semaphore servers;
+
+		SimulatedService(int servers, long serviceMillis) {
+			this.servers = new Semaphore(servers);
+			this.serviceMillis = serviceMillis;
+		}
+
+		void setServers(int count) {
+			servers = new Semaphore(count);
+		}
+
+		void call() {
+			Semaphore current = servers;
+			current.acquireUninterruptibly();
+			try {
+				Thread.sleep(serviceMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				current.release();
+			}
+		}
+	}
+
+	/**
+	 * Test l'ajustement de la limite à la latence du service
+	 * Vérifie que la limite monte tant que le service absorbe la charge, puis baisse quand sa capacité chute
+	 * et que les appels supplémentaires ne font qu'attendre
+	 */
+	@Test
+	public void limitFollowsServiceLatency() throws InterruptedException {
+		SimulatedService service = new SimulatedService(64, 5);
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 16, 50, TimeUnit.MILLISECONDS);
+		AtomicBoolean stopped = new AtomicBoolean();
+		// le thread qui soumet est bloqué dès que la limite est atteinte : chaque fenêtre est saturée
+		Thread driver = new Thread(() -> {
+			try {
+				while (!stopped.get()) {
+					limiter.execute(service::call);
+				}
+			} catch (RejectedExecutionException e) {
+				// executor arrêté
+			}
+		});
+		driver.start();
+		try {
+			assertTrue(waitUntil(() -> limiter.getLimit() >= 8, 10_000));
+			assertTrue(limiter.getDecisionCount(Decision.INCREASE) > 0);
+
+			service.setServers(2);
+			assertTrue(waitUntil(() -> limiter.getLimit() <= 4, 10_000));
+			assertTrue(limiter.getDecisionCount(Decision.DECREASE) > 0);
+		} finally {
+			stopped.set(true);
+			limiter.shutdown();
+			driver.join(5_000);
+		}
+	}
+
+	/**
+	 * Test l'échéance d'attente d'une place
+	 * Vérifie qu'une tâche qui n'obtient pas de place avant l'échéance est rejetée sans être exécutée,
+	 * avec une TimeoutException pour cause
+	 */
+	@Test
+	public void taskIsRejectedAtDeadline() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 1, 1, TimeUnit.SECONDS);
+		CountDownLatch blocker = new CountDownLatch(1);
+		AtomicBoolean lateTaskRan = new AtomicBoolean();
+		try {
+			limiter.execute(() -> awaitQuietly(blocker));
+
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+			RejectedExecutionException rejected = assertThrows(RejectedExecutionException.class,
+					() -> limiter.withDeadline(deadline).execute(() -> lateTaskRan.set(true)));
+
+			assertTrue(rejected.getCause() instanceof TimeoutException);
+			assertTrue(System.nanoTime() >= deadline);
+			assertEquals(1, limiter.getInFlight());
+		} finally {
+			blocker.countDown();
+			limiter.shutdown();
+		}
+		assertTrue(waitUntil(() -> limiter.getInFlight() == 0, 5_000));
+		assertFalse(lateTaskRan.get());
+	}
+
+	/**
+	 * Test la contre-pression quand la limite est atteinte
+	 * Vérifie que le thread qui soumet attend qu'une tâche se termine au lieu de mettre la sienne en file
+	 */
+	@Test
+	public void submitterWaitsWhenLimitIsReached() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 2, 2, 1, TimeUnit.SECONDS);
+		CountDownLatch first = new CountDownLatch(1);
+		CountDownLatch second = new CountDownLatch(1);
+		CountDownLatch thirdStarted = new CountDownLatch(1);
+		CountDownLatch thirdSubmitted = new CountDownLatch(1);
+		try {
+			limiter.execute(() -> awaitQuietly(first));
+			limiter.execute(() -> awaitQuietly(second));
+			Thread submitter = new Thread(() -> {
+				limiter.execute(thirdStarted::countDown);
+				thirdSubmitted.countDown();
+			});
+			submitter.start();
+
+			assertFalse(thirdSubmitted.await(200, TimeUnit.MILLISECONDS));
+			assertEquals(2, limiter.getInFlight());
+			assertEquals(1, thirdStarted.getCount());
+
+			first.countDown();
+			assertTrue(thirdSubmitted.await(5, TimeUnit.SECONDS));
+			assertTrue(thirdStarted.await(5, TimeUnit.SECONDS));
+			submitter.join(5_000);
+		} finally {
+			first.countDown();
+			second.countDown();
+			limiter.shutdown();
+		}
+	}
+
+	/**
+	 * Test la libération de la place d'une tâche en échec
+	 * Vérifie qu'une tâche qui lève une exception rend sa place, et que la suivante obtient la sienne
+	 */
+	@Test
+	public void failedTaskReleasesItsSlot() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 1, 1, TimeUnit.SECONDS);
+		CountDownLatch nextRan = new CountDownLatch(1);
+		Thread.UncaughtExceptionHandler previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+		// l'échec est attendu : il n'est pas affiché
+		Thread.setDefaultUncaughtExceptionHandler((thread, e) -> { });
+		try {
+			limiter.execute(() -> {
+				throw new IllegalStateException("Échec simulé");
+			});
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			limiter.withDeadline(deadline).execute(nextRan::countDown);
+
+			assertTrue(nextRan.await(5, TimeUnit.SECONDS));
+			assertTrue(waitUntil(() -> limiter.getInFlight() == 0, 5_000));
+		} finally {
+			limiter.shutdown();
+			Thread.setDefaultUncaughtExceptionHandler(previousHandler);
+		}
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static boolean waitUntil(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() >= deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+}
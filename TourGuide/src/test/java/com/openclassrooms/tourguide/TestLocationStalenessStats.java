@@ -0,0 +1,64 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.openclassrooms.tourguide.service.LocationStalenessStats;
+
+/**
+ * Classe de tests pour les statistiques d'ancienneté des positions servies.
+ */
+public class TestLocationStalenessStats {
+
+	/**
+	 * Test les statistiques sans position servie
+	 * Vérifie que toutes les valeurs sont nulles
+	 */
+	@Test
+	public void emptyStatsAreZero() {
+		LocationStalenessStats stats = new LocationStalenessStats();
+
+		assertEquals(0, stats.getServedCount());
+		assertEquals(0, stats.getStaleCount());
+		assertEquals(0.0, stats.getMeanAgeMillis());
+		assertEquals(0, stats.getMaxAgeMillis());
+	}
+
+	/**
+	 * Test l'enregistrement des anciennetés
+	 * Vérifie le nombre de positions servies, la moyenne, le maximum, et que seules les positions
+	 * de plus de 30 secondes sont comptées périmées
+	 */
+	@Test
+	public void recordsAgesAndCountsStalePositions() {
+		LocationStalenessStats stats = new LocationStalenessStats();
+
+		stats.record(1_000);
+		stats.record(LocationStalenessStats.STALE_THRESHOLD_MILLIS);
+		stats.record(LocationStalenessStats.STALE_THRESHOLD_MILLIS + 1);
+		stats.record(89_999);
+
+		assertEquals(4, stats.getServedCount());
+		assertEquals(2, stats.getStaleCount());
+		assertEquals(37_750.0, stats.getMeanAgeMillis());
+		assertEquals(89_999, stats.getMaxAgeMillis());
+	}
+
+	/**
+	 * Test l'enregistrement d'une position datée dans le futur (horloges décalées)
+	 * Vérifie que son ancienneté est ramenée à zéro
+	 */
+	@Test
+	public void negativeAgeCountsAsFresh() {
+		LocationStalenessStats stats = new LocationStalenessStats();
+
+		stats.record(-5_000);
+		stats.record(2_000);
+
+		assertEquals(2, stats.getServedCount());
+		assertEquals(0, stats.getStaleCount());
+		assertEquals(1_000.0, stats.getMeanAgeMillis());
+		assertEquals(2_000, stats.getMaxAgeMillis());
+	}
+}
@@ -1,9 +1,11 @@
 package com.openclassrooms.tourguide;
 
+import com.openclassrooms.tourguide.concurrency.TrackingExecutionMode;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
 import com.openclassrooms.tourguide.model.User;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracker.TrackingCycleReport;
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
 import gpsUtil.location.VisitedLocation;
@@ -75,6 +77,32 @@ public class TestPerformance {
         assertTrue(TimeUnit.MINUTES.toSeconds(15) >= TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()));
     }
 
+    /**
+     * Test de performance du suivi en mode SHARDED, à comparer avec highVolumeTrackLocation (mode POOL).
+     * Objectif identique : Traiter 100 000 utilisateurs en moins de 15 minutes.
+     */
+    @Test
+    public void highVolumeTrackLocationSharded() {
+        GpsUtil gpsUtil = new GpsUtil();
+        RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+        InternalTestHelper.setInternalUserNumber(100000);
+        TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+        tourGuideService.setExecutionMode(TrackingExecutionMode.SHARDED);
+        List<User> allUsers = tourGuideService.getAllUsers();
+
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        TrackingCycleReport report = tourGuideService.trackUserLocation(allUsers);
+        stopWatch.stop();
+        tourGuideService.tracker.stopTracking();
+
+        System.out.println("highVolumeTrackLocationSharded: Time Elapsed: "
+                + TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()) + " seconds, "
+                + Math.round(report.getThroughputPerSecond()) + " users/s over "
+                + tourGuideService.getUserShards().getShardCount() + " shards.");
+        assertTrue(TimeUnit.MINUTES.toSeconds(15) >= TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()));
+    }
+
     /**
      * Test de performance pour le calcul des récompenses d'un grand nombre d'utilisateurs.
      * Objectif : Traiter 100 000 utilisateurs en moins de 20 minutes.
@@ -1,8 +1,11 @@
 package com.openclassrooms.tourguide;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -12,13 +15,20 @@ import org.junit.jupiter.api.Test;
 
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.service.AttractionIndex;
+import com.openclassrooms.tourguide.service.GeofenceEvent;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.model.AttractionCatalog;
 import com.openclassrooms.tourguide.model.User;
 import com.openclassrooms.tourguide.model.UserReward;
+import com.openclassrooms.tourguide.dto.AttractionPopularityDTO;
+import com.openclassrooms.tourguide.dto.GeofenceDTO;
+import com.openclassrooms.tourguide.dto.LeaderboardEntryDTO;
 
 /**
  * Classe de test pour le service RewardsService.
@@ -61,6 +71,25 @@ public class TestRewardsService {
 		assertTrue(rewardsService.isWithinAttractionProximity(attraction, attraction));
 	}
 
+	/**
+	 * Vérifie que l'index des attractions est reconnu pour toute liste de mêmes attractions :
+	 * GpsUtil renvoie une nouvelle liste à chaque appel, l'index ne doit pas être reconstruit pour autant.
+	 */
+	@Test
+	public void attractionIndexMatchesListsByContent() {
+		GpsUtil gpsUtil = new GpsUtil();
+		List<Attraction> attractions = gpsUtil.getAttractions();
+		AttractionIndex index = AttractionIndex.of(new AttractionCatalog(), attractions);
+
+		assertTrue(index.isFor(attractions));
+		assertTrue(index.isFor(gpsUtil.getAttractions()));
+		assertTrue(index.isFor(attractions));
+		assertFalse(index.isFor(attractions.subList(1, attractions.size())));
+		List<Attraction> reordered = new ArrayList<>(attractions);
+		Collections.swap(reordered, 0, 1);
+		assertFalse(index.isFor(reordered));
+	}
+
 //	@Disabled // Doit être corrigé - peut générer une ConcurrentModificationException
 
 	/**
@@ -83,4 +112,219 @@ public class TestRewardsService {
 		assertEquals(gpsUtil.getAttractions().size(), userRewards.size());
 	}
 
+	/**
+	 * Teste le total cumulé des points et le classement des utilisateurs.
+	 * Vérifie que le total maintenu correspond à la somme des récompenses
+	 * et que le classement est trié par points décroissants.
+	 */
+	@Test
+	public void leaderboardRanksUsersByCumulativePoints() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), Integer.MAX_VALUE);
+
+		InternalTestHelper.setInternalUserNumber(3);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		List<User> allUsers = tourGuideService.getAllUsers();
+		rewardsService.calculateRewards(allUsers);
+		List<LeaderboardEntryDTO> leaderboard = tourGuideService.getLeaderboard(2);
+		tourGuideService.tracker.stopTracking();
+
+		for (User user : allUsers) {
+			assertEquals(user.getUserRewards().stream().mapToInt(UserReward::getRewardPoints).sum(), user.getCumulativeRewardPoints());
+		}
+		int bestPoints = allUsers.stream().mapToInt(User::getCumulativeRewardPoints).max().getAsInt();
+		assertEquals(2, leaderboard.size());
+		assertEquals(bestPoints, leaderboard.get(0).getRewardPoints());
+		assertTrue(leaderboard.get(0).getRewardPoints() >= leaderboard.get(1).getRewardPoints());
+	}
+
+	/**
+	 * Vérifie qu'une récompense ajoutée hors calcul passe par le service et atteint le classement,
+	 * et qu'un service fermé n'est plus notifié par le RewardsService qu'il partageait.
+	 */
+	@Test
+	public void rewardsAddedThroughServiceReachLeaderboard() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService closed = new TourGuideService(gpsUtil, rewardsService, true);
+		closed.close();
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		VisitedLocation visitedLocation = user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		assertTrue(rewardsService.addUserReward(user, new UserReward(visitedLocation, attraction, 250)));
+		assertFalse(rewardsService.addUserReward(user, new UserReward(visitedLocation, attraction, 250)));
+
+		List<LeaderboardEntryDTO> leaderboard = tourGuideService.getLeaderboard(1);
+		assertEquals(1, leaderboard.size());
+		assertEquals("jon", leaderboard.get(0).getUserName());
+		assertEquals(250, leaderboard.get(0).getRewardPoints());
+		assertTrue(closed.getLeaderboard(1).isEmpty());
+		tourGuideService.tracker.stopTracking();
+	}
+
+	/**
+	 * Teste les compteurs de popularité des attractions.
+	 * Vérifie que les utilisateurs positionnés sur une attraction sont comptés à proximité, dans leur propre rayon,
+	 * et que les récompenses attribuées pour cette attraction sont comptées.
+	 */
+	@Test
+	public void attractionPopularityCountsNearbyUsersAndRewards() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		User user2 = new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		user2.addToVisitedLocations(new VisitedLocation(user2.getUserId(), attraction, new Date()));
+		// à 5 miles de l'attraction, dans le rayon par défaut mais pas dans le rayon propre à l'utilisateur
+		User user3 = new User(UUID.randomUUID(), "jon3", "000", "jon3@tourGuide.com");
+		user3.getUserPreferences().setAttractionProximity(1);
+		user3.addToVisitedLocations(new VisitedLocation(user3.getUserId(),
+				new Location(attraction.latitude + 5 / 69.0, attraction.longitude), new Date()));
+		tourGuideService.addUser(user);
+		tourGuideService.addUser(user2);
+		tourGuideService.addUser(user3);
+		rewardsService.calculateRewards(List.of(user, user2, user3));
+
+		AttractionPopularityDTO popularity = tourGuideService.getAttractionPopularity().stream()
+				.filter(p -> p.getAttractionName().equals(attraction.attractionName))
+				.findFirst().get();
+		tourGuideService.tracker.stopTracking();
+
+		assertEquals(2, popularity.getUsersNearby());
+		assertEquals(2, popularity.getRewardsGranted());
+		assertEquals(3, tourGuideService.getHeatMap().getCells().stream().mapToLong(c -> c.getUsers()).sum());
+	}
+
+	/**
+	 * Vérifie que le rayon de proximité propre à un utilisateur est respecté,
+	 * et qu'un rayon élargi attribue les récompenses des attractions nouvellement couvertes.
+	 */
+	@Test
+	public void userProximityRadiusIsHonoured() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		List<Attraction> attractions = gpsUtil.getAttractions();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.getUserPreferences().setAttractionProximity(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attractions.get(0), new Date()));
+		rewardsService.calculateRewards(user);
+		int rewardsWithinZeroMiles = user.getUserRewards().size();
+
+		tourGuideService.setAttractionProximity(user, Integer.MAX_VALUE - 1);
+		tourGuideService.tracker.stopTracking();
+
+		assertEquals(1, rewardsWithinZeroMiles);
+		assertEquals(attractions.size(), user.getUserRewards().size());
+	}
+
+	/**
+	 * Vérifie les entrées et sorties de la zone d'une attraction : récompense à la première entrée seulement,
+	 * pas de sortie dans la marge au-delà du rayon, durée de visite cumulée, et aucune réévaluation de l'historique déjà traité.
+	 */
+	@Test
+	public void geofenceTracksEnterExitAndDwell() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+		List<Attraction> attractions = gpsUtil.getAttractions();
+		Attraction attraction = attractions.get(0);
+		int ordinal = rewardsService.getAttractionCatalog().ordinalOf(attraction);
+		List<GeofenceEvent> events = new ArrayList<>();
+		rewardsService.getGeofenceEngine().addListener((u, event) -> {
+			if (event.getAttractionOrdinal() == ordinal) {
+				events.add(event);
+			}
+		});
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		double milesPerDegree = rewardsService.getDistance(new Location(0, 0), new Location(1, 0));
+		double[] latitudeOffsets = { 0, (rewardsService.getProximityBuffer() + 0.2) / milesPerDegree, 1, 0 };
+		for (int i = 0; i < latitudeOffsets.length; i++) {
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
+					new Location(attraction.latitude + latitudeOffsets[i], attraction.longitude), new Date(i * 60_000L)));
+			rewardsService.updateGeofences(user, attractions);
+		}
+		rewardsService.updateGeofences(user, attractions);
+
+		assertEquals(3, events.size());
+		assertEquals(GeofenceEvent.Type.ENTER, events.get(0).getType());
+		assertEquals(GeofenceEvent.Type.EXIT, events.get(1).getType());
+		assertEquals(2, events.get(1).getVisitedLocationIndex());
+		assertEquals(120_000, events.get(1).getDwellMillis());
+		assertEquals(GeofenceEvent.Type.ENTER, events.get(2).getType());
+		assertEquals(1, user.getUserRewards().stream()
+				.filter(r -> r.attraction.attractionName.equals(attraction.attractionName)).count());
+
+		GeofenceDTO geofence = tourGuideService.getGeofences(user).stream()
+				.filter(g -> g.getAttractionName().equals(attraction.attractionName)).findFirst().get();
+		assertTrue(geofence.isInside());
+		assertEquals(2, geofence.getVisits());
+		assertEquals(120_000, geofence.getDwellMillis());
+		assertEquals(new Date(180_000), geofence.getEnteredAt());
+
+		// historique vidé puis rempli au-delà de l'ancienne taille avant la mise à jour suivante :
+		// la visite en cours est close sans événement et toutes les nouvelles localisations sont évaluées
+		user.clearVisitedLocations();
+		for (int i = 0; i < 6; i++) {
+			double latitudeOffset = i < 5 ? 1 : 0;
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
+					new Location(attraction.latitude + latitudeOffset, attraction.longitude), new Date(240_000 + i * 60_000L)));
+		}
+		rewardsService.updateGeofences(user, attractions);
+
+		assertEquals(4, events.size());
+		assertEquals(GeofenceEvent.Type.ENTER, events.get(3).getType());
+		assertEquals(5, events.get(3).getVisitedLocationIndex());
+		assertEquals(3, user.getGeofenceState().getVisits(ordinal));
+		tourGuideService.tracker.stopTracking();
+	}
+
+	/**
+	 * Vérifie que le calcul par jointure spatiale récompense les utilisateurs regroupés au même endroit
+	 * comme le calcul utilisateur par utilisateur, et ne récompense pas un utilisateur éloigné.
+	 */
+	@Test
+	public void calculateRewardsByCellRewardsCoLocatedUsers() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		List<User> users = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			User user = new User(UUID.randomUUID(), "jon" + i, "000", "jon" + i + "@tourGuide.com");
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
+					new Location(attraction.latitude + i * 0.001, attraction.longitude), new Date()));
+			users.add(user);
+		}
+		User farUser = new User(UUID.randomUUID(), "far", "000", "far@tourGuide.com");
+		farUser.addToVisitedLocations(new VisitedLocation(farUser.getUserId(), new Location(0, 0), new Date()));
+		users.add(farUser);
+
+		rewardsService.calculateRewardsByCell(users);
+		tourGuideService.tracker.stopTracking();
+
+		for (User user : users.subList(0, 20)) {
+			assertEquals(1, user.getUserRewards().size());
+			assertEquals(attraction.attractionName, user.getUserRewards().get(0).attraction.attractionName);
+		}
+		assertEquals(0, farUser.getUserRewards().size());
+	}
+
 }
@@ -0,0 +1,562 @@
+package com.openclassrooms.tourguide;
+
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import rewardCentral.RewardCentral;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Campagne de mesure de la montée en charge du suivi et du calcul des récompenses.
+ * <p>
+ * Contrairement à TestPerformance, qui vérifie un seul seuil à 100 000 utilisateurs, cette campagne fait varier
+ * un paramètre à la fois autour d'un point de référence : nombre d'utilisateurs, concurrence, longueur de l'historique
+ * et taille du catalogue d'attractions, pour le suivi (trackUserLocation) comme pour les récompenses (calculateRewards).
+ * Chaque traitement est mesuré utilisateur par utilisateur, appelé par un nombre fixe de threads de mesure,
+ * et en lot (trackUserLocation(List), calculateRewards(List)), comme le fait le Tracker : le service répartit
+ * alors les utilisateurs sur ses propres pools, la concurrence ne varie pas et la latence relevée est celle du lot.
+ * GpsUtil et RewardCentral sont remplacés par des doublures sans latence : c'est le coût de TourGuide qui est mesuré.
+ * Les services d'un scénario sont fermés à sa fin : ses threads et ses utilisateurs ne pèsent pas sur les suivants.
+ * <p>
+ * Pour chaque scénario sont relevés le débit, les latences par utilisateur (p50, p90, p99, max), les octets alloués
+ * par utilisateur et par seconde, et le pic de tas. Les résultats sont écrits en CSV, précédés de la machine de mesure
+ * (processeurs, tas maximal, version de Java), puis comparés à la référence src/test/resources/benchmark/baseline.csv,
+ * avec une tolérance : toute régression fait échouer le test. Une référence mesurée sur une autre machine ne fait
+ * que signaler les régressions.
+ * <p>
+ * La campagne ne s'exécute qu'avec -Dbenchmark=true, par exemple via le profil Maven : mvn test -Pbenchmark.
+ * Réglages (propriétés système) :
+ * benchmark.users, benchmark.concurrency, benchmark.history, benchmark.attractions (listes séparées par des virgules ;
+ * 1 000 à 100 000 utilisateurs par défaut, comme la référence, 1 000 000 sur demande),
+ * benchmark.paths (tracking,rewards,tracking_batch,rewards_batch), benchmark.warmUpMillis (durée minimale de chauffe par scénario, 2000 par défaut),
+ * benchmark.tolerance (0.25 par défaut), benchmark.output (répertoire des résultats),
+ * benchmark.failOnRegression (true par défaut), benchmark.writeBaseline (chemin où écrire les résultats comme nouvelle référence).
+ * Les références dépendent de la machine : elles doivent être régénérées sur la machine de mesure.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class TestScalingBenchmark {
+
+    private static final int BASE_USERS = 10_000;
+    private static final int BASE_CONCURRENCY = 4;
+    private static final int BASE_HISTORY = 10;
+    private static final int BASE_ATTRACTIONS = 26;
+    /**
+     * Utilisateurs supplémentaires, non mesurés, traités en boucle avant chaque scénario pour la compilation JIT
+     */
+    private static final int WARM_UP_USERS = 2_000;
+    /**
+     * Un scénario est répété (au plus MAX_REPETITIONS fois) tant que le total des utilisateurs mesurés reste sous REPEATED_USERS
+     */
+    private static final int REPEATED_USERS = 100_000;
+    private static final int MAX_REPETITIONS = 5;
+    private static final String CSV_HEADER = "scenario,path,users,concurrency,history,attractions,throughputPerSecond,"
+            + "p50Micros,p90Micros,p99Micros,maxMicros,allocatedBytesPerUser,allocationMBPerSecond,peakHeapMB";
+
+    /**
+     * Écarts absolus en dessous desquels une différence n'est pas une régression (bruit de mesure)
+     */
+    private static final double LATENCY_FLOOR_MICROS = 50;
+    private static final double ALLOCATION_FLOOR_BYTES = 1024;
+    private static final double HEAP_FLOOR_MB = 32;
+    /**
+     * Préfixe de la ligne décrivant la machine de mesure dans les fichiers de résultats
+     */
+    private static final String HOST_PREFIX = "# host: ";
+
+    enum BenchmarkPath {
+        TRACKING(false), REWARDS(false), TRACKING_BATCH(true), REWARDS_BATCH(true);
+
+        /**
+         * true si les utilisateurs sont passés au service en un seul lot
+         */
+        private final boolean batch;
+
+        BenchmarkPath(boolean batch) {
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * Traitement mesuré d'une liste d'utilisateurs
+     */
+    @FunctionalInterface
+    private interface Operation {
+        /**
+         * @return Les latences relevées, en nanosecondes
+         */
+        long[] apply(List<User> users) throws Exception;
+    }
+
+    @Test
+    public void scalingBenchmark() throws Exception {
+        List<Scenario> scenarios = scenarios();
+        List<Result> results = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            Result result = run(scenario);
+            System.out.println("scalingBenchmark: " + result.toCsv());
+            results.add(result);
+        }
+
+        Path output = Paths.get(System.getProperty("benchmark.output", "target/benchmark"));
+        Files.createDirectories(output);
+        Path resultFile = output.resolve("results-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".csv");
+        writeCsv(resultFile, results);
+        System.out.println("scalingBenchmark: résultats écrits dans " + resultFile.toAbsolutePath());
+        String baselineTarget = System.getProperty("benchmark.writeBaseline");
+        if (baselineTarget != null) {
+            writeCsv(Paths.get(baselineTarget), results);
+        }
+
+        double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", "0.25"));
+        Baseline baseline = readBaseline();
+        List<String> regressions = compareWithBaseline(results, baseline.rows, tolerance);
+        regressions.forEach(regression -> System.out.println("scalingBenchmark: RÉGRESSION " + regression));
+        boolean sameHost = baseline.host == null || baseline.host.equals(host());
+        if (!sameHost) {
+            System.out.println("scalingBenchmark: référence mesurée sur " + baseline.host + ", machine courante "
+                    + host() + " : les régressions ne font pas échouer le test");
+        }
+        if (sameHost && Boolean.parseBoolean(System.getProperty("benchmark.failOnRegression", "true"))) {
+            assertTrue(regressions.isEmpty(), regressions.size() + " régression(s) par rapport à la référence :\n"
+                    + String.join("\n", regressions));
+        }
+    }
+
+    /**
+     * Un paramètre varie à la fois, les autres restent au point de référence.
+     */
+    private static List<Scenario> scenarios() {
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String pathName : System.getProperty("benchmark.paths", "tracking,rewards,tracking_batch,rewards_batch").split(",")) {
+            BenchmarkPath path = BenchmarkPath.valueOf(pathName.trim().toUpperCase());
+            // un lot est soumis par un seul appelant, le service règle lui-même sa concurrence
+            int baseConcurrency = path.batch ? 1 : BASE_CONCURRENCY;
+            for (int users : intList("benchmark.users", "1000,10000,100000")) {
+                addScenario(scenarios, new Scenario(path, users, baseConcurrency, BASE_HISTORY, BASE_ATTRACTIONS));
+            }
+            if (!path.batch) {
+                for (int concurrency : intList("benchmark.concurrency", "1,4,16,64")) {
+                    addScenario(scenarios, new Scenario(path, BASE_USERS, concurrency, BASE_HISTORY, BASE_ATTRACTIONS));
+                }
+            }
+            for (int history : intList("benchmark.history", "1,10,100,1000")) {
+                addScenario(scenarios, new Scenario(path, BASE_USERS, baseConcurrency, history, BASE_ATTRACTIONS));
+            }
+            for (int attractions : intList("benchmark.attractions", "26,260,2600")) {
+                addScenario(scenarios, new Scenario(path, BASE_USERS, baseConcurrency, BASE_HISTORY, attractions));
+            }
+        }
+        return scenarios;
+    }
+
+    private static void addScenario(List<Scenario> scenarios, Scenario scenario) {
+        if (scenarios.stream().noneMatch(s -> s.id().equals(scenario.id()))) {
+            scenarios.add(scenario);
+        }
+    }
+
+    private static int[] intList(String property, String defaultValue) {
+        return Arrays.stream(System.getProperty(property, defaultValue).split(","))
+                .mapToInt(value -> Integer.parseInt(value.trim())).toArray();
+    }
+
+    /**
+     * Exécute un scénario. Les scénarios courts sont répétés, sur de nouveaux utilisateurs à chaque fois,
+     * et la répétition de débit médian est retenue.
+     */
+    private static Result run(Scenario scenario) throws Exception {
+        ZeroLatencyGpsUtil gpsUtil = new ZeroLatencyGpsUtil(scenario.attractions);
+        RewardsService rewardsService = new RewardsService(gpsUtil, new ZeroLatencyRewardCentral());
+        InternalTestHelper.setInternalUserNumber(0);
+        TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+        Random random = new Random(scenario.users);
+        List<User> warmUpUsers = createUsers(tourGuideService, gpsUtil, WARM_UP_USERS, scenario.history, random);
+        List<Attraction> attractions = gpsUtil.getAttractions();
+
+        ExecutorService drivers = Executors.newFixedThreadPool(scenario.concurrency);
+        try {
+            Operation operation;
+            LongSupplier allocatedBytes;
+            if (scenario.path.batch) {
+                Consumer<List<User>> batch = scenario.path == BenchmarkPath.TRACKING_BATCH
+                        ? tourGuideService::trackUserLocation
+                        : rewardsService::calculateRewards;
+                operation = users -> timeBatch(batch, users);
+                // le lot est traité par les pools du service : les allocations de tous les threads sont comptées
+                allocatedBytes = () -> allocatedBytes(ManagementFactory.getThreadMXBean().getAllThreadIds());
+            } else {
+                Consumer<User> perUser = scenario.path == BenchmarkPath.TRACKING
+                        ? tourGuideService::trackUserLocation
+                        : user -> rewardsService.calculateRewards(user, attractions);
+                operation = users -> drive(drivers, scenario.concurrency, users, perUser);
+                long[] driverThreadIds = driverThreadIds(drivers, scenario.concurrency);
+                allocatedBytes = () -> allocatedBytes(driverThreadIds);
+            }
+            long warmUpEnd = System.nanoTime() + Long.getLong("benchmark.warmUpMillis", 2_000) * 1_000_000;
+            do {
+                operation.apply(warmUpUsers);
+            } while (System.nanoTime() < warmUpEnd);
+
+            int repetitions = Math.max(1, Math.min(MAX_REPETITIONS, REPEATED_USERS / scenario.users));
+            List<Result> results = new ArrayList<>(repetitions);
+            for (int r = 0; r < repetitions; r++) {
+                results.add(measure(scenario, tourGuideService, gpsUtil, random, operation, allocatedBytes));
+            }
+            results.sort(Comparator.comparingDouble(result -> result.throughputPerSecond));
+            return results.get(results.size() / 2);
+        } finally {
+            drivers.shutdownNow();
+            tourGuideService.close();
+            rewardsService.close();
+        }
+    }
+
+    private static Result measure(Scenario scenario, TourGuideService tourGuideService, GpsUtil gpsUtil, Random random,
+                                  Operation operation, LongSupplier allocatedBytes) throws Exception {
+        System.gc();
+        long heapBefore = heapUsed();
+        List<User> users = createUsers(tourGuideService, gpsUtil, scenario.users, scenario.history, random);
+
+        resetPeakHeap();
+        long allocatedBefore = allocatedBytes.getAsLong();
+        long start = System.nanoTime();
+        long[] latencies = operation.apply(users);
+        long elapsedNanos = System.nanoTime() - start;
+        long allocated = allocatedBytes.getAsLong() - allocatedBefore;
+
+        Arrays.sort(latencies);
+        Result result = new Result(scenario);
+        result.throughputPerSecond = users.size() * 1e9 / elapsedNanos;
+        result.p50Micros = percentile(latencies, 0.50) / 1e3;
+        result.p90Micros = percentile(latencies, 0.90) / 1e3;
+        result.p99Micros = percentile(latencies, 0.99) / 1e3;
+        result.maxMicros = latencies[latencies.length - 1] / 1e3;
+        result.allocatedBytesPerUser = (double) allocated / users.size();
+        result.allocationMBPerSecond = allocated / 1048576.0 / (elapsedNanos / 1e9);
+        result.peakHeapMB = Math.max(0, peakHeapUsed() - heapBefore) / 1048576.0;
+        return result;
+    }
+
+    /**
+     * Historique de chaque utilisateur : une marche aléatoire à petits pas autour d'une attraction,
+     * pour que le calcul des récompenses ait des attractions à proximité.
+     */
+    private static List<User> createUsers(TourGuideService tourGuideService, GpsUtil gpsUtil, int count, int history,
+                                          Random random) {
+        List<Attraction> attractions = gpsUtil.getAttractions();
+        long now = System.currentTimeMillis();
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User user = new User(UUID.randomUUID(), "benchmarkUser" + i + "-" + random.nextInt(), "000", "benchmark@tourGuide.com");
+            Attraction start = attractions.get(random.nextInt(attractions.size()));
+            double latitude = start.latitude + 0.5;
+            double longitude = start.longitude;
+            for (int l = 0; l < history; l++) {
+                latitude = Math.max(-85, Math.min(85, latitude + random.nextGaussian() * 0.01));
+                longitude = Math.max(-180, Math.min(180, longitude + random.nextGaussian() * 0.01));
+                user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(latitude, longitude),
+                        new Date(now - (history - l) * 60_000L)));
+            }
+            tourGuideService.addUser(user);
+            users.add(user);
+        }
+        return users;
+    }
+
+    /**
+     * Traite les utilisateurs avec un nombre fixe de threads, dans le thread appelant de chaque opération.
+     *
+     * @return La latence de chaque utilisateur, en nanosecondes
+     */
+    private static long[] drive(ExecutorService drivers, int concurrency, List<User> users, Consumer<User> operation)
+            throws Exception {
+        long[] latencies = new long[users.size()];
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(concurrency);
+        for (int t = 0; t < concurrency; t++) {
+            futures.add(drivers.submit(() -> {
+                for (int i = next.getAndIncrement(); i < latencies.length; i = next.getAndIncrement()) {
+                    long start = System.nanoTime();
+                    operation.accept(users.get(i));
+                    latencies[i] = System.nanoTime() - start;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return latencies;
+    }
+
+    /**
+     * Traite les utilisateurs en un seul appel au service, qui les répartit sur ses propres pools.
+     *
+     * @return La durée de l'appel, seule latence relevée pour un lot, en nanosecondes
+     */
+    private static long[] timeBatch(Consumer<List<User>> batch, List<User> users) {
+        long start = System.nanoTime();
+        batch.accept(users);
+        return new long[]{System.nanoTime() - start};
+    }
+
+    private static long[] driverThreadIds(ExecutorService drivers, int concurrency) throws Exception {
+        // chaque tâche bloque jusqu'à ce que toutes aient démarré : une par thread du pool
+        CyclicBarrier barrier = new CyclicBarrier(concurrency);
+        List<Future<Long>> futures = new ArrayList<>(concurrency);
+        for (int t = 0; t < concurrency; t++) {
+            futures.add(drivers.submit(() -> {
+                barrier.await();
+                return Thread.currentThread().getId();
+            }));
+        }
+        long[] ids = new long[concurrency];
+        for (int t = 0; t < concurrency; t++) {
+            ids[t] = futures.get(t).get();
+        }
+        return ids;
+    }
+
+    private static long allocatedBytes(long[] threadIds) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return Arrays.stream(threads.getThreadAllocatedBytes(threadIds)).filter(bytes -> bytes > 0).sum();
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).collect(Collectors.toList());
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void resetPeakHeap() {
+        heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    private static long peakHeapUsed() {
+        return heapPools().stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+    }
+
+    /**
+     * @return La machine de mesure : processeurs disponibles, tas maximal et version de Java
+     */
+    private static String host() {
+        return "processors=" + Runtime.getRuntime().availableProcessors()
+                + " maxHeapMB=" + Runtime.getRuntime().maxMemory() / 1048576
+                + " java=" + System.getProperty("java.version");
+    }
+
+    private static void writeCsv(Path file, List<Result> results) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println(CSV_HEADER);
+            out.println(HOST_PREFIX + host());
+            results.forEach(result -> out.println(result.toCsv()));
+        }
+    }
+
+    /**
+     * @return Les mesures de référence par scénario, vides si aucune référence n'est fournie
+     */
+    private static Baseline readBaseline() throws IOException {
+        Baseline baseline = new Baseline();
+        InputStream in = TestScalingBenchmark.class.getResourceAsStream("/benchmark/baseline.csv");
+        if (in == null) {
+            return baseline;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.readLine();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.startsWith(HOST_PREFIX)) {
+                    baseline.host = line.substring(HOST_PREFIX.length());
+                } else if (!line.isBlank() && !line.startsWith("#")) {
+                    String[] columns = line.split(",");
+                    baseline.rows.put(columns[0], columns);
+                }
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * Une régression : débit inférieur, ou p99, allocation par utilisateur ou pic de tas supérieurs
+     * à la référence au-delà de la tolérance relative et d'un écart absolu minimal.
+     */
+    static List<String> compareWithBaseline(List<Result> results, Map<String, String[]> baseline, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (Result result : results) {
+            String[] reference = baseline.get(result.scenario.id());
+            if (reference == null) {
+                System.out.println("scalingBenchmark: pas de référence pour " + result.scenario.id());
+                continue;
+            }
+            double throughput = Double.parseDouble(reference[6]);
+            if (result.throughputPerSecond < throughput * (1 - tolerance)) {
+                regressions.add(String.format("%s : débit %.0f/s, référence %.0f/s",
+                        result.scenario.id(), result.throughputPerSecond, throughput));
+            }
+            checkIncrease(regressions, result.scenario.id(), "p99 (µs)", result.p99Micros,
+                    Double.parseDouble(reference[9]), tolerance, LATENCY_FLOOR_MICROS);
+            checkIncrease(regressions, result.scenario.id(), "octets alloués par utilisateur", result.allocatedBytesPerUser,
+                    Double.parseDouble(reference[11]), tolerance, ALLOCATION_FLOOR_BYTES);
+            checkIncrease(regressions, result.scenario.id(), "pic de tas (Mo)", result.peakHeapMB,
+                    Double.parseDouble(reference[13]), tolerance, HEAP_FLOOR_MB);
+        }
+        return regressions;
+    }
+
+    private static void checkIncrease(List<String> regressions, String scenario, String metric, double value,
+                                      double reference, double tolerance, double floor) {
+        if (value > reference * (1 + tolerance) && value - reference > floor) {
+            regressions.add(String.format("%s : %s %.1f, référence %.1f", scenario, metric, value, reference));
+        }
+    }
+
+    static final class Baseline {
+        private final Map<String, String[]> rows = new LinkedHashMap<>();
+        /**
+         * Machine de mesure de la référence, null si elle n'est pas indiquée
+         */
+        private String host;
+    }
+
+    static final class Scenario {
+        private final BenchmarkPath path;
+        private final int users;
+        private final int concurrency;
+        private final int history;
+        private final int attractions;
+
+        Scenario(BenchmarkPath path, int users, int concurrency, int history, int attractions) {
+            this.path = path;
+            this.users = users;
+            this.concurrency = concurrency;
+            this.history = history;
+            this.attractions = attractions;
+        }
+
+        String id() {
+            return path.name().toLowerCase() + "/u" + users + "/c" + concurrency + "/h" + history + "/a" + attractions;
+        }
+    }
+
+    static final class Result {
+        private final Scenario scenario;
+        private double throughputPerSecond;
+        private double p50Micros;
+        private double p90Micros;
+        private double p99Micros;
+        private double maxMicros;
+        private double allocatedBytesPerUser;
+        private double allocationMBPerSecond;
+        private double peakHeapMB;
+
+        Result(Scenario scenario) {
+            this.scenario = scenario;
+        }
+
+        String toCsv() {
+            return String.join(",", scenario.id(), scenario.path.name().toLowerCase(), String.valueOf(scenario.users),
+                    String.valueOf(scenario.concurrency), String.valueOf(scenario.history),
+                    String.valueOf(scenario.attractions), format(throughputPerSecond), format(p50Micros),
+                    format(p90Micros), format(p99Micros), format(maxMicros), format(allocatedBytesPerUser),
+                    format(allocationMBPerSecond), format(peakHeapMB));
+        }
+
+        private static String format(double value) {
+            return String.format(Locale.ROOT, "%.1f", value);
+        }
+    }
+
+    /**
+     * GpsUtil sans latence ni limitation de débit : position aléatoire, catalogue des 26 attractions réelles
+     * complété d'attractions synthétiques (positions fixées par une graine, pour des noms stables d'un scénario à l'autre).
+     */
+    static final class ZeroLatencyGpsUtil extends GpsUtil {
+        private final List<Attraction> attractions;
+
+        ZeroLatencyGpsUtil(int attractionCount) {
+            List<Attraction> catalog = new ArrayList<>(super.getAttractions());
+            Random random = new Random(26);
+            for (int i = catalog.size(); i < attractionCount; i++) {
+                catalog.add(new Attraction("Synthetic Attraction " + i, "Synthetic City", "SC",
+                        -60 + random.nextDouble() * 130, -180 + random.nextDouble() * 360));
+            }
+            this.attractions = List.copyOf(catalog.subList(0, Math.min(catalog.size(), Math.max(1, attractionCount))));
+        }
+
+        @Override
+        public VisitedLocation getUserLocation(UUID userId) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return new VisitedLocation(userId, new Location(random.nextDouble(-85, 85), random.nextDouble(-180, 180)),
+                    new Date());
+        }
+
+        @Override
+        public List<Attraction> getAttractions() {
+            return attractions;
+        }
+    }
+
+    /**
+     * RewardCentral sans latence
+     */
+    static final class ZeroLatencyRewardCentral extends RewardCentral {
+        @Override
+        public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+            return ThreadLocalRandom.current().nextInt(1, 1000);
+        }
+    }
+}
@@ -1,21 +1,81 @@
 package com.openclassrooms.tourguide;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import java.util.concurrent.TimeUnit;
+import com.openclassrooms.tourguide.concurrency.TrackingExecutionMode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.tourguide.dto.GeofenceDTO;
+import com.openclassrooms.tourguide.dto.IngestionResultDTO;
+import com.openclassrooms.tourguide.dto.ItineraryDTO;
+import com.openclassrooms.tourguide.dto.ItineraryStopDTO;
+import com.openclassrooms.tourguide.dto.LocationUpdateDTO;
 import com.openclassrooms.tourguide.dto.NearbyAttractionsDTO;
+import com.openclassrooms.tourguide.dto.RewardUpdateDTO;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.jfr.ExternalCallEvent;
+import com.openclassrooms.tourguide.jfr.RewardGrantEvent;
+import com.openclassrooms.tourguide.jfr.UserTrackingEvent;
+import com.openclassrooms.tourguide.service.LocationIngestionService;
+import com.openclassrooms.tourguide.service.NearbyAttractionCache;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.service.UserHistoryStreamService;
+import com.openclassrooms.tourguide.service.UserSnapshotService;
+import com.openclassrooms.tourguide.service.UserTiering;
+import com.openclassrooms.tourguide.service.UserUpdateBroadcaster;
+import com.openclassrooms.tourguide.service.WarmUpProgress;
+import com.openclassrooms.tourguide.model.AttractionCatalog;
+import com.openclassrooms.tourguide.model.HistorySegmentStore;
+import com.openclassrooms.tourguide.model.LocationCursor;
 import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.model.UserHistorySnapshot;
+import com.openclassrooms.tourguide.model.UserReward;
+import com.openclassrooms.tourguide.tracker.TrackingCycleReport;
 import tripPricer.Provider;
 
 /**
@@ -132,6 +192,90 @@ public class TestTourGuideService {
 		assertEquals(5, attractions.getAttractionUsersDTO().size());
 	}
 
+	/**
+	 * Test le cache des attractions candidates par cellule
+	 * Vérifie que le classement calculé sur les candidates est celui calculé sur tout le catalogue,
+	 * et qu'une localisation voisine réutilise la cellule en cache
+	 */
+	@Test
+	public void nearbyAttractionCacheMatchesFullScan() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		List<Attraction> attractions = gpsUtil.getAttractions();
+		AttractionCatalog catalog = rewardsService.getAttractionCatalog();
+		NearbyAttractionCache cache = new NearbyAttractionCache(catalog, 5);
+		Random random = new Random(42);
+
+		for (int i = 0; i < 2000; i++) {
+			// moitié des points autour des attractions, moitié n'importe où
+			Location location = i % 2 == 0
+					? new Location(attractions.get(i % attractions.size()).latitude + random.nextGaussian(),
+							attractions.get(i % attractions.size()).longitude + random.nextGaussian())
+					: new Location(random.nextDouble() * 170 - 85, random.nextDouble() * 360 - 180);
+			List<String> expected = attractions.stream()
+					.sorted(Comparator.comparingDouble(attraction -> rewardsService.getDistance(location, attraction)))
+					.limit(5)
+					.map(attraction -> attraction.attractionName)
+					.toList();
+			List<String> actual = Arrays.stream(cache.candidates(location))
+					.mapToObj(catalog::get)
+					.sorted(Comparator.comparingDouble(attraction -> rewardsService.getDistance(location, attraction)))
+					.limit(5)
+					.map(attraction -> attraction.attractionName)
+					.toList();
+			assertEquals(expected, actual);
+		}
+
+		long misses = cache.getMissCount();
+		cache.candidates(new Location(48.85001, 2.35001));
+		cache.candidates(new Location(48.85002, 2.35002));
+		assertEquals(misses + 1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	/**
+	 * Test l'itinéraire passant par les meilleures attractions autour d'un utilisateur
+	 * Vérifie le nombre d'étapes, l'exclusion des attractions déjà récompensées
+	 * et qu'aucune inversion de segment (2-opt) ne raccourcit le chemin
+	 */
+	@Test
+	public void getItineraryOrdersAttractions() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = rewardsService.getAttractionCatalog().get(0);
+		VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), attraction, new Date());
+		rewardsService.addUserReward(user, new UserReward(user.addToVisitedLocations(visitedLocation), attraction, 100));
+
+		ItineraryDTO itinerary = tourGuideService.getItinerary(visitedLocation, user, 6);
+
+		List<String> names = itinerary.getStops().stream().map(ItineraryStopDTO::getAttractionName).toList();
+		assertEquals(6, names.size());
+		assertEquals(6, names.stream().distinct().count());
+		assertFalse(names.contains(attraction.attractionName));
+		List<Location> path = new ArrayList<>();
+		path.add(attraction);
+		itinerary.getStops().forEach(stop -> path.add(new Location(stop.getLatitude(), stop.getLongitude())));
+		double total = 0;
+		for (int i = 1; i < path.size(); i++) {
+			total += rewardsService.getDistance(path.get(i - 1), path.get(i));
+		}
+		assertEquals(total, itinerary.getTotalDistance(), 1e-6);
+		for (int i = 1; i < path.size() - 1; i++) {
+			for (int j = i + 1; j < path.size(); j++) {
+				double before = rewardsService.getDistance(path.get(i - 1), path.get(i))
+						+ (j + 1 < path.size() ? rewardsService.getDistance(path.get(j), path.get(j + 1)) : 0);
+				double after = rewardsService.getDistance(path.get(i - 1), path.get(j))
+						+ (j + 1 < path.size() ? rewardsService.getDistance(path.get(i), path.get(j + 1)) : 0);
+				assertTrue(after >= before - 1e-2);
+			}
+		}
+		tourGuideService.tracker.stopTracking();
+	}
+
 	/**
 	 * Test la récupération des offres de voyage
 	 * Vérifie que le nombre d'offres retournées est correct (5)
@@ -152,4 +296,758 @@ public class TestTourGuideService {
 		assertEquals(5, providers.size());
 	}
 
+	/**
+	 * Test le précalcul des offres de voyage d'un utilisateur actif
+	 * Vérifie que les offres précalculées sont servies tant qu'elles sont fraîches,
+	 * et qu'elles sont périmées quand le total de points franchit un palier
+	 */
+	@Test
+	public void getTripDealsServesPrefetchedDeals() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(48.85, 2.35), new Date()));
+		tourGuideService.addUser(user);
+
+		tourGuideService.getUserLocation(user);
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (user.getTripDealsRefreshedMillis() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		List<Provider> prefetched = user.getTripDeals();
+
+		assertEquals(1, tourGuideService.getTripDealsPrefetcher().getPrefetchedCount());
+		assertEquals(5, prefetched.size());
+		assertTrue(prefetched == tourGuideService.getTripDeals(user));
+
+		// le franchissement du palier de points périme les offres : elles sont recalculées
+		rewardsService.addUserReward(user, new UserReward(user.getLastVisitedLocation(),
+				rewardsService.getAttractionCatalog().get(0), 600));
+		assertTrue(prefetched != tourGuideService.getTripDeals(user));
+		tourGuideService.tracker.stopTracking();
+	}
+
+	/**
+	 * Test le rapport d'un cycle de suivi
+	 * Vérifie que tous les utilisateurs du lot sont comptés, traités ou ignorés car déjà en cours
+	 */
+	@Test
+	public void trackUsersReportsCycle() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(3);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		TrackingCycleReport report = tourGuideService.trackUserLocation(tourGuideService.getAllUsers());
+
+		tourGuideService.tracker.stopTracking();
+
+		assertEquals(3, report.getUsersRequested());
+		// le Tracker démarré par le service peut suivre les mêmes utilisateurs au même moment
+		assertEquals(3, report.getUsersProcessed() + report.getUsersSkippedInProgress());
+		assertTrue(report.getTotalLatency().getP99Millis() >= report.getTotalLatency().getP50Millis());
+	}
+
+	/**
+	 * Test le suivi en mode SHARDED
+	 * Vérifie que la localisation et la récompense sont appliquées par le shard propriétaire de l'utilisateur
+	 */
+	@Test
+	public void trackUsersInShardedMode() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.setExecutionMode(TrackingExecutionMode.SHARDED);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		TrackingCycleReport report = tourGuideService.trackUserLocation(List.of(user));
+
+		tourGuideService.tracker.stopTracking();
+
+		assertEquals(1, report.getUsersCompleted());
+		assertEquals(2, user.getVisitedLocations().size());
+		assertEquals(1, user.getUserRewards().size());
+	}
+
+	/**
+	 * Test l'échéance d'un cycle de suivi
+	 * Vérifie qu'un appel GPS bloqué ne retient pas le cycle au-delà de son budget
+	 * et que l'utilisateur concerné est reporté, les autres étant terminés
+	 */
+	@Test
+	public void trackUsersCarriesOverAfterDeadline() {
+		UUID stuckUserId = UUID.randomUUID();
+		CountDownLatch release = new CountDownLatch(1);
+		GpsUtil gpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				if (userId.equals(stuckUserId)) {
+					try {
+						release.await(3, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.getUserLocation(userId);
+			}
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		User stuckUser = new User(stuckUserId, "stuck", "000", "stuck@tourGuide.com");
+		List<User> users = List.of(new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com"), stuckUser,
+				new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com"));
+		TrackingCycleReport report = tourGuideService.trackUserLocation(users, Duration.ofSeconds(1));
+
+		// l'appel bloqué se termine avant la fermeture, qui l'attend : il ne déborde pas sur les tests suivants
+		release.countDown();
+		tourGuideService.close();
+
+		assertTrue(report.getElapsedMillis() < 3000);
+		assertEquals(2, report.getUsersCompleted());
+		assertEquals(List.of(stuckUser), report.getCarriedOverUsers());
+		assertEquals(0, report.getUsersFailed());
+	}
+
+	/**
+	 * Test la fermeture du service
+	 * Vérifie qu'un cycle lancé après la fermeture s'arrête sans échec, ses utilisateurs étant reportés,
+	 * et qu'une seconde fermeture est sans effet
+	 */
+	@Test
+	public void closedServiceCarriesUsersOver() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+		List<User> users = List.of(new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com"),
+				new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com"));
+
+		tourGuideService.close();
+		tourGuideService.close();
+		TrackingCycleReport report = tourGuideService.trackUserLocation(users);
+
+		assertEquals(0, report.getUsersCompleted());
+		assertEquals(users, report.getCarriedOverUsers());
+		assertEquals(0, report.getUsersFailed());
+	}
+
+	/**
+	 * Test la déduplication des localisations concurrentes d'un même utilisateur
+	 * Vérifie que des appels simultanés partagent un seul appel à GpsUtil au lieu d'en lancer un chacun
+	 */
+	@Test
+	public void concurrentGetUserLocationSharesOneFetch() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		int callers = 16;
+		CyclicBarrier barrier = new CyclicBarrier(callers);
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		List<Future<VisitedLocation>> results = new ArrayList<>();
+		for (int i = 0; i < callers; i++) {
+			results.add(executor.submit(() -> {
+				barrier.await();
+				return tourGuideService.getUserLocation(user);
+			}));
+		}
+		List<VisitedLocation> visitedLocations = new ArrayList<>();
+		for (Future<VisitedLocation> result : results) {
+			visitedLocations.add(result.get());
+		}
+		executor.shutdown();
+		tourGuideService.tracker.stopTracking();
+
+		assertEquals(1, user.getVisitedLocations().size());
+		for (VisitedLocation visitedLocation : visitedLocations) {
+			assertTrue(visitedLocation == user.getLastVisitedLocation());
+		}
+	}
+
+	/**
+	 * Test la recherche dans l'historique par plage de temps et par zone
+	 * Vérifie que seules les localisations de la période, dans l'ordre chronologique, sont renvoyées
+	 * et que seuls les utilisateurs passés dans la zone pendant la période sont trouvés
+	 */
+	@Test
+	public void getLocationHistoryAndUsersInArea() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		User user2 = new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com");
+		// localisations ajoutées dans le désordre chronologique
+		VisitedLocation paris = new VisitedLocation(user.getUserId(), new Location(48.85, 2.35), new Date(3_000_000));
+		VisitedLocation lyon = new VisitedLocation(user.getUserId(), new Location(45.76, 4.83), new Date(1_000_000));
+		VisitedLocation london = new VisitedLocation(user.getUserId(), new Location(51.50, -0.12), new Date(9_000_000));
+		user.addToVisitedLocations(paris);
+		user.addToVisitedLocations(lyon);
+		user.addToVisitedLocations(london);
+		user2.addToVisitedLocations(new VisitedLocation(user2.getUserId(), new Location(48.86, 2.34), new Date(20_000_000)));
+		tourGuideService.addUser(user);
+		tourGuideService.addUser(user2);
+
+		List<VisitedLocation> history = tourGuideService.getLocationHistory(user, new Date(0), new Date(3_000_000));
+		List<String> usersInFrance = tourGuideService.getUsersInArea(42, 51, -5, 8, new Date(0), new Date(10_000_000));
+
+		tourGuideService.tracker.stopTracking();
+
+		// l'historique compressé recrée les localisations à la lecture : comparaison par valeur
+		assertEquals(2, history.size());
+		assertLocationEquals(lyon, history.get(0));
+		assertLocationEquals(paris, history.get(1));
+		assertEquals(List.of("jon"), usersInFrance);
+	}
+
+	/**
+	 * Test l'export en flux NDJSON, page par page, des récompenses et de l'historique
+	 * Vérifie que le curseur suivant et le contenu de la page reposent sur la même taille de liste,
+	 * même si des éléments sont ajoutés entre la délimitation de la page et son écriture
+	 */
+	@Test
+	public void streamPagesFollowCursor() throws IOException {
+		GpsUtil gpsUtil = new GpsUtil();
+		List<Attraction> attractions = gpsUtil.getAttractions();
+		UserHistoryStreamService streamService = new UserHistoryStreamService(new ObjectMapper());
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		for (int i = 0; i < 5; i++) {
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(40 + i, 2.35), new Date(i * 1_000_000L)));
+		}
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		for (int i = 0; i < 3; i++) {
+			rewardsService.addUserReward(user, new UserReward(user.getVisitedLocation(i), attractions.get(i), 10 * (i + 1)));
+		}
+
+		UserHistoryStreamService.Page firstPage = streamService.visitedLocationsPage(user, 0, 2);
+		UserHistoryStreamService.Page lastPage = streamService.visitedLocationsPage(user, 4, 2);
+		// localisation ajoutée après la délimitation des pages : elle ira dans une page suivante
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(50, 2.35), new Date(9_000_000)));
+		List<String> firstLines = writeLines(firstPage);
+		List<String> lastLines = writeLines(lastPage);
+		UserHistoryStreamService.Page rewardsPage = streamService.rewardsPage(user, 1, 1000);
+		List<String> rewardLines = writeLines(rewardsPage);
+
+		assertEquals(2, firstPage.getNextCursor());
+		assertEquals(2, firstLines.size());
+		assertTrue(firstLines.get(0).contains("\"latitude\":40.0"));
+		assertTrue(firstLines.get(1).contains("\"latitude\":41.0"));
+		assertEquals(-1, lastPage.getNextCursor());
+		assertEquals(1, lastLines.size());
+		assertTrue(lastLines.get(0).contains("\"latitude\":44.0"));
+		assertEquals(5, streamService.visitedLocationsPage(user, 4, 1).getNextCursor());
+		assertEquals(-1, rewardsPage.getNextCursor());
+		assertEquals(2, rewardLines.size());
+		assertTrue(rewardLines.get(0).contains(attractions.get(1).attractionName));
+		assertTrue(rewardLines.get(1).contains(attractions.get(2).attractionName));
+		// curseur au-delà de la fin, taille de page ramenée à au moins 1
+		UserHistoryStreamService.Page beyondEnd = streamService.rewardsPage(user, 10, 5);
+		assertEquals(-1, beyondEnd.getNextCursor());
+		assertTrue(writeLines(beyondEnd).isEmpty());
+		assertEquals(1, streamService.rewardsPage(user, 0, 0).getNextCursor());
+	}
+
+	/**
+	 * Test le déport sur disque de l'historique d'un utilisateur inactif
+	 * Vérifie que le résumé en mémoire suffit au suivi, et que l'historique complet est rechargé à la demande
+	 */
+	@Test
+	public void inactiveUserHistoryIsSpilledAndFaultedIn() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(48.85, 2.35), new Date(1_000_000)));
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date(2_000_000)));
+		tourGuideService.addUser(user);
+		rewardsService.calculateRewards(user);
+
+		long later = System.currentTimeMillis() + UserTiering.INACTIVITY_THRESHOLD_MILLIS;
+		int spilled = tourGuideService.getUserTiering().spillInactiveUsers(tourGuideService.getAllUsers(), later);
+
+		assertEquals(1, spilled);
+		assertFalse(user.isResident());
+		assertEquals(2, user.getVisitedLocationCount());
+		assertEquals(1, user.getUserRewardCount());
+		assertEquals(attraction.latitude, user.getLastVisitedLocation().location.latitude);
+
+		// le suivi ajoute une localisation sans recharger l'historique
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(45.76, 4.83), new Date(3_000_000)));
+		rewardsService.calculateRewards(user);
+		assertFalse(user.isResident());
+		assertEquals(3, user.getVisitedLocationCount());
+		assertEquals(1, user.getUserRewardCount());
+
+		// l'accès aux récompenses recharge l'historique complet
+		List<UserReward> userRewards = user.getUserRewards();
+		assertTrue(user.isResident());
+		assertEquals(1, userRewards.size());
+		assertEquals(attraction.attractionName, userRewards.get(0).attraction.attractionName);
+		assertEquals(3, user.getVisitedLocations().size());
+		assertEquals(48.85, user.getVisitedLocations().get(0).location.latitude);
+		assertEquals(45.76, user.getVisitedLocations().get(2).location.latitude);
+		assertEquals(1, tourGuideService.getUserTiering().getFaultCount());
+		tourGuideService.tracker.stopTracking();
+	}
+
+	/**
+	 * Test la réécriture du segment d'un utilisateur froid puis la compaction du fichier des segments
+	 * Vérifie que la réécriture ne recharge pas l'historique, que la place de l'ancien segment est récupérée
+	 * par la compaction et que l'historique reste intact
+	 */
+	@Test
+	public void coldSegmentIsRewrittenWithoutFaultAndCompacted() throws IOException {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(48.85, 2.35), new Date(1_000_000)));
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(43.60, 1.44), new Date(2_000_000)));
+
+		try (HistorySegmentStore store = HistorySegmentStore.createTemporary()) {
+			assertTrue(user.spill(store));
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(45.76, 4.83), new Date(3_000_000)));
+			assertTrue(user.spill(store));
+
+			assertFalse(user.isResident());
+			assertEquals(0, store.getFaultCount());
+			assertEquals(2, store.getSpillCount());
+			assertTrue(store.getDeadBytes() > 0);
+
+			store.compact(List.of(user));
+			assertEquals(0, store.getDeadBytes());
+			assertEquals(1, store.getCompactionCount());
+
+			List<VisitedLocation> visitedLocations = user.getVisitedLocations();
+			assertTrue(user.isResident());
+			assertEquals(3, visitedLocations.size());
+			assertEquals(48.85, visitedLocations.get(0).location.latitude);
+			assertEquals(45.76, visitedLocations.get(2).location.latitude);
+			assertEquals(1, store.getFaultCount());
+		}
+	}
+
+	/**
+	 * Test l'ingestion de lots de localisations poussées, aux formats NDJSON et binaire
+	 * Vérifie que les localisations valides sont ajoutées à l'historique, que les autres sont rejetées
+	 * et que les récompenses et les zones de proximité sont mises à jour en arrière-plan
+	 */
+	@Test
+	public void ingestPushedLocations() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+		LocationIngestionService ingestionService = new LocationIngestionService(tourGuideService, rewardsService,
+				new ObjectMapper());
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		tourGuideService.addUser(user);
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		String ndjson = "{\"userId\":\"" + user.getUserId() + "\",\"latitude\":48.85,\"longitude\":2.35,\"timestamp\":1000}\n"
+				+ "{\"userId\":\"" + user.getUserId() + "\",\"latitude\":" + attraction.latitude
+				+ ",\"longitude\":" + attraction.longitude + ",\"timestamp\":2000}\n"
+				+ "{\"userId\":\"" + UUID.randomUUID() + "\",\"latitude\":48.85,\"longitude\":2.35,\"timestamp\":3000}\n"
+				+ "{\"userId\":\"" + user.getUserId() + "\",\"latitude\":123.0,\"longitude\":2.35,\"timestamp\":4000}\n";
+		ByteBuffer binary = ByteBuffer.allocate(LocationIngestionService.BINARY_RECORD_BYTES);
+		binary.putLong(user.getUserId().getMostSignificantBits()).putLong(user.getUserId().getLeastSignificantBits())
+				.putDouble(45.76).putDouble(4.83).putLong(5000);
+
+		IngestionResultDTO ndjsonResult = ingestionService.ingestNdjson(
+				new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+		IngestionResultDTO binaryResult = ingestionService.ingestBinary(new ByteArrayInputStream(binary.array()));
+
+		assertEquals(2, ndjsonResult.getAccepted());
+		assertEquals(2, ndjsonResult.getRejected());
+		assertEquals(1, ndjsonResult.getUsers());
+		assertEquals(1, binaryResult.getAccepted());
+		assertEquals(3, user.getVisitedLocationCount());
+		assertEquals(45.76, user.getLastVisitedLocation().location.latitude);
+		assertEquals(user.getUserId(), user.getLastVisitedLocation().userId);
+		long deadline = System.currentTimeMillis() + 10_000;
+		while ((user.getUserRewardCount() == 0 || tourGuideService.getGeofences(user).isEmpty()
+				|| tourGuideService.getGeofences(user).get(0).isInside()) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(1, user.getUserRewardCount());
+		// les localisations poussées passent aussi par les zones de proximité : entrée puis sortie de l'attraction
+		List<GeofenceDTO> geofences = tourGuideService.getGeofences(user);
+		assertEquals(1, geofences.size());
+		assertEquals(attraction.attractionName, geofences.get(0).getAttractionName());
+		assertEquals(1, geofences.get(0).getVisits());
+		assertFalse(geofences.get(0).isInside());
+		tourGuideService.tracker.stopTracking();
+	}
+
+	/**
+	 * Test l'abonnement SSE aux mises à jour d'un utilisateur
+	 * Vérifie que l'état courant est envoyé à l'abonnement, qu'un client lent ne reçoit que la dernière localisation
+	 * et que le nombre d'abonnements ouverts est borné
+	 */
+	@Test
+	public void subscribeUpdatesCoalescesForSlowClients() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(48.85, 2.35), new Date(1_000_000)));
+		tourGuideService.addUser(user);
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch slowClient = new CountDownLatch(1);
+		List<Object> received = Collections.synchronizedList(new ArrayList<>());
+		SseEmitter emitter = new SseEmitter() {
+			@Override
+			public void send(SseEventBuilder builder) throws IOException {
+				sending.countDown();
+				try {
+					slowClient.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				for (DataWithMediaType data : builder.build()) {
+					if (data.getData() instanceof LocationUpdateDTO || data.getData() instanceof RewardUpdateDTO) {
+						received.add(data.getData());
+					}
+				}
+			}
+		};
+
+		tourGuideService.subscribeUpdates(user, emitter);
+		// le client est bloqué sur l'envoi de l'état initial pendant les deux localisations suivantes
+		sending.await();
+		tourGuideService.recordLocation(user, new VisitedLocation(user.getUserId(), new Location(45.76, 4.83), new Date(2_000_000)));
+		tourGuideService.recordLocation(user, new VisitedLocation(user.getUserId(), new Location(51.50, -0.12), new Date(3_000_000)));
+		slowClient.countDown();
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (received.size() < 3 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		List<Double> latitudes = received.stream()
+				.filter(LocationUpdateDTO.class::isInstance)
+				.map(update -> ((LocationUpdateDTO) update).getLatitude())
+				.toList();
+		assertEquals(List.of(48.85, 51.50), latitudes);
+		assertEquals(1, received.stream().filter(RewardUpdateDTO.class::isInstance).count());
+		assertEquals(1, tourGuideService.getUserUpdates().getEventsCoalesced());
+
+		UserUpdateBroadcaster bounded = new UserUpdateBroadcaster(tourGuideService.getAttractionCatalog(), 1);
+		SseEmitter first = new SseEmitter();
+		bounded.subscribe(user, first);
+		assertThrows(IllegalStateException.class, () -> bounded.subscribe(user, new SseEmitter()));
+		bounded.unsubscribe(user, first);
+		assertEquals(0, bounded.getOpenSubscriptions());
+		bounded.subscribe(user, new SseEmitter());
+		assertEquals(1, bounded.getOpenSubscriptions());
+		tourGuideService.tracker.stopTracking();
+	}
+
+	/**
+	 * Test l'export instantané des utilisateurs
+	 * Vérifie que le fichier contient l'historique et les récompenses tels qu'au moment de la capture,
+	 * y compris pour un utilisateur déporté sur disque, et pas les localisations ajoutées ensuite
+	 */
+	@Test
+	public void snapshotExportsHistoryAsOfCapture() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		User spilledUser = new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(48.85, 2.35), new Date(1_000_000)));
+		spilledUser.addToVisitedLocations(new VisitedLocation(spilledUser.getUserId(), attraction, new Date(2_000_000)));
+		tourGuideService.addUser(user);
+		tourGuideService.addUser(spilledUser);
+		rewardsService.calculateRewards(spilledUser);
+		long later = System.currentTimeMillis() + UserTiering.INACTIVITY_THRESHOLD_MILLIS;
+		tourGuideService.getUserTiering().spillInactiveUsers(List.of(spilledUser), later);
+		assertFalse(spilledUser.isResident());
+
+		Path directory = Files.createTempDirectory("snapshot");
+		UserSnapshotService snapshotService = new UserSnapshotService(tourGuideService, directory);
+		UserSnapshotService.Export export = snapshotService.startSnapshot();
+		// le suivi continue pendant l'écriture
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(45.76, 4.83), new Date(3_000_000)));
+		Path file = export.getCompletion().get(10, TimeUnit.SECONDS);
+
+		assertFalse(spilledUser.isResident());
+		assertEquals(0, export.getInconsistentUsers());
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			assertEquals(UserSnapshotService.MAGIC, in.readInt());
+			assertEquals(UserSnapshotService.FORMAT_VERSION, in.readInt());
+			assertEquals(export.getCapturedAtMillis(), in.readLong());
+			assertEquals(2, in.readInt());
+			int attractionCount = in.readInt();
+			for (int i = 0; i < attractionCount; i++) {
+				in.skipBytes(in.readInt());
+			}
+			assertEquals(2, in.readInt());
+			assertEquals(2, in.readInt());
+			assertEquals(1, in.readInt());
+			List<UUID> userIds = List.of(new UUID(in.readLong(), in.readLong()), new UUID(in.readLong(), in.readLong()));
+			int spilledIndex = userIds.indexOf(spilledUser.getUserId());
+			assertEquals(1 - spilledIndex, userIds.indexOf(user.getUserId()));
+			for (int i = 0; i < 2; i++) {
+				in.skipBytes(in.readInt());
+			}
+			assertEquals(1, in.readInt());
+			assertEquals(1, in.readInt());
+			assertEquals(spilledIndex == 0 ? 1 : 0, in.readInt());
+			assertEquals(spilledIndex == 0 ? 0 : 1, in.readInt());
+			double[] latitudes = { in.readDouble(), in.readDouble() };
+			assertEquals(48.85, latitudes[1 - spilledIndex]);
+			assertEquals(attraction.latitude, latitudes[spilledIndex]);
+			in.skipBytes(2 * Double.BYTES + 2 * Long.BYTES);
+			assertEquals(rewardsService.getAttractionCatalog().ordinalOf(attraction), in.readInt());
+			assertEquals(0, in.readInt());
+			assertEquals(spilledUser.getCumulativeRewardPoints(), in.readInt());
+			assertEquals(-1, in.read());
+		}
+		tourGuideService.tracker.stopTracking();
+	}
+
+	/**
+	 * Test les événements JFR du suivi
+	 * Vérifie que le profil fourni se charge et que le suivi d'un utilisateur enregistre
+	 * son événement de suivi, l'appel à GpsUtil et la récompense attribuée
+	 */
+	@Test
+	public void trackingEmitsFlightRecorderEvents() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+
+		Map<String, String> settings = new HashMap<>();
+		try (Reader reader = new InputStreamReader(getClass().getResourceAsStream("/jfr/tourguide.jfc"), StandardCharsets.UTF_8)) {
+			settings.putAll(Configuration.create(reader).getSettings());
+		}
+		for (String event : List.of(UserTrackingEvent.NAME, ExternalCallEvent.NAME, RewardGrantEvent.NAME)) {
+			settings.put(event + "#threshold", "0 ms");
+			settings.put(event + "#sampling", "1");
+		}
+		Path file = Files.createTempFile("tracking", ".jfr");
+		try (Recording recording = new Recording(settings)) {
+			recording.start();
+			tourGuideService.trackUserLocation(user);
+			recording.stop();
+			recording.dump(file);
+		}
+
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+		RecordedEvent tracking = events.stream()
+				.filter(e -> e.getEventType().getName().equals(UserTrackingEvent.NAME)).findFirst().get();
+		assertEquals(user.getUserId().toString(), tracking.getString("userId"));
+		assertEquals(1, tracking.getInt("rewardsGranted"));
+		assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals(ExternalCallEvent.NAME)
+				&& ExternalCallEvent.GPS_UTIL.equals(e.getString("service"))));
+		RecordedEvent grant = events.stream()
+				.filter(e -> e.getEventType().getName().equals(RewardGrantEvent.NAME)).findFirst().get();
+		assertEquals(attraction.attractionName, grant.getString("attractionName"));
+		tourGuideService.tracker.stopTracking();
+	}
+
+	/**
+	 * Test l'historique de localisation compressé
+	 * Vérifie que les localisations sont restituées à la quantification près, en accès direct comme en parcours
+	 * séquentiel, sur plusieurs blocs, que la dernière se relit de la même façon que les autres,
+	 * et qu'elles survivent à un déport sur disque suivi d'un rechargement
+	 */
+	@Test
+	public void compressedHistoryRestoresLocations() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		tourGuideService.addUser(user);
+		Random random = new Random(42);
+		List<VisitedLocation> expected = new ArrayList<>();
+		double latitude = 48.85;
+		double longitude = 2.35;
+		long time = 1_700_000_000_000L;
+		for (int i = 0; i < 300; i++) {
+			// un point éloigné de temps en temps, pour des différences de toutes tailles
+			latitude = i % 50 == 49 ? -latitude : latitude + random.nextGaussian() * 0.001;
+			longitude = i % 70 == 69 ? 179.99 : longitude + random.nextGaussian() * 0.001;
+			time += i % 90 == 89 ? -60_000 : 1_000 + random.nextInt(300_000);
+			VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), new Location(latitude, longitude), new Date(time));
+			expected.add(visitedLocation);
+			user.addToVisitedLocations(visitedLocation);
+		}
+
+		List<VisitedLocation> history = user.getVisitedLocations();
+		assertEquals(expected.size(), history.size());
+		for (int i : new int[] { 0, 63, 64, 65, 200, 127, 1, 299 }) {
+			assertLocationEquals(expected.get(i), history.get(i));
+		}
+		// la dernière localisation est quantifiée comme les autres : elle se relit à l'identique une fois suivie d'une autre
+		VisitedLocation last = user.getLastVisitedLocation();
+		assertLocationEquals(expected.get(299), last);
+		assertEquals(history.get(299).location.latitude, last.location.latitude);
+		assertEquals(history.get(299).location.longitude, last.location.longitude);
+		assertThrows(IndexOutOfBoundsException.class,
+				() -> new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com").getLastVisitedLocation());
+		LocationCursor cursor = user.locationCursor(60);
+		for (int i = 60; i < expected.size(); i++) {
+			assertTrue(cursor.next());
+			assertEquals(i, cursor.getIndex());
+			assertEquals(expected.get(i).location.latitude, cursor.getLatitude(), 1e-7);
+			assertEquals(expected.get(i).location.longitude, cursor.getLongitude(), 1e-7);
+			assertEquals(expected.get(i).timeVisited.getTime(), cursor.getTimeMillis());
+		}
+		assertFalse(cursor.next());
+		Date from = expected.get(100).timeVisited;
+		Date to = expected.get(110).timeVisited;
+		assertEquals(expected.stream().filter(v -> !v.timeVisited.before(from) && !v.timeVisited.after(to)).count(),
+				user.getVisitedLocationsBetween(from, to).size());
+
+		long later = System.currentTimeMillis() + UserTiering.INACTIVITY_THRESHOLD_MILLIS;
+		tourGuideService.getUserTiering().spillInactiveUsers(List.of(user), later);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(45.76, 4.83), new Date(time + 1_000)));
+		assertFalse(user.isResident());
+		history = user.getVisitedLocations();
+		assertTrue(user.isResident());
+		assertEquals(expected.size() + 1, history.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertLocationEquals(expected.get(i), history.get(i));
+		}
+		assertEquals(45.76, history.get(expected.size()).location.latitude);
+		assertEquals(last.location.latitude, history.get(expected.size() - 1).location.latitude);
+		assertEquals(last.location.longitude, history.get(expected.size() - 1).location.longitude);
+		// la vue renvoyée plus tôt reste figée
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(0, 0), new Date(time + 2_000)));
+		assertEquals(expected.size() + 1, history.size());
+
+		// une récompense reprend l'index de sa localisation, même lue avant un déport, ou détache une localisation étrangère
+		List<Attraction> attractions = gpsUtil.getAttractions();
+		VisitedLocation read = history.get(150);
+		tourGuideService.getUserTiering().spillInactiveUsers(List.of(user), later);
+		assertTrue(rewardsService.addUserReward(user, new UserReward(read, attractions.get(0), 10)));
+		assertTrue(rewardsService.addUserReward(user, new UserReward(expected.get(150), attractions.get(1), 20)));
+		int[] rewardLocationIndexes = user.readHistory(user.markHistory()).getRewardLocationIndexes();
+		assertEquals(150, rewardLocationIndexes[0]);
+		assertEquals(-1, rewardLocationIndexes[1]);
+		assertLocationEquals(expected.get(150), user.getUserRewards().get(1).visitedLocation);
+		tourGuideService.tracker.stopTracking();
+	}
+
+	/**
+	 * Test la représentation compacte des récompenses
+	 * Vérifie que l'ordinal de l'attraction, l'index de la localisation et les points se relisent à l'identique,
+	 * qu'une seconde récompense pour la même attraction est refusée, et que les localisations des récompenses
+	 * sont détachées de l'historique quand celui-ci est vidé
+	 */
+	@Test
+	public void userRewardsRoundTripThroughCompactLog() {
+		AttractionCatalog catalog = new AttractionCatalog();
+		Attraction disneyland = new Attraction("Disneyland", "Anaheim", "CA", 33.817595, -117.922008);
+		Attraction jackson = new Attraction("Jackson Hole", "Jackson Hole", "WY", 43.582767, -110.821999);
+		Attraction mojave = new Attraction("Mojave National Preserve", "Kelso", "CA", 35.141689, -115.510399);
+		catalog.registerAll(List.of(disneyland, jackson, mojave));
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		List<VisitedLocation> visited = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			visited.add(user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
+					new Location(33.8 + i, -117.9), new Date(1_000_000L * (i + 1)))));
+		}
+
+		assertTrue(user.addUserReward(catalog, catalog.ordinalOf(mojave), 2, 30));
+		assertTrue(user.addUserReward(catalog, new UserReward(visited.get(0), disneyland, 10)));
+		assertFalse(user.addUserReward(catalog, catalog.ordinalOf(mojave), 1, 99));
+		UserHistorySnapshot snapshot = user.readHistory(user.markHistory());
+		assertEquals(2, snapshot.getRewardCount());
+		assertArrayEquals(new int[] { catalog.ordinalOf(mojave), catalog.ordinalOf(disneyland) },
+				snapshot.getRewardAttractionOrdinals());
+		assertArrayEquals(new int[] { 2, 0 }, snapshot.getRewardLocationIndexes());
+		assertArrayEquals(new int[] { 30, 10 }, snapshot.getRewardPoints());
+		assertEquals(40, user.getCumulativeRewardPoints());
+		UserReward mojaveReward = user.getUserReward(0);
+		assertEquals(mojave.attractionName, mojaveReward.attraction.attractionName);
+		assertLocationEquals(visited.get(2), mojaveReward.visitedLocation);
+		assertEquals(30, mojaveReward.getRewardPoints());
+		List<UserReward> slice = user.getUserRewards(1, 2);
+		assertEquals(1, slice.size());
+		assertEquals(disneyland.attractionName, slice.get(0).attraction.attractionName);
+		assertThrows(IndexOutOfBoundsException.class, () -> user.getUserRewards(1, 3));
+
+		user.clearVisitedLocations();
+		assertEquals(0, user.getVisitedLocationCount());
+		List<UserReward> rewards = user.getUserRewards();
+		assertEquals(2, rewards.size());
+		assertLocationEquals(visited.get(2), rewards.get(0).visitedLocation);
+		assertLocationEquals(visited.get(0), rewards.get(1).visitedLocation);
+		assertEquals(disneyland.attractionName, rewards.get(1).attraction.attractionName);
+		assertArrayEquals(new int[] { -1, -1 }, user.readHistory(user.markHistory()).getRewardLocationIndexes());
+		assertTrue(user.hasRewardFor(catalog.ordinalOf(disneyland)));
+		assertFalse(user.hasRewardFor(catalog.ordinalOf(jackson)));
+	}
+
+	/**
+	 * Vérifie que le démarrage asynchrone ne crée aucun utilisateur ni ne démarre le Tracker dans le constructeur,
+	 * puis qu'il le fait en arrière-plan en rendant compte de son avancement.
+	 */
+	@Test
+	public void asyncWarmUpPopulatesUsersAndStartsTracker() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(50);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, true);
+
+		WarmUpProgress progress = tourGuideService.getWarmUpProgress();
+		assertEquals(WarmUpProgress.Phase.PENDING, progress.getPhase());
+		assertFalse(progress.isUsersReady());
+		assertTrue(tourGuideService.getAllUsers().isEmpty());
+		assertFalse(tourGuideService.tracker.isStarted());
+
+		tourGuideService.startWarmUp().join();
+		// un second événement ne relance pas la création des utilisateurs
+		tourGuideService.startWarmUp().join();
+		tourGuideService.tracker.stopTracking();
+
+		assertEquals(WarmUpProgress.Phase.READY, progress.getPhase());
+		assertTrue(progress.isUsersReady());
+		assertEquals(50, progress.getUsersExpected());
+		assertEquals(50, progress.getUsersCreated());
+		assertEquals(100.0, progress.getPercentComplete());
+		assertEquals(50, tourGuideService.getAllUsers().size());
+		assertTrue(tourGuideService.getUser("internalUser49") != null);
+		assertTrue(tourGuideService.tracker.isStarted());
+	}
+
+	private static List<String> writeLines(UserHistoryStreamService.Page page) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		page.writeTo(out);
+		String body = out.toString(StandardCharsets.UTF_8);
+		return body.isEmpty() ? List.of() : List.of(body.split("\n"));
+	}
+
+	private static void assertLocationEquals(VisitedLocation expected, VisitedLocation actual) {
+		assertEquals(expected.location.latitude, actual.location.latitude, 1e-7);
+		assertEquals(expected.location.longitude, actual.location.longitude, 1e-7);
+		assertEquals(expected.timeVisited, actual.timeVisited);
+		assertEquals(expected.userId, actual.userId);
+	}
+
 }
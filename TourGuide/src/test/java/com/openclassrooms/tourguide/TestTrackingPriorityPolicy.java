@@ -0,0 +1,105 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.tracker.TrackingPriorityPolicy;
+
+/**
+ * Classe de tests pour la politique de priorité du suivi.
+ * Vérifie l'ordre de suivi des utilisateurs et la sélection de la voie prioritaire.
+ */
+public class TestTrackingPriorityPolicy {
+
+	private final TrackingPriorityPolicy policy = new TrackingPriorityPolicy();
+
+	/**
+	 * Test le classement par ancienneté de la position
+	 * Vérifie qu'entre utilisateurs inactifs, la position la plus ancienne passe en premier,
+	 * et qu'un utilisateur sans position passe devant tous les autres
+	 */
+	@Test
+	public void idleUsersAreOrderedByLocationAge() {
+		long now = System.currentTimeMillis();
+		User recent = userLocatedAt(now - TimeUnit.MINUTES.toMillis(1));
+		User old = userLocatedAt(now - TimeUnit.MINUTES.toMillis(20));
+		User neverLocated = new User(UUID.randomUUID(), "never", "000", "never@tourGuide.com");
+
+		List<User> ordered = policy.order(List.of(recent, old, neverLocated), now);
+
+		assertEquals(List.of(neverLocated, old, recent), ordered);
+	}
+
+	/**
+	 * Test le bonus d'une heure accordé aux utilisateurs actifs
+	 * Vérifie qu'un utilisateur actif passe devant un inactif dont la position est plus ancienne,
+	 * tant que l'écart d'ancienneté reste inférieur à une heure, et derrière au-delà (vieillissement)
+	 */
+	@Test
+	public void activeUserIsBoostedByOneHour() {
+		long now = System.currentTimeMillis();
+		User active = userLocatedAt(now - TimeUnit.MINUTES.toMillis(10));
+		active.markApiActivity();
+		User idle = userLocatedAt(now - TimeUnit.MINUTES.toMillis(65));
+		User starving = userLocatedAt(now - TimeUnit.MINUTES.toMillis(75));
+
+		assertTrue(policy.isActive(active, now));
+		assertFalse(policy.isActive(idle, now));
+		assertEquals(List.of(active, idle), policy.order(List.of(idle, active), now));
+		assertEquals(List.of(starving, active), policy.order(List.of(active, starving), now));
+	}
+
+	/**
+	 * Test la fin de la période d'activité
+	 * Vérifie qu'un utilisateur n'est plus actif cinq minutes après son dernier appel à l'API
+	 * et perd alors son bonus
+	 */
+	@Test
+	public void activityExpiresAfterActiveWindow() {
+		long activity = System.currentTimeMillis();
+		User formerlyActive = userLocatedAt(activity - TimeUnit.MINUTES.toMillis(10));
+		formerlyActive.markApiActivity();
+		User idle = userLocatedAt(activity - TimeUnit.MINUTES.toMillis(20));
+		long later = activity + TimeUnit.MINUTES.toMillis(6);
+
+		assertFalse(policy.isActive(formerlyActive, later));
+		assertEquals(List.of(idle, formerlyActive), policy.order(List.of(formerlyActive, idle), later));
+	}
+
+	/**
+	 * Test la sélection des utilisateurs de la voie prioritaire
+	 * Vérifie que seuls les utilisateurs actifs dont la position a plus de 30 secondes sont rafraîchis
+	 */
+	@Test
+	public void activeUsersWithStaleLocationAreRefreshed() {
+		long now = System.currentTimeMillis();
+		User activeStale = userLocatedAt(now - TimeUnit.SECONDS.toMillis(31));
+		activeStale.markApiActivity();
+		User activeFresh = userLocatedAt(now - TimeUnit.SECONDS.toMillis(29));
+		activeFresh.markApiActivity();
+		User activeAtCutoff = userLocatedAt(now - TimeUnit.SECONDS.toMillis(30));
+		activeAtCutoff.markApiActivity();
+		User idleStale = userLocatedAt(now - TimeUnit.MINUTES.toMillis(10));
+
+		List<User> toRefresh = policy.activeUsersToRefresh(List.of(activeStale, activeFresh, activeAtCutoff, idleStale), now);
+
+		assertEquals(List.of(activeStale), toRefresh);
+	}
+
+	private static User userLocatedAt(long timeMillis) {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(48.85, 2.35), new Date(timeMillis)));
+		return user;
+	}
+}